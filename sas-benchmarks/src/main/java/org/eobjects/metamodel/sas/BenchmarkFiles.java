@@ -0,0 +1,78 @@
+/**
+ * eobjects.org SassyReader
+ * Copyright (C) 2011 eobjects.org
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.eobjects.metamodel.sas;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Provides the (generated) files that the benchmarks read. Files are
+ * generated by {@link SasFileScaler} the first time they are needed and
+ * reused by later runs.
+ * 
+ * The file to scale up and the directory of the generated files can be set
+ * with the "sas.benchmark.fixture" and "sas.benchmark.dir" system properties.
+ * They default to the mathattitudes fixture of the SAS module and
+ * "target/sas-benchmarks", relative to the root of the project.
+ */
+public final class BenchmarkFiles {
+
+	private BenchmarkFiles() {
+		// prevent instantiation
+	}
+
+	/**
+	 * Gets a file of a given size. The file is the only file in its
+	 * directory, so the directory can be used for a
+	 * {@link org.eobjects.metamodel.sas.metamodel.SasDataContext}.
+	 * 
+	 * @param sizeMb
+	 *            the (approximate) size of the file in megabytes
+	 * @return
+	 * @throws IOException
+	 */
+	public static synchronized File getFile(int sizeMb) throws IOException {
+		final File fixture = new File(System.getProperty(
+				"sas.benchmark.fixture",
+				"sas/src/test/resources/mathattitudes.sas7bdat"));
+		final File directory = new File(System.getProperty(
+				"sas.benchmark.dir", "target/sas-benchmarks"), sizeMb + "mb");
+		final File file = new File(directory, fixture.getName());
+		if (!file.exists() || file.lastModified() < fixture.lastModified()) {
+			if (!directory.isDirectory() && !directory.mkdirs()) {
+				throw new IOException("Could not create directory: "
+						+ directory);
+			}
+			SasFileScaler.generate(fixture, file,
+					sizeMb * 1024L * 1024L);
+		}
+		return file;
+	}
+
+	/**
+	 * Gets the size of a file in megabytes.
+	 * 
+	 * @param file
+	 * @return
+	 */
+	public static double getSizeMb(File file) {
+		return file.length() / (1024.0 * 1024.0);
+	}
+}
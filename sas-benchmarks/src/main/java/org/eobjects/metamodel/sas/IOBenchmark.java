@@ -0,0 +1,113 @@
+/**
+ * eobjects.org SassyReader
+ * Copyright (C) 2011 eobjects.org
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.eobjects.metamodel.sas;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the primitive reads of {@link IO} on a page of numbers. Scores
+ * are in cells per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IOBenchmark {
+
+	private static final int PAGE_SIZE = 8192;
+	private static final int DOUBLE_CELLS = PAGE_SIZE / 8;
+	private static final int TRUNCATED_CELLS = PAGE_SIZE / 5;
+	private static final int INT_CELLS = PAGE_SIZE / 4;
+
+	private byte[] _page;
+
+	@Setup
+	public void setup() {
+		final Random random = new Random(42);
+		final ByteBuffer buffer = ByteBuffer.allocate(PAGE_SIZE).order(
+				ByteOrder.LITTLE_ENDIAN);
+		for (int i = 0; i < DOUBLE_CELLS; i++) {
+			// whole numbers, like most SAS data, with an occasional missing
+			buffer.putDouble(i % 100 == 0 ? Double.NaN : random.nextInt(100000));
+		}
+		_page = buffer.array();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(DOUBLE_CELLS)
+	public double readDouble() {
+		double sum = 0;
+		for (int i = 0; i < DOUBLE_CELLS; i++) {
+			sum += IO.readDouble(_page, i * 8);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(DOUBLE_CELLS)
+	public double readNumeric() {
+		double sum = 0;
+		for (int i = 0; i < DOUBLE_CELLS; i++) {
+			sum += IO.readNumeric(_page, i * 8, 8);
+		}
+		return sum;
+	}
+
+	/**
+	 * Reads numbers stored with a length of 5 bytes, ie. with a truncated
+	 * mantissa.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(TRUNCATED_CELLS)
+	public double readNumericTruncated() {
+		double sum = 0;
+		for (int i = 0; i < TRUNCATED_CELLS; i++) {
+			sum += IO.readNumeric(_page, i * 5, 5);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(INT_CELLS)
+	public long readInt() {
+		long sum = 0;
+		for (int i = 0; i < INT_CELLS; i++) {
+			sum += IO.readInt(_page, i * 4);
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,171 @@
+/**
+ * eobjects.org SassyReader
+ * Copyright (C) 2011 eobjects.org
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.eobjects.metamodel.sas;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates large synthetic sas7bdat files by scaling up a (small) file, eg.
+ * one of the test fixtures of the SAS module. The metadata pages of the file
+ * are kept and its data pages are repeated until the target size is reached,
+ * with the page count and row count of the file adjusted accordingly.
+ * 
+ * Only 32-bit little-endian files, with at least one page of data only, can
+ * be scaled up, which includes the bundled fixtures (eg. mathattitudes and
+ * event2).
+ */
+public final class SasFileScaler {
+
+	private static final int ROWSIZE_SIGNATURE = 0xf7f7f7f7;
+
+	private SasFileScaler() {
+		// prevent instantiation
+	}
+
+	/**
+	 * Generates a file, eg.
+	 * <code>java -cp benchmarks.jar org.eobjects.metamodel.sas.SasFileScaler
+	 * sas/src/test/resources/mathattitudes.sas7bdat /tmp/big.sas7bdat 1024</code>
+	 * 
+	 * @param args
+	 *            the file to scale up, the file to generate and the target
+	 *            size in megabytes
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 3) {
+			System.err.println("Usage: SasFileScaler <source file> "
+					+ "<target file> <target size in MB>");
+			System.exit(1);
+		}
+		final File target = new File(args[1]);
+		final long rowCount = generate(new File(args[0]), target,
+				Long.parseLong(args[2]) * 1024 * 1024);
+		System.out.println("Generated " + target + ": " + target.length()
+				+ " bytes, " + rowCount + " rows");
+	}
+
+	/**
+	 * Generates a file.
+	 * 
+	 * @param source
+	 *            the file to scale up
+	 * @param target
+	 *            the file to generate (overwritten if it exists)
+	 * @param targetSize
+	 *            the (approximate) size in bytes of the file to generate. The
+	 *            generated file is at least as big as the source file.
+	 * @return the amount of rows in the generated file
+	 * @throws IOException
+	 */
+	public static long generate(File source, File target, long targetSize)
+			throws IOException {
+		final byte[] data = Files.readAllBytes(source.toPath());
+		if (data.length < 1024 || data[32] == 0x33 || data[35] == 0x33
+				|| data[37] == 0) {
+			throw new IllegalArgumentException(
+					"Only 32-bit little-endian files can be scaled up: "
+							+ source);
+		}
+		final int headerLength = IO.readInt(data, 196);
+		final int pageSize = IO.readInt(data, 200);
+		final int pageCount = IO.readInt(data, 204);
+
+		// find the pages with data only, and the row size subheader
+		final List<Integer> dataPages = new ArrayList<Integer>();
+		long dataPageRowCount = 0;
+		int rowCountOffset = -1;
+		for (int i = 0; i < pageCount; i++) {
+			final int pageOffset = headerLength + i * pageSize;
+			final byte pageType = data[pageOffset + 17];
+			if (pageType == 1) {
+				dataPages.add(pageOffset);
+				dataPageRowCount += IO.readShort(data, pageOffset + 18) & 0xffff;
+			} else if (pageType == 0 || pageType == 2) {
+				final int subHeaderCount = IO.readInt(data, pageOffset + 20);
+				for (int j = 0; j < subHeaderCount; j++) {
+					final int base = pageOffset + 24 + j * 12;
+					final int offset = IO.readInt(data, base);
+					final int length = IO.readInt(data, base + 4);
+					if (length > 0
+							&& IO.readInt(data, pageOffset + offset) == ROWSIZE_SIGNATURE) {
+						rowCountOffset = pageOffset + offset + 24;
+					}
+				}
+			}
+		}
+		if (dataPages.isEmpty() || rowCountOffset == -1) {
+			throw new IllegalArgumentException(
+					"File has no pages with data only or no row size subheader: "
+							+ source);
+		}
+
+		final long copies = Math.max(0, (targetSize - data.length)
+				/ ((long) dataPages.size() * pageSize));
+		final long rowCount = IO.readInt(data, rowCountOffset) + copies
+				* dataPageRowCount;
+		final long totalPageCount = pageCount + copies * dataPages.size();
+		if (rowCount > Integer.MAX_VALUE || totalPageCount > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Target size too big: "
+					+ targetSize);
+		}
+
+		final ByteBuffer patched = ByteBuffer.wrap(data.clone()).order(
+				ByteOrder.LITTLE_ENDIAN);
+		patched.putInt(204, (int) totalPageCount);
+		patched.putInt(rowCountOffset, (int) rowCount);
+
+		// the data pages are appended after the original pages, one copy
+		// at a time
+		final ByteBuffer copy = ByteBuffer.allocate(dataPages.size() * pageSize);
+		for (int pageOffset : dataPages) {
+			copy.put(data, pageOffset, pageSize);
+		}
+
+		final RandomAccessFile raf = new RandomAccessFile(target, "rw");
+		try {
+			raf.setLength(0);
+			final FileChannel channel = raf.getChannel();
+			patched.limit(headerLength + pageCount * pageSize);
+			writeFully(channel, patched);
+			for (long i = 0; i < copies; i++) {
+				copy.rewind();
+				writeFully(channel, copy);
+			}
+		} finally {
+			raf.close();
+		}
+		return rowCount;
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer)
+			throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+}
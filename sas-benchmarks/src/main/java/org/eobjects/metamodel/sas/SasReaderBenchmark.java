@@ -0,0 +1,159 @@
+/**
+ * eobjects.org SassyReader
+ * Copyright (C) 2011 eobjects.org
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.eobjects.metamodel.sas;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of scanning a (generated) file with a {@link SasReader}, reading
+ * all columns or a single column, as rows or as batches. Scores are in scans
+ * per second, and the rows/s and MB/s are reported as the "rows" and
+ * "megabytes" counters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SasReaderBenchmark {
+
+	/**
+	 * The index of the column read by the single column benchmarks (XAGE of
+	 * the mathattitudes fixture).
+	 */
+	private static final int COLUMN_INDEX = 2;
+
+	@Param({ "64", "1024" })
+	public int sizeMb;
+
+	private File _file;
+	private double _fileSizeMb;
+
+	@Setup
+	public void setup() throws Exception {
+		_file = BenchmarkFiles.getFile(sizeMb);
+		_fileSizeMb = BenchmarkFiles.getSizeMb(_file);
+	}
+
+	@Benchmark
+	public void fullScan(ScanCounters counters, Blackhole blackhole) {
+		scan(new SasReader(_file), counters, blackhole);
+	}
+
+	@Benchmark
+	public void fullScanWithStringDeduplication(ScanCounters counters,
+			Blackhole blackhole) {
+		final SasReader reader = new SasReader(_file);
+		reader.setStringDeduplication(true);
+		scan(reader, counters, blackhole);
+	}
+
+	@Benchmark
+	public void fullScanParallel(ScanCounters counters, Blackhole blackhole) {
+		final SasReader reader = new SasReader(_file);
+		reader.setParallelism(Runtime.getRuntime().availableProcessors());
+		scan(reader, counters, blackhole);
+	}
+
+	@Benchmark
+	public void fullScanWithReadAhead(ScanCounters counters,
+			Blackhole blackhole) {
+		final SasReader reader = new SasReader(_file);
+		reader.setReadAhead(4);
+		scan(reader, counters, blackhole);
+	}
+
+	@Benchmark
+	public void fullScanBatches(ScanCounters counters, Blackhole blackhole) {
+		scanBatches(new SasReader(_file), counters, blackhole);
+	}
+
+	@Benchmark
+	public void columnScan(ScanCounters counters, Blackhole blackhole) {
+		final SasReader reader = new SasReader(_file);
+		reader.setProjection(COLUMN_INDEX);
+		scan(reader, counters, blackhole);
+	}
+
+	@Benchmark
+	public void columnScanBatches(ScanCounters counters, Blackhole blackhole) {
+		final SasReader reader = new SasReader(_file);
+		reader.setProjection(COLUMN_INDEX);
+		scanBatches(reader, counters, blackhole);
+	}
+
+	private void scan(SasReader reader, ScanCounters counters,
+			final Blackhole blackhole) {
+		final CountReaderCallback callback = new CountReaderCallback() {
+			@Override
+			public boolean row(int rowNumber, Object[] rowData) {
+				blackhole.consume(rowData);
+				return super.row(rowNumber, rowData);
+			}
+		};
+		reader.read(callback);
+		counters.add(callback.getCount(), _fileSizeMb);
+	}
+
+	private void scanBatches(SasReader reader, ScanCounters counters,
+			final Blackhole blackhole) {
+		final long[] rowCount = new long[1];
+		reader.readBatches(new SasBatchCallback() {
+			@Override
+			public void column(int columnIndex, String columnName,
+					String columnLabel, SasColumnType columnType,
+					int columnLength) {
+			}
+
+			@Override
+			public boolean batch(SasRowBatch batch) {
+				// touch the numbers, like an aggregation would
+				for (int col = 0; col < batch.getColumnCount(); col++) {
+					if (batch.getColumnType(col) == SasColumnType.NUMERIC) {
+						final double[] numbers = batch.getNumbers(col);
+						double sum = 0;
+						for (int row = 0; row < batch.getRowCount(); row++) {
+							sum += numbers[row];
+						}
+						blackhole.consume(sum);
+					}
+				}
+				rowCount[0] += batch.getRowCount();
+				return true;
+			}
+		});
+		counters.add(rowCount[0], _fileSizeMb);
+	}
+}
@@ -0,0 +1,57 @@
+/**
+ * eobjects.org SassyReader
+ * Copyright (C) 2011 eobjects.org
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.eobjects.metamodel.sas;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counters of the rows and megabytes scanned by a benchmark, which JMH reports
+ * as rates (rows/s and MB/s) next to the score of the benchmark.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.EVENTS)
+public class ScanCounters {
+
+	public long rows;
+	public double megabytes;
+
+	@Setup(Level.Iteration)
+	public void reset() {
+		rows = 0;
+		megabytes = 0;
+	}
+
+	/**
+	 * Adds a scan of (part of) a file.
+	 * 
+	 * @param rowCount
+	 *            the amount of rows scanned
+	 * @param sizeMb
+	 *            the amount of megabytes scanned
+	 */
+	public void add(long rowCount, double sizeMb) {
+		rows += rowCount;
+		megabytes += sizeMb;
+	}
+}
@@ -0,0 +1,113 @@
+/**
+ * eobjects.org SassyReader
+ * Copyright (C) 2011 eobjects.org
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.eobjects.metamodel.sas;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of decoding a page of blank-padded character cells, with and
+ * without a {@link StringDictionary}, for low and high cardinality values.
+ * Scores are in cells per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StringDecodingBenchmark {
+
+	private static final int PAGE_SIZE = 8192;
+	private static final int CELL_LENGTH = 16;
+	private static final int CELLS = PAGE_SIZE / CELL_LENGTH;
+
+	@Param({ "16", "100000" })
+	public int cardinality;
+
+	@Param({ "false", "true" })
+	public boolean nonAscii;
+
+	private byte[] _page;
+	private StringDictionary _dictionary;
+
+	@Setup
+	public void setup() {
+		final Random random = new Random(42);
+		_page = new byte[PAGE_SIZE];
+		Arrays.fill(_page, (byte) ' ');
+		for (int i = 0; i < CELLS; i++) {
+			final String value = (nonAscii ? "K\u00f8benhavn-" : "Copenhagen-")
+					+ random.nextInt(cardinality);
+			final byte[] bytes = IO.encodeString(value);
+			System.arraycopy(bytes, 0, _page, i * CELL_LENGTH,
+					Math.min(bytes.length, CELL_LENGTH));
+		}
+		_dictionary = new StringDictionary(1024);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(CELLS)
+	public void readTrimmedString(Blackhole blackhole) {
+		for (int i = 0; i < CELLS; i++) {
+			blackhole.consume(IO.readTrimmedString(_page, i * CELL_LENGTH,
+					CELL_LENGTH));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(CELLS)
+	public void dictionaryGet(Blackhole blackhole) {
+		for (int i = 0; i < CELLS; i++) {
+			blackhole.consume(_dictionary.get(_page, i * CELL_LENGTH,
+					CELL_LENGTH));
+		}
+	}
+
+	/**
+	 * Only trims the cells, like batches do for character columns.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(CELLS)
+	public int trimOnly() {
+		int length = 0;
+		for (int i = 0; i < CELLS; i++) {
+			final int off = i * CELL_LENGTH;
+			final int end = IO.trimEnd(_page, off, off + CELL_LENGTH);
+			length += end - IO.trimStart(_page, off, end);
+		}
+		return length;
+	}
+}
@@ -0,0 +1,131 @@
+/**
+ * eobjects.org SassyReader
+ * Copyright (C) 2011 eobjects.org
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.eobjects.metamodel.sas.metamodel;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.metamodel.DataContext;
+import org.apache.metamodel.data.DataSet;
+import org.apache.metamodel.query.Query;
+import org.apache.metamodel.schema.Table;
+import org.eobjects.metamodel.sas.BenchmarkFiles;
+import org.eobjects.metamodel.sas.SasReader;
+import org.eobjects.metamodel.sas.ScanCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of querying a (generated) file through a {@link SasDataContext}.
+ * Scores are in queries per second, and the rows/s and MB/s of the rows
+ * returned are reported as the "rows" and "megabytes" counters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SasDataContextBenchmark {
+
+	@Param({ "64", "1024" })
+	public int sizeMb;
+
+	private DataContext _dataContext;
+	private Table _table;
+	private double _fileSizeMb;
+	private int _rowCount;
+
+	@Setup
+	public void setup() throws Exception {
+		final File file = BenchmarkFiles.getFile(sizeMb);
+		_fileSizeMb = BenchmarkFiles.getSizeMb(file);
+		_dataContext = new SasDataContext(file.getParentFile());
+		_table = _dataContext.getDefaultSchema().getTable(0);
+		_rowCount = new SasReader(file).getRowCount();
+	}
+
+	@Benchmark
+	public void selectAll(ScanCounters counters, Blackhole blackhole) {
+		final long rows = consume(_dataContext.query().from(_table)
+				.selectAll().toQuery(), blackhole);
+		counters.add(rows, _fileSizeMb);
+	}
+
+	@Benchmark
+	public void selectColumn(ScanCounters counters, Blackhole blackhole) {
+		final long rows = consume(_dataContext.query().from(_table)
+				.select("XAGE").toQuery(), blackhole);
+		counters.add(rows, _fileSizeMb);
+	}
+
+	/**
+	 * A filter that is pushed down to the reader and only matches a few rows.
+	 */
+	@Benchmark
+	public void selectFiltered(ScanCounters counters, Blackhole blackhole) {
+		final long rows = consume(_dataContext.query().from(_table)
+				.select("STUDENT", "XAGE").where("XAGE").greaterThan(183)
+				.toQuery(), blackhole);
+		counters.add(rows, _fileSizeMb);
+	}
+
+	@Benchmark
+	public void selectCount(Blackhole blackhole) {
+		blackhole.consume(consume(_dataContext.query().from(_table)
+				.selectCount().toQuery(), blackhole));
+	}
+
+	/**
+	 * A page of rows near the end of the file.
+	 */
+	@Benchmark
+	public void selectLastPage(ScanCounters counters, Blackhole blackhole) {
+		final Query query = _dataContext.query().from(_table).selectAll()
+				.toQuery();
+		query.setFirstRow(_rowCount - 100);
+		query.setMaxRows(100);
+		counters.add(consume(query, blackhole), 0);
+	}
+
+	private long consume(Query query, Blackhole blackhole) {
+		long rows = 0;
+		final DataSet dataSet = _dataContext.executeQuery(query);
+		try {
+			while (dataSet.next()) {
+				blackhole.consume(dataSet.getRow());
+				rows++;
+			}
+		} finally {
+			dataSet.close();
+		}
+		return rows;
+	}
+}
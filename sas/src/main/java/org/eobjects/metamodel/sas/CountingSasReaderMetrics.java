@@ -0,0 +1,117 @@
+/**
+ * eobjects.org SassyReader
+ * Copyright (C) 2011 eobjects.org
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.eobjects.metamodel.sas;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link SasReaderMetrics} that sums up the work done by one or more
+ * readers, using counters that are cheap to update from several threads.
+ */
+public class CountingSasReaderMetrics implements SasReaderMetrics {
+
+	private final LongAdder _bytesRead = new LongAdder();
+	private final LongAdder _ioNanos = new LongAdder();
+	private final LongAdder _pagesRead = new LongAdder();
+	private final LongAdder _pagesDecoded = new LongAdder();
+	private final LongAdder _rowsDecoded = new LongAdder();
+	private final LongAdder _numericCellsDecoded = new LongAdder();
+	private final LongAdder _characterCellsDecoded = new LongAdder();
+	private final LongAdder _decodeNanos = new LongAdder();
+
+	@Override
+	public void bytesRead(int bytes, long nanos) {
+		_bytesRead.add(bytes);
+		_ioNanos.add(nanos);
+	}
+
+	@Override
+	public void pageRead(int pageNumber, int pageType) {
+		_pagesRead.increment();
+	}
+
+	@Override
+	public void pageDecoded(int pageNumber, int rows, int numericCells,
+			int characterCells, long nanos) {
+		_pagesDecoded.increment();
+		_rowsDecoded.add(rows);
+		_numericCellsDecoded.add(numericCells);
+		_characterCellsDecoded.add(characterCells);
+		_decodeNanos.add(nanos);
+	}
+
+	public long getBytesRead() {
+		return _bytesRead.sum();
+	}
+
+	/**
+	 * Gets the time spent reading from files, in nanoseconds.
+	 * 
+	 * @return
+	 */
+	public long getIoNanos() {
+		return _ioNanos.sum();
+	}
+
+	public long getPagesRead() {
+		return _pagesRead.sum();
+	}
+
+	/**
+	 * Gets the amount of pages with data that have been decoded.
+	 * 
+	 * @return
+	 */
+	public long getPagesDecoded() {
+		return _pagesDecoded.sum();
+	}
+
+	public long getRowsDecoded() {
+		return _rowsDecoded.sum();
+	}
+
+	public long getNumericCellsDecoded() {
+		return _numericCellsDecoded.sum();
+	}
+
+	public long getCharacterCellsDecoded() {
+		return _characterCellsDecoded.sum();
+	}
+
+	/**
+	 * Gets the time spent decoding rows, in nanoseconds.
+	 * 
+	 * @return
+	 */
+	public long getDecodeNanos() {
+		return _decodeNanos.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "CountingSasReaderMetrics[bytesRead=" + getBytesRead()
+				+ ",ioNanos=" + getIoNanos() + ",pagesRead=" + getPagesRead()
+				+ ",pagesDecoded=" + getPagesDecoded() + ",rowsDecoded="
+				+ getRowsDecoded() + ",numericCellsDecoded="
+				+ getNumericCellsDecoded() + ",characterCellsDecoded="
+				+ getCharacterCellsDecoded() + ",decodeNanos="
+				+ getDecodeNanos() + "]";
+	}
+}
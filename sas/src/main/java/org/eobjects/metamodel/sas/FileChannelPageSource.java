@@ -0,0 +1,132 @@
+/**
+ * eobjects.org SassyReader
+ * Copyright (C) 2011 eobjects.org
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.eobjects.metamodel.sas;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link SasPageSource} that reads from a {@link FileChannel}. When possible
+ * the file is memory mapped, in windows of a fixed size, so that pages are
+ * transferred to the page buffer with a bulk copy from the mapping instead of
+ * a read system call per page. If mapping fails, the channel is read
+ * directly.
+ * 
+ * Slices of the mapping are not handed out in place of the copy: the page
+ * buffer is a byte array because the rows of a page are located,
+ * decompressed and decoded in byte arrays, and it stays valid when the
+ * window it was read from is dropped.
+ * 
+ * A mapped window cannot be released explicitly, only when it is garbage
+ * collected, so a window is mapped and kept only while it is needed: it is
+ * dropped when the next window is mapped and when the source is closed.
+ */
+final class FileChannelPageSource implements SasPageSource {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(FileChannelPageSource.class);
+
+	/**
+	 * The (max.) size of each mapped window of the file.
+	 */
+	private static final long WINDOW_SIZE = 64 * 1024 * 1024;
+
+	private final File _file;
+	private final RandomAccessFile _randomAccessFile;
+	private final FileChannel _channel;
+	private final long _size;
+	private boolean _mapped;
+	private MappedByteBuffer _window;
+	private long _windowPosition;
+
+	public FileChannelPageSource(File file, boolean memoryMapped)
+			throws IOException {
+		_file = file;
+		_randomAccessFile = new RandomAccessFile(file, "r");
+		_channel = _randomAccessFile.getChannel();
+		_size = _channel.size();
+		_mapped = memoryMapped;
+		_window = null;
+		_windowPosition = -1;
+	}
+
+	@Override
+	public int read(long position, byte[] buffer, int len) throws IOException {
+		if (position >= _size) {
+			return 0;
+		}
+		if (position + len > _size) {
+			len = (int) (_size - position);
+		}
+
+		if (_mapped) {
+			final MappedByteBuffer window = getWindow(position, len);
+			if (window != null) {
+				window.position((int) (position - _windowPosition));
+				window.get(buffer, 0, len);
+				return len;
+			}
+		}
+
+		final ByteBuffer bb = ByteBuffer.wrap(buffer, 0, len);
+		while (bb.hasRemaining()) {
+			int read = _channel.read(bb, position + bb.position());
+			if (read == -1) {
+				break;
+			}
+		}
+		return bb.position();
+	}
+
+	private MappedByteBuffer getWindow(long position, int len) {
+		if (_window != null && position >= _windowPosition
+				&& position + len <= _windowPosition + _window.capacity()) {
+			return _window;
+		}
+
+		final long windowSize = Math.min(Math.max(WINDOW_SIZE, len), _size
+				- position);
+		try {
+			_window = _channel.map(MapMode.READ_ONLY, position, windowSize);
+			_windowPosition = position;
+			return _window;
+		} catch (IOException e) {
+			logger.warn("({}) Could not memory map file, falling back to "
+					+ "regular reads: {}", _file, e.getMessage());
+			_mapped = false;
+			_window = null;
+			return null;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		_window = null;
+		_randomAccessFile.close();
+	}
+}
@@ -19,11 +19,8 @@
  */
 package org.eobjects.metamodel.sas;
 
-import java.io.ByteArrayInputStream;
-import java.io.InputStreamReader;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.util.Arrays;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Contains static convenience methods for low level operations (typically close
@@ -35,6 +32,14 @@ final class IO {
 
 	private static final String CHARSET_NAME = "windows-1252";
 
+	private static final Charset CHARSET = Charset.forName(CHARSET_NAME);
+
+	/**
+	 * Lookup table for the (single byte) code page, mapping each byte value
+	 * to its character.
+	 */
+	private static final char[] CHARSET_TABLE = createCharsetTable(CHARSET);
+
 	private IO() {
 		// prevent instantiation
 	}
@@ -58,41 +63,131 @@ final class IO {
 	}
 
 	public static String readString(byte[] buffer, int off, int len) {
-		byte[] subset = readBytes(buffer, off, len);
+		if (buffer.length < off + len) {
+			throw new SasReaderException("readString failed! data.length: "
+					+ buffer.length + ", off: " + off + ", len: " + len);
+		}
+		for (int i = off; i < off + len; i++) {
+			if (buffer[i] < 0) {
+				// non-ASCII byte, map through the code page table
+				final char[] chars = new char[len];
+				for (int j = 0; j < len; j++) {
+					chars[j] = CHARSET_TABLE[buffer[off + j] & 0xff];
+				}
+				return new String(chars);
+			}
+		}
+		// pure ASCII, which maps 1:1 in the code page
+		return new String(buffer, off, len, StandardCharsets.ISO_8859_1);
+	}
 
-		String str = getString(subset, CHARSET_NAME);
-		return str;
+	/**
+	 * Reads a string like {@link #readString(byte[], int, int)}, but with
+	 * leading and trailing blanks (and control characters) removed, like
+	 * {@link String#trim()}. Trimming is done on the raw bytes before
+	 * decoding, which is safe since bytes up to 0x20 are the same characters
+	 * in the code page.
+	 * 
+	 * @param buffer
+	 * @param off
+	 * @param len
+	 * @return
+	 */
+	public static String readTrimmedString(byte[] buffer, int off, int len) {
+		final int end = trimEnd(buffer, off, off + len);
+		off = trimStart(buffer, off, end);
+		if (off == end) {
+			return "";
+		}
+		return readString(buffer, off, end - off);
 	}
 
-	private static String getString(byte[] bytes, String encoding) {
-		try {
-			InputStreamReader reader = new InputStreamReader(
-					new ByteArrayInputStream(bytes), encoding);
-			char[] chars = new char[bytes.length * 2];
-			int read = reader.read(chars);
-			chars = Arrays.copyOf(chars, read);
-			return new String(chars);
-		} catch (Exception e) {
-			throw new IllegalArgumentException(e);
+	/**
+	 * Finds the start of a byte range, when leading blanks (and control
+	 * characters) are trimmed.
+	 * 
+	 * @param buffer
+	 * @param off
+	 *            the start of the range
+	 * @param end
+	 *            the end (exclusive) of the range
+	 * @return the trimmed start
+	 */
+	public static int trimStart(byte[] buffer, int off, int end) {
+		while (off < end && (buffer[off] & 0xff) <= ' ') {
+			off++;
 		}
+		return off;
+	}
+
+	/**
+	 * Finds the end (exclusive) of a byte range, when trailing blanks (and
+	 * control characters) are trimmed.
+	 * 
+	 * @param buffer
+	 * @param off
+	 *            the start of the range
+	 * @param end
+	 *            the end (exclusive) of the range
+	 * @return the trimmed end
+	 */
+	public static int trimEnd(byte[] buffer, int off, int end) {
+		while (end > off && (buffer[end - 1] & 0xff) <= ' ') {
+			end--;
+		}
+		return end;
+	}
+
+	/**
+	 * Encodes a string in the code page used for character values.
+	 * 
+	 * @param str
+	 * @return the encoded bytes, or null if the string contains characters
+	 *         that cannot be represented in the code page
+	 */
+	public static byte[] encodeString(String str) {
+		final byte[] bytes = str.getBytes(CHARSET);
+		if (!str.equals(readString(bytes, 0, bytes.length))) {
+			return null;
+		}
+		return bytes;
+	}
+
+	private static char[] createCharsetTable(Charset charset) {
+		final char[] table = new char[256];
+		final byte[] singleByte = new byte[1];
+		for (int i = 0; i < table.length; i++) {
+			singleByte[0] = (byte) i;
+			table[i] = new String(singleByte, charset).charAt(0);
+		}
+		return table;
 	}
 
 	public static byte readByte(byte[] buffer, int off) {
-		ByteBuffer bb = ByteBuffer.wrap(buffer);
-		bb.order(ByteOrder.LITTLE_ENDIAN);
-		return bb.get(off);
+		return buffer[off];
 	}
 
+	/**
+	 * Reads a little-endian int directly from the buffer. Reading is done by
+	 * shifting the individual bytes, which avoids wrapping the (often page
+	 * sized) buffer in a new {@link java.nio.ByteBuffer} on every call.
+	 * 
+	 * @param buffer
+	 * @param off
+	 * @return
+	 */
 	public static int readInt(byte[] buffer, int off) {
-		ByteBuffer bb = ByteBuffer.wrap(buffer);
-		bb.order(ByteOrder.LITTLE_ENDIAN);
-		return bb.getInt(off);
+		return (buffer[off] & 0xff) | ((buffer[off + 1] & 0xff) << 8)
+				| ((buffer[off + 2] & 0xff) << 16) | (buffer[off + 3] << 24);
+	}
+
+	public static long readLong(byte[] buffer, int off) {
+		return (readInt(buffer, off) & 0xffffffffL)
+				| ((long) readInt(buffer, off + 4) << 32);
 	}
 
 	public static double readDouble(byte[] buffer, int off) {
-		ByteBuffer bb = ByteBuffer.wrap(buffer);
-		bb.order(ByteOrder.LITTLE_ENDIAN);
-		return bb.getDouble(off);
+		return Double.longBitsToDouble(readLong(buffer, off));
 	}
 
 	public static byte[] readBytes(byte[] data, int off, int len) {
@@ -106,9 +201,7 @@ final class IO {
 	}
 
 	public static short readShort(byte[] buffer, int off) {
-		ByteBuffer bb = ByteBuffer.wrap(buffer);
-		bb.order(ByteOrder.LITTLE_ENDIAN);
-		return bb.getShort(off);
+		return (short) ((buffer[off] & 0xff) | (buffer[off + 1] << 8));
 	}
 
 	public static Number readNumber(byte[] buffer, int off, int len) {
@@ -126,6 +219,82 @@ final class IO {
 		}
 	}
 
+	/**
+	 * Reads a SAS numeric value. SAS stores numerics as (little-endian)
+	 * doubles, but allows the least significant bytes to be truncated, in
+	 * which case only the most significant 'len' bytes are present. The value
+	 * is read in place, without copying the bytes into a padded buffer.
+	 * 
+	 * @param buffer
+	 * @param off
+	 * @param len
+	 *            the stored length of the numeric, 1 to 8 bytes
+	 * @return
+	 */
+	public static double readNumeric(byte[] buffer, int off, int len) {
+		if (len == 8) {
+			return readDouble(buffer, off);
+		}
+		if (len < 1 || len > 8) {
+			throw new UnsupportedOperationException(
+					"Number byte-length not supported: " + len);
+		}
+		long bits = 0;
+		final int shift = (8 - len) * 8;
+		for (int i = 0; i < len; i++) {
+			bits |= (buffer[off + i] & 0xffL) << (shift + i * 8);
+		}
+		return Double.longBitsToDouble(bits);
+	}
+
+	/**
+	 * Reads a big-endian int directly from the buffer.
+	 * 
+	 * @param buffer
+	 * @param off
+	 * @return
+	 * @see #readInt(byte[], int)
+	 */
+	public static int readBigEndianInt(byte[] buffer, int off) {
+		return (buffer[off] << 24) | ((buffer[off + 1] & 0xff) << 16)
+				| ((buffer[off + 2] & 0xff) << 8) | (buffer[off + 3] & 0xff);
+	}
+
+	public static long readBigEndianLong(byte[] buffer, int off) {
+		return ((long) readBigEndianInt(buffer, off) << 32)
+				| (readBigEndianInt(buffer, off + 4) & 0xffffffffL);
+	}
+
+	public static short readBigEndianShort(byte[] buffer, int off) {
+		return (short) ((buffer[off] << 8) | (buffer[off + 1] & 0xff));
+	}
+
+	/**
+	 * Reads a SAS numeric value of a big-endian file, like
+	 * {@link #readNumeric(byte[], int, int)}. The most significant bytes come
+	 * first, so a truncated value is simply missing its trailing bytes.
+	 * 
+	 * @param buffer
+	 * @param off
+	 * @param len
+	 *            the stored length of the numeric, 1 to 8 bytes
+	 * @return
+	 */
+	public static double readBigEndianNumeric(byte[] buffer, int off, int len) {
+		if (len == 8) {
+			return Double.longBitsToDouble(readBigEndianLong(buffer, off));
+		}
+		if (len < 1 || len > 8) {
+			throw new UnsupportedOperationException(
+					"Number byte-length not supported: " + len);
+		}
+		long bits = 0;
+		for (int i = 0; i < len; i++) {
+			bits |= (buffer[off + i] & 0xffL) << (56 - i * 8);
+		}
+		return Double.longBitsToDouble(bits);
+	}
+
 	public static byte[] concat(byte[] arr1, byte[] arr2) {
 		byte[] result = new byte[arr1.length + arr2.length];
 		System.arraycopy(arr1, 0, result, 0, arr1.length);
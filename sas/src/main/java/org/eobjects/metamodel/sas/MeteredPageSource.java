@@ -17,33 +17,34 @@
  * 51 Franklin Street, Fifth Floor
  * Boston, MA  02110-1301  USA
  */
-package org.eobjects.metamodel.sas.metamodel;
+package org.eobjects.metamodel.sas;
 
-import java.util.List;
+import java.io.IOException;
 
-import org.apache.metamodel.data.RowPublisher;
-import org.apache.metamodel.schema.Column;
-import org.apache.metamodel.util.Action;
-import org.eobjects.metamodel.sas.SasReader;
-
-public final  class SasRowPublisherAction implements Action<RowPublisher> {
+/**
+ * A {@link SasPageSource} that reports the bytes read, and the time spent
+ * reading them, to a {@link SasReaderMetrics}.
+ */
+final class MeteredPageSource implements SasPageSource {
 
-	private final SasReader _sasReader;
-	private final List<Column> _columns;
-	private final int _maxRows;
+	private final SasPageSource _source;
+	private final SasReaderMetrics _metrics;
 
-	public SasRowPublisherAction(SasReader sasReader, List<Column> columns,
-			int maxRows) {
-		_sasReader = sasReader;
-		_columns = columns;
-		_maxRows = maxRows;
+	public MeteredPageSource(SasPageSource source, SasReaderMetrics metrics) {
+		_source = source;
+		_metrics = metrics;
 	}
 
 	@Override
-	public void run(RowPublisher publisher) throws Exception {
-		_sasReader.read(new DataBuildingSasCallback(publisher, _columns,
-				_maxRows));
-		publisher.finished();
+	public int read(long position, byte[] buffer, int len) throws IOException {
+		final long start = System.nanoTime();
+		final int read = _source.read(position, buffer, len);
+		_metrics.bytesRead(read, System.nanoTime() - start);
+		return read;
 	}
 
+	@Override
+	public void close() throws IOException {
+		_source.close();
+	}
 }
@@ -0,0 +1,61 @@
+/**
+ * eobjects.org SassyReader
+ * Copyright (C) 2011 eobjects.org
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.eobjects.metamodel.sas;
+
+/**
+ * A callback interface for the {@link SasReader} that receives data in
+ * columnar batches, one batch per page, instead of one row at a time. This
+ * allows consumers to process values in primitive loops, without boxing each
+ * value.
+ * 
+ * @see SasReader#readBatches(SasBatchCallback)
+ */
+public interface SasBatchCallback {
+
+	/**
+	 * Callback method that accepts a column discovered by the {@link SasReader}
+	 * .
+	 * 
+	 * @param columnIndex
+	 *            the index (0-based) of the column
+	 * @param columnName
+	 *            the physical name of the column
+	 * @param columnLabel
+	 *            the logical label of the column (often more user-friendly than
+	 *            name)
+	 * @param columnType
+	 *            the type of the column
+	 * @param columnLength
+	 *            the length of the column
+	 */
+	public void column(int columnIndex, String columnName, String columnLabel,
+			SasColumnType columnType, int columnLength);
+
+	/**
+	 * Callback method that accepts a batch of rows. The batch (including its
+	 * vectors and page data) is reused for the next batch, so it is only
+	 * valid until this method returns.
+	 * 
+	 * @param batch
+	 *            the batch of rows
+	 * @return true if more batches should be read.
+	 */
+	public boolean batch(SasRowBatch batch);
+}
@@ -26,5 +26,23 @@ package org.eobjects.metamodel.sas;
  */
 public enum SasColumnType {
 
-	NUMERIC, CHARACTER;
+	NUMERIC, CHARACTER,
+
+	/**
+	 * A numeric column with a date format, decoded as
+	 * {@link java.time.LocalDate} values.
+	 */
+	DATE,
+
+	/**
+	 * A numeric column with a datetime format, decoded as
+	 * {@link java.time.LocalDateTime} values.
+	 */
+	DATETIME,
+
+	/**
+	 * A numeric column with a time format, decoded as
+	 * {@link java.time.LocalTime} values.
+	 */
+	TIME;
 }
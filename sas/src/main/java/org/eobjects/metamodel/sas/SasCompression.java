@@ -0,0 +1,323 @@
+/**
+ * eobjects.org SassyReader
+ * Copyright (C) 2011 eobjects.org
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.eobjects.metamodel.sas;
+
+/**
+ * The compression methods of sas7bdat files, which are recorded as a literal
+ * in the column text subheader. In compressed files the rows are stored as
+ * subheaders of meta pages, each of which is compressed individually (unless
+ * compression does not make it shorter than the row length).
+ * 
+ * Rows are decompressed into a buffer owned by the caller, so that a single
+ * buffer can be reused for all rows.
+ */
+enum SasCompression {
+
+	/**
+	 * Run length encoding, aka. COMPRESS=CHAR.
+	 */
+	RLE("SASYZCRL") {
+		@Override
+		public void decompress(byte[] src, int srcOffset, int srcLength,
+				byte[] dst, int dstOffset, int dstLength) {
+			final int srcEnd = srcOffset + srcLength;
+			final int dstEnd = dstOffset + dstLength;
+			int ipos = srcOffset;
+			int rpos = dstOffset;
+			while (ipos < srcEnd) {
+				final int controlByte = src[ipos] & 0xF0;
+				final int endOfFirstByte = src[ipos] & 0x0F;
+				ipos++;
+
+				final int nbytes;
+				switch (controlByte) {
+				case 0x00:
+				case 0x10:
+				case 0x20:
+					// long copy, of 64, 4160 or 96 bytes or more
+					checkLength(rpos, dstEnd, ipos + 1, srcEnd);
+					nbytes = (src[ipos] & 0xFF) + endOfFirstByte * 256
+							+ (controlByte == 0x20 ? 96 : 64)
+							+ (controlByte == 0x10 ? 4096 : 0);
+					ipos++;
+					checkLength(rpos + nbytes, dstEnd, ipos + nbytes, srcEnd);
+					System.arraycopy(src, ipos, dst, rpos, nbytes);
+					ipos += nbytes;
+					break;
+				case 0x40:
+					// long run of a byte
+					checkLength(rpos, dstEnd, ipos + 1, srcEnd);
+					nbytes = (src[ipos] & 0xFF) + 18 + endOfFirstByte * 256;
+					ipos++;
+					checkLength(rpos + nbytes, dstEnd, ipos + 1, srcEnd);
+					fill(dst, rpos, nbytes, src[ipos]);
+					ipos++;
+					break;
+				case 0x50:
+					// long run of '@'
+					checkLength(rpos, dstEnd, ipos + 1, srcEnd);
+					nbytes = endOfFirstByte * 256 + (src[ipos] & 0xFF) + 17;
+					ipos++;
+					checkLength(rpos + nbytes, dstEnd, ipos, srcEnd);
+					fill(dst, rpos, nbytes, (byte) 0x40);
+					break;
+				case 0x60:
+					// long run of blanks
+					checkLength(rpos, dstEnd, ipos + 1, srcEnd);
+					nbytes = endOfFirstByte * 256 + (src[ipos] & 0xFF) + 17;
+					ipos++;
+					checkLength(rpos + nbytes, dstEnd, ipos, srcEnd);
+					fill(dst, rpos, nbytes, (byte) 0x20);
+					break;
+				case 0x70:
+					// long run of zeroes
+					checkLength(rpos, dstEnd, ipos + 1, srcEnd);
+					nbytes = endOfFirstByte * 256 + (src[ipos] & 0xFF) + 17;
+					ipos++;
+					checkLength(rpos + nbytes, dstEnd, ipos, srcEnd);
+					fill(dst, rpos, nbytes, (byte) 0x00);
+					break;
+				case 0x80:
+				case 0x90:
+				case 0xA0:
+				case 0xB0:
+					// short copy
+					nbytes = endOfFirstByte + 1 + (controlByte - 0x80);
+					checkLength(rpos + nbytes, dstEnd, ipos + nbytes, srcEnd);
+					System.arraycopy(src, ipos, dst, rpos, nbytes);
+					ipos += nbytes;
+					break;
+				case 0xC0:
+					// short run of a byte
+					nbytes = endOfFirstByte + 3;
+					checkLength(rpos + nbytes, dstEnd, ipos + 1, srcEnd);
+					fill(dst, rpos, nbytes, src[ipos]);
+					ipos++;
+					break;
+				case 0xD0:
+					// short run of '@'
+					nbytes = endOfFirstByte + 2;
+					checkLength(rpos + nbytes, dstEnd, ipos, srcEnd);
+					fill(dst, rpos, nbytes, (byte) 0x40);
+					break;
+				case 0xE0:
+					// short run of blanks
+					nbytes = endOfFirstByte + 2;
+					checkLength(rpos + nbytes, dstEnd, ipos, srcEnd);
+					fill(dst, rpos, nbytes, (byte) 0x20);
+					break;
+				case 0xF0:
+					// short run of zeroes
+					nbytes = endOfFirstByte + 2;
+					checkLength(rpos + nbytes, dstEnd, ipos, srcEnd);
+					fill(dst, rpos, nbytes, (byte) 0x00);
+					break;
+				default:
+					throw new SasReaderException(
+							"Unknown RLE control byte: 0x"
+									+ Integer.toHexString(controlByte));
+				}
+				rpos += nbytes;
+			}
+			checkDecompressedLength(rpos - dstOffset, dstLength);
+		}
+	},
+
+	/**
+	 * Ross data compression, aka. COMPRESS=BINARY.
+	 */
+	RDC("SASYZCR2") {
+		@Override
+		public void decompress(byte[] src, int srcOffset, int srcLength,
+				byte[] dst, int dstOffset, int dstLength) {
+			final int srcEnd = srcOffset + srcLength;
+			final int dstEnd = dstOffset + dstLength;
+			int ipos = srcOffset;
+			int rpos = dstOffset;
+			int controlBits = 0;
+			int controlMask = 0;
+			while (ipos < srcEnd) {
+				controlMask = controlMask >> 1;
+				if (controlMask == 0) {
+					checkLength(rpos, dstEnd, ipos + 2, srcEnd);
+					controlBits = ((src[ipos] & 0xFF) << 8)
+							| (src[ipos + 1] & 0xFF);
+					ipos += 2;
+					controlMask = 0x8000;
+				}
+
+				if ((controlBits & controlMask) == 0) {
+					// literal byte
+					checkLength(rpos + 1, dstEnd, ipos + 1, srcEnd);
+					dst[rpos++] = src[ipos++];
+					continue;
+				}
+
+				checkLength(rpos, dstEnd, ipos + 1, srcEnd);
+				final int command = (src[ipos] >> 4) & 0x0F;
+				int count = src[ipos] & 0x0F;
+				ipos++;
+
+				switch (command) {
+				case 0:
+					// short run
+					count += 3;
+					checkLength(rpos + count, dstEnd, ipos + 1, srcEnd);
+					fill(dst, rpos, count, src[ipos]);
+					ipos++;
+					break;
+				case 1:
+					// long run
+					checkLength(rpos, dstEnd, ipos + 2, srcEnd);
+					count += ((src[ipos] & 0xFF) << 4) + 19;
+					ipos++;
+					checkLength(rpos + count, dstEnd, ipos + 1, srcEnd);
+					fill(dst, rpos, count, src[ipos]);
+					ipos++;
+					break;
+				case 2: {
+					// long pattern, ie. a copy of preceding output
+					checkLength(rpos, dstEnd, ipos + 2, srcEnd);
+					final int offset = count + 3 + ((src[ipos] & 0xFF) << 4);
+					count = (src[ipos + 1] & 0xFF) + 16;
+					ipos += 2;
+					copyPattern(dst, dstOffset, rpos, offset, count, dstEnd);
+					break;
+				}
+				default: {
+					// short pattern, the command is the count
+					checkLength(rpos, dstEnd, ipos + 1, srcEnd);
+					final int offset = count + 3 + ((src[ipos] & 0xFF) << 4);
+					count = command;
+					ipos++;
+					copyPattern(dst, dstOffset, rpos, offset, count, dstEnd);
+					break;
+				}
+				}
+				rpos += count;
+			}
+			checkDecompressedLength(rpos - dstOffset, dstLength);
+		}
+
+		/**
+		 * Copies a pattern of preceding output byte by byte, since the
+		 * pattern may overlap the copy.
+		 */
+		private void copyPattern(byte[] dst, int dstOffset, int rpos,
+				int offset, int count, int dstEnd) {
+			if (rpos - offset < dstOffset) {
+				throw new SasReaderException("RDC pattern offset " + offset
+						+ " precedes the decompressed row");
+			}
+			checkLength(rpos + count, dstEnd, 0, 0);
+			for (int k = 0; k < count; k++) {
+				dst[rpos + k] = dst[rpos - offset + k];
+			}
+		}
+	};
+
+	private final String _literal;
+
+	private SasCompression(String literal) {
+		_literal = literal;
+	}
+
+	/**
+	 * Gets the literal that identifies the compression method in the column
+	 * text subheader.
+	 * 
+	 * @return
+	 */
+	public String getLiteral() {
+		return _literal;
+	}
+
+	/**
+	 * Decompresses a row.
+	 * 
+	 * @param src
+	 *            the buffer holding the compressed row, typically the page
+	 * @param srcOffset
+	 *            the offset of the compressed row
+	 * @param srcLength
+	 *            the length of the compressed row
+	 * @param dst
+	 *            the buffer to decompress the row into
+	 * @param dstOffset
+	 *            the offset to decompress the row to
+	 * @param dstLength
+	 *            the length of the decompressed row, ie. the row length
+	 * @throws SasReaderException
+	 *             if the compressed data is corrupt
+	 */
+	public abstract void decompress(byte[] src, int srcOffset, int srcLength,
+			byte[] dst, int dstOffset, int dstLength)
+			throws SasReaderException;
+
+	/**
+	 * Gets the compression method identified by the literal at an offset of
+	 * the column text subheader.
+	 * 
+	 * @return the compression method, or null if the file is not compressed
+	 */
+	public static SasCompression get(byte[] colTextData, int offset) {
+		for (SasCompression compression : values()) {
+			final String literal = compression._literal;
+			if (offset + literal.length() > colTextData.length) {
+				continue;
+			}
+			boolean matches = true;
+			for (int i = 0; i < literal.length() && matches; i++) {
+				matches = colTextData[offset + i] == literal.charAt(i);
+			}
+			if (matches) {
+				return compression;
+			}
+		}
+		return null;
+	}
+
+	private static void fill(byte[] dst, int offset, int count, byte value) {
+		for (int i = 0; i < count; i++) {
+			dst[offset + i] = value;
+		}
+	}
+
+	/**
+	 * Checks that an instruction does not read past the compressed row or
+	 * write past the decompressed row.
+	 */
+	private static void checkLength(int rpos, int dstEnd, int ipos, int srcEnd) {
+		if (rpos > dstEnd) {
+			throw new SasReaderException(
+					"Decompressed row exceeds the row length");
+		}
+		if (ipos > srcEnd) {
+			throw new SasReaderException("Compressed row is truncated");
+		}
+	}
+
+	private static void checkDecompressedLength(int length, int rowLength) {
+		if (length != rowLength) {
+			throw new SasReaderException("Decompressed row length " + length
+					+ " does not match the row length " + rowLength);
+		}
+	}
+}
@@ -0,0 +1,181 @@
+/**
+ * eobjects.org SassyReader
+ * Copyright (C) 2011 eobjects.org
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.eobjects.metamodel.sas;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Recognizes the SAS date, datetime and time formats of numeric columns and
+ * decodes their values into {@link LocalDate}, {@link LocalDateTime} and
+ * {@link LocalTime} objects.
+ * 
+ * SAS dates are days and SAS datetimes are seconds since 1960-01-01, and SAS
+ * times are seconds since midnight, so values are decoded by adding a
+ * precomputed offset to the Java epoch, without any parsing or formatting.
+ * Missing values, and values that cannot be represented (eg. times beyond
+ * 24 hours), are decoded as null, so that all values of a column are of the
+ * same type.
+ */
+final class SasDateTimeFormats {
+
+	private static final long SAS_EPOCH_DAY = LocalDate.of(1960, 1, 1)
+			.toEpochDay();
+	private static final long SAS_EPOCH_SECOND = SAS_EPOCH_DAY * 86400;
+	private static final double MIN_DATE = LocalDate.MIN.toEpochDay()
+			- SAS_EPOCH_DAY;
+	private static final double MAX_DATE = LocalDate.MAX.toEpochDay()
+			- SAS_EPOCH_DAY;
+	// datetimes are bounded so that they can be rounded to milliseconds
+	private static final double MIN_DATETIME = -1e15;
+	private static final double MAX_DATETIME = 1e15;
+	private static final long MILLIS_PER_DAY = 86400000;
+
+	private static final Set<String> DATE_FORMATS = new HashSet<String>(
+			Arrays.asList("DATE", "DAY", "DDMMYY", "DOWNAME", "E8601DA",
+					"B8601DA", "IS8601DA", "EURDFDD", "EURDFDE", "EURDFMY",
+					"EURDFWDX", "EURDFWKX", "JULDAY", "JULIAN", "MINGUO",
+					"MMDDYY", "MMYY", "MONNAME", "MONTH", "MONYY", "NENGO",
+					"NLDATE", "NLDATEL", "NLDATEM", "NLDATEMN", "NLDATES",
+					"NLDATEW", "NLDATEWN", "NLDATEYM", "NLDATEYQ",
+					"NLDATEYR", "NLDATEYW", "PDJULG", "PDJULI", "QTR",
+					"WEEKDATE", "WEEKDATX", "WEEKDAY", "WEEKU", "WEEKV",
+					"WEEKW", "WORDDATE", "WORDDATX", "YEAR", "YYMM", "YYMMDD",
+					"YYMON", "YYQ", "YYQR"));
+
+	private static final Set<String> DATETIME_FORMATS = new HashSet<String>(
+			Arrays.asList("DATETIME", "DATEAMPM", "DTDATE", "DTMONYY",
+					"DTWKDATX", "DTYEAR", "DTYYQC", "E8601DN", "E8601DT",
+					"E8601DX", "E8601DZ", "E8601LX", "B8601DN", "B8601DT",
+					"B8601DX", "B8601DZ", "B8601LX", "IS8601DN", "IS8601DT",
+					"IS8601DZ", "MDYAMPM", "NLDATM", "NLDATMAP", "NLDATMDT",
+					"NLDATML", "NLDATMM", "NLDATMMN", "NLDATMS", "NLDATMTM",
+					"NLDATMW", "NLDATMWN", "NLDATMYM", "NLDATMYQ",
+					"NLDATMYR", "NLDATMYW"));
+
+	private static final Set<String> TIME_FORMATS = new HashSet<String>(
+			Arrays.asList("TIME", "TIMEAMPM", "TOD", "HHMM", "HOUR", "MMSS",
+					"E8601TM", "E8601TX", "E8601TZ", "B8601TM", "B8601TX",
+					"B8601TZ", "IS8601TM", "IS8601TZ", "NLTIMAP", "NLTIME"));
+
+	/**
+	 * Formats that take a separator suffix, eg. MMDDYYS for "01/31/2020".
+	 */
+	private static final Set<String> SEPARATED_DATE_FORMATS = new HashSet<String>(
+			Arrays.asList("DDMMYY", "MMDDYY", "YYMMDD", "MMYY", "YYMM", "YYQ",
+					"YYQR"));
+
+	private SasDateTimeFormats() {
+		// prevent instantiation
+	}
+
+	/**
+	 * Gets the date/time type of a numeric column with a given format.
+	 * 
+	 * @param format
+	 *            the name of the format of the column (the width and
+	 *            decimals, if included, are ignored), or null
+	 * @return {@link SasColumnType#DATE}, {@link SasColumnType#DATETIME},
+	 *         {@link SasColumnType#TIME} or null if the format is not a date
+	 *         or time format
+	 */
+	public static SasColumnType getColumnType(String format) {
+		if (format == null) {
+			return null;
+		}
+		String name = format.trim().toUpperCase();
+		int end = name.length();
+		while (end > 0
+				&& (Character.isDigit(name.charAt(end - 1)) || name
+						.charAt(end - 1) == '.')) {
+			end--;
+		}
+		name = name.substring(0, end);
+		if (name.isEmpty()) {
+			return null;
+		}
+
+		if (DATETIME_FORMATS.contains(name)) {
+			return SasColumnType.DATETIME;
+		}
+		if (TIME_FORMATS.contains(name)) {
+			return SasColumnType.TIME;
+		}
+		if (DATE_FORMATS.contains(name)) {
+			return SasColumnType.DATE;
+		}
+		if (SEPARATED_DATE_FORMATS.contains(name.substring(0,
+				name.length() - 1))
+				&& "BCDNPS".indexOf(name.charAt(name.length() - 1)) != -1) {
+			return SasColumnType.DATE;
+		}
+		return null;
+	}
+
+	/**
+	 * Decodes a SAS date, datetime or time value.
+	 * 
+	 * @param columnType
+	 *            the type returned by {@link #getColumnType(String)}
+	 * @param value
+	 *            the raw value
+	 * @return the decoded value, or null if the value is missing or out of
+	 *         range
+	 */
+	public static Object decode(SasColumnType columnType, double value) {
+		if (Double.isNaN(value)) {
+			return null;
+		}
+		switch (columnType) {
+		case DATE:
+			if (value < MIN_DATE || value > MAX_DATE) {
+				return null;
+			}
+			return LocalDate.ofEpochDay((long) Math.floor(value)
+					+ SAS_EPOCH_DAY);
+		case DATETIME: {
+			if (value < MIN_DATETIME || value > MAX_DATETIME) {
+				return null;
+			}
+			// round to milliseconds, since values are often a little off
+			final long millis = Math.round(value * 1000);
+			return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000)
+					+ SAS_EPOCH_SECOND,
+					(int) Math.floorMod(millis, 1000) * 1000000,
+					ZoneOffset.UTC);
+		}
+		case TIME: {
+			final long millis = Math.round(value * 1000);
+			if (millis < 0 || millis >= MILLIS_PER_DAY) {
+				return null;
+			}
+			return LocalTime.ofNanoOfDay(millis * 1000000);
+		}
+		default:
+			throw new IllegalArgumentException("Not a date/time type: "
+					+ columnType);
+		}
+	}
+}
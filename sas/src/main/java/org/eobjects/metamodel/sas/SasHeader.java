@@ -30,13 +30,17 @@ final class SasHeader {
 	private final String sasHost;
 	private final int pageSize;
 	private final int pageCount;
+	private final int headerLength;
+	private final SasLayout layout;
 
 	public SasHeader(String sasRelease, String sasHost, int pageSize,
-			int pageCount) {
+			int pageCount, int headerLength, SasLayout layout) {
 		this.sasRelease = sasRelease;
 		this.sasHost = sasHost;
 		this.pageSize = pageSize;
 		this.pageCount = pageCount;
+		this.headerLength = headerLength;
+		this.layout = layout;
 	}
 
 	public String getSasRelease() {
@@ -55,9 +59,29 @@ final class SasHeader {
 		return pageCount;
 	}
 
+	/**
+	 * Gets the length (in bytes) of the header, ie. the offset of the first
+	 * page.
+	 * 
+	 * @return
+	 */
+	public int getHeaderLength() {
+		return headerLength;
+	}
+
+	/**
+	 * Gets the layout (word length and byte order) of the file.
+	 * 
+	 * @return
+	 */
+	public SasLayout getLayout() {
+		return layout;
+	}
+
 	@Override
 	public String toString() {
 		return "SasHeader [sasRelease=" + sasRelease + ", sasHost=" + sasHost
-				+ ", pageSize=" + pageSize + ", pageCount=" + pageCount + "]";
+				+ ", pageSize=" + pageSize + ", pageCount=" + pageCount
+				+ ", headerLength=" + headerLength + ", layout=" + layout + "]";
 	}
 }
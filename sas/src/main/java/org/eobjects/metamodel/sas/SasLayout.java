@@ -0,0 +1,382 @@
+/**
+ * eobjects.org SassyReader
+ * Copyright (C) 2011 eobjects.org
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.eobjects.metamodel.sas;
+
+/**
+ * The physical layout of a sas7bdat file, ie. the word length (32 or 64 bit)
+ * and the byte order of the platform that wrote it. The word length is the
+ * width of offsets, lengths and counts, and thus determines the positions of
+ * the fields of pages and subheaders, while the byte order applies to all
+ * numbers, including the numeric cells of the rows.
+ * 
+ * The layout of a file is determined once, when its header is read. Each
+ * combination of word length and byte order has its own implementation, so
+ * that reading a number (which is done for every numeric cell of every row)
+ * does not involve checking the layout.
+ */
+abstract class SasLayout {
+
+	public static final SasLayout LITTLE_ENDIAN_32 = new LittleEndian(false);
+	public static final SasLayout LITTLE_ENDIAN_64 = new LittleEndian64();
+	public static final SasLayout BIG_ENDIAN_32 = new BigEndian(false);
+	public static final SasLayout BIG_ENDIAN_64 = new BigEndian64();
+
+	private final boolean _u64;
+	private final int _wordLength;
+	private final int _pageBitOffset;
+	private final int _subHeaderPointerLength;
+
+	private SasLayout(boolean u64) {
+		_u64 = u64;
+		_wordLength = (u64 ? 8 : 4);
+		_pageBitOffset = (u64 ? 32 : 16);
+		_subHeaderPointerLength = (u64 ? 24 : 12);
+	}
+
+	/**
+	 * Gets the layout of a file.
+	 * 
+	 * @param u64
+	 *            whether the file was written by a 64-bit platform
+	 * @param bigEndian
+	 *            whether the file is big-endian
+	 * @return
+	 */
+	public static SasLayout get(boolean u64, boolean bigEndian) {
+		if (bigEndian) {
+			return u64 ? BIG_ENDIAN_64 : BIG_ENDIAN_32;
+		}
+		return u64 ? LITTLE_ENDIAN_64 : LITTLE_ENDIAN_32;
+	}
+
+	public boolean isU64() {
+		return _u64;
+	}
+
+	public abstract boolean isBigEndian();
+
+	/**
+	 * Gets the length (in bytes) of a word, ie. of offsets, lengths, counts
+	 * and subheader signatures.
+	 * 
+	 * @return 4 or 8
+	 */
+	public int getWordLength() {
+		return _wordLength;
+	}
+
+	public abstract short readShort(byte[] buffer, int off);
+
+	public abstract int readInt(byte[] buffer, int off);
+
+	public abstract long readLong(byte[] buffer, int off);
+
+	/**
+	 * Reads a word, ie. an offset, length or count.
+	 * 
+	 * @param buffer
+	 * @param off
+	 * @return
+	 * @throws SasReaderException
+	 *             if the value does not fit in an int
+	 */
+	public abstract int readWord(byte[] buffer, int off)
+			throws SasReaderException;
+
+	/**
+	 * Reads a SAS numeric value.
+	 * 
+	 * @param buffer
+	 * @param off
+	 * @param len
+	 *            the stored length of the numeric, 1 to 8 bytes
+	 * @return
+	 * @see IO#readNumeric(byte[], int, int)
+	 */
+	public abstract double readNumeric(byte[] buffer, int off, int len);
+
+	/**
+	 * Reads the signature of a subheader. Signatures are words, but only 4
+	 * bytes of them are significant (in 64-bit files the 32-bit signature is
+	 * sign- or zero-extended), so they are read as an int.
+	 * 
+	 * @param buffer
+	 * @param off
+	 *            the offset of the subheader
+	 * @return
+	 */
+	public abstract int readSignature(byte[] buffer, int off);
+
+	/**
+	 * Gets the type of a page, ie. the most significant byte of the page type
+	 * field.
+	 * 
+	 * @param pageData
+	 * @return
+	 */
+	public byte getPageType(byte[] pageData) {
+		return (byte) (readShort(pageData, _pageBitOffset) >> 8);
+	}
+
+	/**
+	 * Gets the block count of a page, which for data pages is the amount of
+	 * rows.
+	 * 
+	 * @param pageData
+	 * @return
+	 */
+	public int getPageBlockCount(byte[] pageData) {
+		return readShort(pageData, _pageBitOffset + 2) & 0xffff;
+	}
+
+	public int getSubHeaderCount(byte[] pageData) {
+		return readShort(pageData, _pageBitOffset + 4) & 0xffff;
+	}
+
+	/**
+	 * Gets the length of the header of a page, ie. the offset of the
+	 * subheader pointers, or of the rows of a data page.
+	 * 
+	 * @return
+	 */
+	public int getPageHeaderLength() {
+		return _pageBitOffset + 8;
+	}
+
+	/**
+	 * Gets the offset of a subheader pointer within a page.
+	 * 
+	 * @param subHeaderNumber
+	 * @return
+	 */
+	public int getSubHeaderPointerOffset(int subHeaderNumber) {
+		return _pageBitOffset + 8 + subHeaderNumber * _subHeaderPointerLength;
+	}
+
+	public int getSubHeaderOffset(byte[] pageData, int pointerOffset) {
+		return readWord(pageData, pointerOffset);
+	}
+
+	public int getSubHeaderLength(byte[] pageData, int pointerOffset) {
+		return readWord(pageData, pointerOffset + _wordLength);
+	}
+
+	public byte getSubHeaderCompression(byte[] pageData, int pointerOffset) {
+		return pageData[pointerOffset + 2 * _wordLength];
+	}
+
+	public byte getSubHeaderType(byte[] pageData, int pointerOffset) {
+		return pageData[pointerOffset + 2 * _wordLength + 1];
+	}
+
+	/**
+	 * Gets the offset of a field of the row size subheader.
+	 * 
+	 * @param fieldNumber
+	 *            the number of the field, counted in words
+	 * @return
+	 */
+	public int getRowSizeFieldOffset(int fieldNumber) {
+		return fieldNumber * _wordLength;
+	}
+
+	/**
+	 * Gets the offset of the compression literal in the column text
+	 * subheader.
+	 * 
+	 * @return
+	 */
+	public int getCompressionLiteralOffset() {
+		return 12 + _wordLength;
+	}
+
+	/**
+	 * Gets the offset of a column name entry in the column name subheader.
+	 * 
+	 * @param columnIndex
+	 * @return
+	 */
+	public int getColumnNameOffset(int columnIndex) {
+		return _wordLength + 8 + columnIndex * 8;
+	}
+
+	/**
+	 * Gets the offset of a column attribute entry in the column attribute
+	 * subheader. An entry holds the offset (a word) and the length (an int)
+	 * of the column, and its type in the 7th byte after the offset.
+	 * 
+	 * @param columnIndex
+	 * @return
+	 */
+	public int getColumnAttributesOffset(int columnIndex) {
+		return getColumnAttributesHeaderLength() + columnIndex
+				* getColumnAttributesEntryLength();
+	}
+
+	public int getColumnAttributesHeaderLength() {
+		return _wordLength + 8;
+	}
+
+	public int getColumnAttributesTrailerLength() {
+		return _wordLength + 4;
+	}
+
+	public int getColumnAttributesEntryLength() {
+		return _wordLength + 8;
+	}
+
+	/**
+	 * Gets the offset of the format (text offset and length) in a column
+	 * label subheader. The label follows 6 bytes later.
+	 * 
+	 * @return
+	 */
+	public int getColumnFormatOffset() {
+		return 3 * _wordLength + 24;
+	}
+
+	public int getColumnLabelOffset() {
+		return 3 * _wordLength + 30;
+	}
+
+	@Override
+	public String toString() {
+		return (isBigEndian() ? "big" : "little") + "-endian, "
+				+ (_u64 ? 64 : 32) + "-bit";
+	}
+
+	private static class LittleEndian extends SasLayout {
+
+		LittleEndian(boolean u64) {
+			super(u64);
+		}
+
+		@Override
+		public boolean isBigEndian() {
+			return false;
+		}
+
+		@Override
+		public short readShort(byte[] buffer, int off) {
+			return IO.readShort(buffer, off);
+		}
+
+		@Override
+		public int readInt(byte[] buffer, int off) {
+			return IO.readInt(buffer, off);
+		}
+
+		@Override
+		public long readLong(byte[] buffer, int off) {
+			return IO.readLong(buffer, off);
+		}
+
+		@Override
+		public int readWord(byte[] buffer, int off) {
+			return IO.readInt(buffer, off);
+		}
+
+		@Override
+		public double readNumeric(byte[] buffer, int off, int len) {
+			return IO.readNumeric(buffer, off, len);
+		}
+
+		@Override
+		public int readSignature(byte[] buffer, int off) {
+			// the significant bytes come first
+			return IO.readInt(buffer, off);
+		}
+	}
+
+	private static final class LittleEndian64 extends LittleEndian {
+
+		LittleEndian64() {
+			super(true);
+		}
+
+		@Override
+		public int readWord(byte[] buffer, int off) {
+			return toInt(IO.readLong(buffer, off), off);
+		}
+	}
+
+	private static class BigEndian extends SasLayout {
+
+		BigEndian(boolean u64) {
+			super(u64);
+		}
+
+		@Override
+		public boolean isBigEndian() {
+			return true;
+		}
+
+		@Override
+		public short readShort(byte[] buffer, int off) {
+			return IO.readBigEndianShort(buffer, off);
+		}
+
+		@Override
+		public int readInt(byte[] buffer, int off) {
+			return IO.readBigEndianInt(buffer, off);
+		}
+
+		@Override
+		public long readLong(byte[] buffer, int off) {
+			return IO.readBigEndianLong(buffer, off);
+		}
+
+		@Override
+		public int readWord(byte[] buffer, int off) {
+			return IO.readBigEndianInt(buffer, off);
+		}
+
+		@Override
+		public double readNumeric(byte[] buffer, int off, int len) {
+			return IO.readBigEndianNumeric(buffer, off, len);
+		}
+
+		@Override
+		public int readSignature(byte[] buffer, int off) {
+			// the significant bytes come last
+			return IO.readBigEndianInt(buffer, off + getWordLength() - 4);
+		}
+	}
+
+	private static final class BigEndian64 extends BigEndian {
+
+		BigEndian64() {
+			super(true);
+		}
+
+		@Override
+		public int readWord(byte[] buffer, int off) {
+			return toInt(IO.readBigEndianLong(buffer, off), off);
+		}
+	}
+
+	private static int toInt(long word, int off) {
+		if (word != (int) word) {
+			throw new SasReaderException("Word at offset " + off
+					+ " is out of range: " + word);
+		}
+		return (int) word;
+	}
+}
@@ -0,0 +1,245 @@
+/**
+ * eobjects.org SassyReader
+ * Copyright (C) 2011 eobjects.org
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.eobjects.metamodel.sas;
+
+/**
+ * Represents the metadata of a sas7bdat file, ie. the information parsed from
+ * the header and the subheaders (row size, column size, column attributes,
+ * names and labels) which is needed to decode the rows of the data pages.
+ * 
+ * The information read from the file is final, but instances are not
+ * immutable: the {@link SasRowIndex} and {@link SasZoneMap} of the file are
+ * attached later, with {@link #setRowIndex(SasRowIndex)} and
+ * {@link #setZoneMap(SasZoneMap)}, the first time a reader needs them. Both
+ * are held in volatile fields, so instances can be shared between threads,
+ * and are shared by all readers of a file through the
+ * {@link SasMetadataCache}, which means that an index or zone map attached by
+ * one reader is used by every other reader of the same (unchanged) file.
+ * Since they are derived entirely from the file, a race between two readers
+ * building them is harmless: the last one set wins.
+ */
+final class SasMetadata {
+
+	private final SasHeader _header;
+	private final int _rowLength;
+	private final int _rowCount;
+	private final int _mixPageRowCount;
+	private final int _firstDataPageNumber;
+	private final int[] _metadataPageNumbers;
+	private final String[] _columnNames;
+	private final String[] _columnLabels;
+	private final String[] _columnFormats;
+	private final SasColumnType[] _columnTypes;
+	private final SasColumnType[] _dateTimeColumnTypes;
+	private final int[] _columnOffsets;
+	private final int[] _columnLengths;
+	private final SasCompression _compression;
+	private volatile SasRowIndex _rowIndex;
+	private volatile SasZoneMap _zoneMap;
+
+	public SasMetadata(SasHeader header, int rowLength, int rowCount,
+			int mixPageRowCount, int firstDataPageNumber,
+			int[] metadataPageNumbers, String[] columnNames, String[] columnLabels,
+			String[] columnFormats, SasColumnType[] columnTypes,
+			int[] columnOffsets, int[] columnLengths,
+			SasCompression compression) {
+		_header = header;
+		_rowLength = rowLength;
+		_rowCount = rowCount;
+		_mixPageRowCount = mixPageRowCount;
+		_firstDataPageNumber = firstDataPageNumber;
+		_metadataPageNumbers = metadataPageNumbers;
+		_columnNames = columnNames;
+		_columnLabels = columnLabels;
+		_columnFormats = columnFormats;
+		_columnTypes = columnTypes;
+		_dateTimeColumnTypes = new SasColumnType[columnTypes.length];
+		for (int i = 0; i < columnTypes.length; i++) {
+			if (columnTypes[i] == SasColumnType.NUMERIC) {
+				_dateTimeColumnTypes[i] = SasDateTimeFormats
+						.getColumnType(columnFormats[i]);
+			}
+		}
+		_columnOffsets = columnOffsets;
+		_columnLengths = columnLengths;
+		_compression = compression;
+	}
+
+	public SasHeader getHeader() {
+		return _header;
+	}
+
+	/**
+	 * Gets the length (in bytes) of each row.
+	 * 
+	 * @return
+	 */
+	public int getRowLength() {
+		return _rowLength;
+	}
+
+	/**
+	 * Gets the total amount of rows in the file.
+	 * 
+	 * @return
+	 */
+	public int getRowCount() {
+		return _rowCount;
+	}
+
+	/**
+	 * Gets the amount of rows on "mix" pages (pages with both subheaders and
+	 * data).
+	 * 
+	 * @return
+	 */
+	public int getMixPageRowCount() {
+		return _mixPageRowCount;
+	}
+
+	/**
+	 * Gets the number (0-based) of the first page that contains data.
+	 * 
+	 * @return
+	 */
+	public int getFirstDataPageNumber() {
+		return _firstDataPageNumber;
+	}
+
+	/**
+	 * Gets the numbers (0-based, ascending) of the pages that hold the
+	 * subheaders that the metadata was parsed from.
+	 * 
+	 * @return
+	 */
+	public int[] getMetadataPageNumbers() {
+		return _metadataPageNumbers.clone();
+	}
+
+	public int getColumnCount() {
+		return _columnNames.length;
+	}
+
+	public String getColumnName(int columnIndex) {
+		return _columnNames[columnIndex];
+	}
+
+	public String getColumnLabel(int columnIndex) {
+		return _columnLabels[columnIndex];
+	}
+
+	/**
+	 * Gets the format of a column, eg. "DATE" or "BEST", or null if the
+	 * column has no format.
+	 * 
+	 * @param columnIndex
+	 * @return
+	 */
+	public String getColumnFormat(int columnIndex) {
+		return _columnFormats[columnIndex];
+	}
+
+	/**
+	 * Gets the physical type of a column, ie. {@link SasColumnType#NUMERIC}
+	 * or {@link SasColumnType#CHARACTER}.
+	 * 
+	 * @param columnIndex
+	 * @return
+	 */
+	public SasColumnType getColumnType(int columnIndex) {
+		return _columnTypes[columnIndex];
+	}
+
+	/**
+	 * Gets the date/time type of a numeric column, based on its format.
+	 * 
+	 * @param columnIndex
+	 * @return {@link SasColumnType#DATE}, {@link SasColumnType#DATETIME},
+	 *         {@link SasColumnType#TIME} or null if the column does not hold
+	 *         dates or times
+	 */
+	public SasColumnType getDateTimeColumnType(int columnIndex) {
+		return _dateTimeColumnTypes[columnIndex];
+	}
+
+	/**
+	 * Gets the offset of a column's values within a row.
+	 * 
+	 * @param columnIndex
+	 * @return
+	 */
+	public int getColumnOffset(int columnIndex) {
+		return _columnOffsets[columnIndex];
+	}
+
+	public int getColumnLength(int columnIndex) {
+		return _columnLengths[columnIndex];
+	}
+
+	/**
+	 * Gets the compression method of the file, or null if the file is not
+	 * compressed.
+	 * 
+	 * @return
+	 */
+	public SasCompression getCompression() {
+		return _compression;
+	}
+
+	/**
+	 * Gets the row index of the file, or null if it has not been built yet.
+	 * 
+	 * @return
+	 */
+	public SasRowIndex getRowIndex() {
+		return _rowIndex;
+	}
+
+	/**
+	 * Attaches the row index of the file, for all readers that share this
+	 * instance.
+	 * 
+	 * @param rowIndex
+	 */
+	public void setRowIndex(SasRowIndex rowIndex) {
+		_rowIndex = rowIndex;
+	}
+
+	/**
+	 * Gets the zone map of the file, or null if it has not been built or
+	 * loaded yet.
+	 * 
+	 * @return
+	 */
+	public SasZoneMap getZoneMap() {
+		return _zoneMap;
+	}
+
+	/**
+	 * Attaches the zone map of the file, for all readers that share this
+	 * instance.
+	 * 
+	 * @param zoneMap
+	 *            the zone map, or null to detach it
+	 */
+	public void setZoneMap(SasZoneMap zoneMap) {
+		_zoneMap = zoneMap;
+	}
+}
@@ -0,0 +1,120 @@
+/**
+ * eobjects.org SassyReader
+ * Copyright (C) 2011 eobjects.org
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.eobjects.metamodel.sas;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A JVM-wide cache of {@link SasMetadata}, shared by all {@link SasReader}s
+ * (and thus all SAS tables and data contexts). Entries are keyed by the path
+ * of the file (or the qualified path of a resource) and are only valid as
+ * long as the size and last modification time of the file are unchanged. The cache is bounded and evicts the least
+ * recently used entries.
+ */
+final class SasMetadataCache {
+
+	private static final int MAX_ENTRIES = 4096;
+
+	private static final SasMetadataCache INSTANCE = new SasMetadataCache(
+			MAX_ENTRIES);
+
+	public static SasMetadataCache getInstance() {
+		return INSTANCE;
+	}
+
+	private final Map<String, Entry> _entries;
+
+	public SasMetadataCache(final int maxEntries) {
+		_entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Gets the cached metadata of a file.
+	 * 
+	 * @param file
+	 * @param length
+	 *            the current length of the file
+	 * @param lastModified
+	 *            the current last modification time of the file
+	 * @return the cached metadata, or null if the file is not cached or has
+	 *         changed since it was cached
+	 */
+	public SasMetadata get(File file, long length, long lastModified) {
+		return get(file.getAbsolutePath(), length, lastModified);
+	}
+
+	/**
+	 * Gets the cached metadata of a file by its path.
+	 * 
+	 * @param path
+	 *            the absolute path of the file, or the qualified path of a
+	 *            resource
+	 * @param length
+	 * @param lastModified
+	 * @return
+	 */
+	public synchronized SasMetadata get(String path, long length,
+			long lastModified) {
+		final Entry entry = _entries.get(path);
+		if (entry == null) {
+			return null;
+		}
+		if (entry.length != length || entry.lastModified != lastModified) {
+			_entries.remove(path);
+			return null;
+		}
+		return entry.metadata;
+	}
+
+	public void put(File file, long length, long lastModified,
+			SasMetadata metadata) {
+		put(file.getAbsolutePath(), length, lastModified, metadata);
+	}
+
+	public synchronized void put(String path, long length, long lastModified,
+			SasMetadata metadata) {
+		_entries.put(path, new Entry(length, lastModified, metadata));
+	}
+
+	public synchronized void clear() {
+		_entries.clear();
+	}
+
+	private static final class Entry {
+		private final long length;
+		private final long lastModified;
+		private final SasMetadata metadata;
+
+		public Entry(long length, long lastModified, SasMetadata metadata) {
+			this.length = length;
+			this.lastModified = lastModified;
+			this.metadata = metadata;
+		}
+	}
+}
@@ -0,0 +1,158 @@
+/**
+ * eobjects.org SassyReader
+ * Copyright (C) 2011 eobjects.org
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.eobjects.metamodel.sas;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads a list of pages ahead of their consumer, on a separate I/O thread.
+ * The pages are read into a bounded ring of page buffers, so that the I/O
+ * thread keeps up to a configured number of pages loaded while the consumer
+ * decodes the current page, without allocating a buffer per page.
+ * 
+ * The page source is used exclusively by the I/O thread until the prefetcher
+ * is closed.
+ */
+final class SasPagePrefetcher implements Closeable {
+
+	/**
+	 * A page buffer of the ring.
+	 */
+	private static final class Page {
+		final byte[] data;
+		int read;
+		Exception error;
+
+		Page(int pageSize) {
+			data = new byte[pageSize];
+		}
+	}
+
+	private final BlockingQueue<Page> _freePages;
+	private final BlockingQueue<Page> _loadedPages;
+	private final Thread _thread;
+	private Page _currentPage;
+
+	/**
+	 * Creates a prefetcher and starts reading pages.
+	 * 
+	 * @param source
+	 *            the source to read pages from
+	 * @param name
+	 *            a name for the I/O thread
+	 * @param positions
+	 *            the positions of the pages to read, in order
+	 * @param pageSize
+	 *            the size of the pages
+	 * @param depth
+	 *            the max. number of pages to read ahead
+	 */
+	public SasPagePrefetcher(final SasPageSource source, String name,
+			final long[] positions, final int pageSize, int depth) {
+		// one buffer more than the depth, for the page being consumed
+		_freePages = new ArrayBlockingQueue<Page>(depth + 1);
+		_loadedPages = new ArrayBlockingQueue<Page>(depth + 1);
+		for (int i = 0; i <= depth; i++) {
+			_freePages.add(new Page(pageSize));
+		}
+
+		_thread = new Thread(name) {
+			@Override
+			public void run() {
+				try {
+					for (long position : positions) {
+						final Page page = _freePages.take();
+						try {
+							page.read = source.read(position, page.data,
+									pageSize);
+						} catch (Exception e) {
+							page.error = e;
+						}
+						_loadedPages.put(page);
+						if (page.read == 0 || page.error != null) {
+							// end of file or failure, stop reading
+							return;
+						}
+					}
+				} catch (InterruptedException e) {
+					// closed by the consumer
+				}
+			}
+		};
+		_thread.setDaemon(true);
+		_thread.start();
+	}
+
+	/**
+	 * Gets the next page. The page buffer is recycled (ie. overwritten) once
+	 * the next page is requested.
+	 * 
+	 * @return the buffer holding the page
+	 * @throws IOException
+	 *             if reading the page failed
+	 */
+	public byte[] nextPage() throws IOException {
+		if (_currentPage != null) {
+			_freePages.add(_currentPage);
+			_currentPage = null;
+		}
+		final Page page;
+		try {
+			page = _loadedPages.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for page", e);
+		}
+		if (page.error != null) {
+			if (page.error instanceof IOException) {
+				throw (IOException) page.error;
+			}
+			throw new IOException("Reading page failed", page.error);
+		}
+		_currentPage = page;
+		return page.data;
+	}
+
+	/**
+	 * Gets the number of bytes read into the buffer of the current page. 0
+	 * means that the end of file was reached.
+	 * 
+	 * @return
+	 */
+	public int getBytesRead() {
+		return _currentPage.read;
+	}
+
+	/**
+	 * Stops the I/O thread, and waits for it to finish any read in progress.
+	 */
+	@Override
+	public void close() {
+		_thread.interrupt();
+		try {
+			_thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
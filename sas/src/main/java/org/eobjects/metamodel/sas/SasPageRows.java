@@ -0,0 +1,175 @@
+/**
+ * eobjects.org SassyReader
+ * Copyright (C) 2011 eobjects.org
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.eobjects.metamodel.sas;
+
+/**
+ * Locates the rows of a page. On data and mix pages the rows are stored back
+ * to back in the page itself, while compressed files store each row as a
+ * subheader of a meta page. Such rows are decompressed into a row buffer,
+ * which is reused (and only grown when needed) for all pages, so that the
+ * rows of any page can be decoded from a byte array, an offset and the row
+ * length.
+ * 
+ * Instances are not thread-safe.
+ */
+final class SasPageRows {
+
+	private final SasMetadata _metadata;
+	private final SasLayout _layout;
+	private final SasCompression _compression;
+	private byte[] _rowBuffer;
+	private byte[] _data;
+	private int _offset;
+	private int _count;
+
+	public SasPageRows(SasMetadata metadata) {
+		_metadata = metadata;
+		_layout = metadata.getHeader().getLayout();
+		_compression = metadata.getCompression();
+		_rowBuffer = null;
+	}
+
+	/**
+	 * Locates the rows of a page that has been read into a page buffer.
+	 * 
+	 * @param pageNumber
+	 * @param pageData
+	 *            the page buffer
+	 * @param pageType
+	 * @return false if the page does not hold any rows
+	 */
+	public boolean load(int pageNumber, byte[] pageData, byte pageType) {
+		if (pageType == 1 || pageType == 2) {
+			_data = pageData;
+			_offset = SasReader.getPageRowOffset(_layout, pageData,
+					pageType);
+			_count = SasReader.getPageRowCount(_metadata, pageData, pageType);
+			return true;
+		}
+		if (_compression != null && SasReader.isMetaPage(pageType)) {
+			_offset = 0;
+			_count = decompressRows(pageNumber, pageData);
+			return _count > 0;
+		}
+		return false;
+	}
+
+	/**
+	 * Decompresses the row subheaders of a meta page into the row buffer.
+	 * 
+	 * @return the amount of rows
+	 */
+	private int decompressRows(int pageNumber, byte[] pageData) {
+		final int rowLength = _metadata.getRowLength();
+		final int subhCount = _layout.getSubHeaderCount(pageData);
+		int count = 0;
+		for (int i = 0; i < subhCount; i++) {
+			final int base = _layout.getSubHeaderPointerOffset(i);
+			final int offset = _layout.getSubHeaderOffset(pageData, base);
+			final int length = _layout.getSubHeaderLength(pageData, base);
+			final byte compressionFlag = _layout.getSubHeaderCompression(
+					pageData, base);
+			final byte subHeaderType = _layout.getSubHeaderType(pageData, base);
+			if (length <= 0 || subHeaderType != 1) {
+				continue;
+			}
+			if (offset < 0 || offset + length > pageData.length) {
+				throw new SasReaderException("Subheader exceeds page "
+						+ pageNumber + "! page size: " + pageData.length
+						+ ", subheader offset: " + offset + ", length: "
+						+ length);
+			}
+			if (!isRow(pageData, offset, length, compressionFlag, rowLength)) {
+				continue;
+			}
+
+			final int rowOffset = count * rowLength;
+			if (_rowBuffer == null || rowOffset + rowLength > _rowBuffer.length) {
+				grow(rowOffset + rowLength);
+			}
+			if (length < rowLength) {
+				_compression.decompress(pageData, offset, length, _rowBuffer,
+						rowOffset, rowLength);
+			} else {
+				System.arraycopy(pageData, offset, _rowBuffer, rowOffset,
+						rowLength);
+			}
+			count++;
+		}
+		_data = _rowBuffer;
+		return count;
+	}
+
+	/**
+	 * Determines if a subheader of a compressed file is a row, ie. it is
+	 * compressed, or it has the length of a row and is not a metadata
+	 * subheader.
+	 */
+	private boolean isRow(byte[] pageData, int offset, int length,
+			byte compressionFlag, int rowLength) {
+		if (compressionFlag == 4) {
+			return true;
+		}
+		return compressionFlag == 0
+				&& length == rowLength
+				&& (length < _layout.getWordLength() || !SasSubHeaderCatalog
+						.isMetadataSignature(_layout.readSignature(pageData,
+								offset)));
+	}
+
+	private void grow(int minLength) {
+		final int length = Math.max(minLength, _rowBuffer == null ? _metadata
+				.getHeader().getPageSize() : _rowBuffer.length * 2);
+		final byte[] rowBuffer = new byte[length];
+		if (_rowBuffer != null) {
+			System.arraycopy(_rowBuffer, 0, rowBuffer, 0, _rowBuffer.length);
+		}
+		_rowBuffer = rowBuffer;
+	}
+
+	/**
+	 * Gets the byte array that holds the rows of the current page, ie. the
+	 * page buffer or the row buffer.
+	 * 
+	 * @return
+	 */
+	public byte[] getData() {
+		return _data;
+	}
+
+	/**
+	 * Gets the offset of the first row of the current page in
+	 * {@link #getData()}.
+	 * 
+	 * @return
+	 */
+	public int getOffset() {
+		return _offset;
+	}
+
+	/**
+	 * Gets the amount of rows of the current page.
+	 * 
+	 * @return
+	 */
+	public int getCount() {
+		return _count;
+	}
+}
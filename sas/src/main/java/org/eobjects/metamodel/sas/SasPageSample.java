@@ -0,0 +1,168 @@
+/**
+ * eobjects.org SassyReader
+ * Copyright (C) 2011 eobjects.org
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.eobjects.metamodel.sas;
+
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * Describes a sample of the data pages of a sas7bdat file, for reading a
+ * representative subset of the rows of a file without reading the whole file.
+ * A sample is either a fixed count or a fraction of the pages, which are
+ * picked either uniformly at random (using a seed, so that a sample can be
+ * reproduced) or evenly strided across the file.
+ * 
+ * @see SasReader#setPageSample(SasPageSample)
+ */
+public final class SasPageSample {
+
+	private final int _pageCount;
+	private final double _fraction;
+	private final boolean _random;
+	private final long _seed;
+
+	private SasPageSample(int pageCount, double fraction, boolean random,
+			long seed) {
+		_pageCount = pageCount;
+		_fraction = fraction;
+		_random = random;
+		_seed = seed;
+	}
+
+	/**
+	 * Creates a sample of a number of pages, picked at random.
+	 * 
+	 * @param pageCount
+	 *            the number of pages to sample
+	 * @param seed
+	 *            the seed of the random selection
+	 * @return
+	 */
+	public static SasPageSample random(int pageCount, long seed) {
+		checkPageCount(pageCount);
+		return new SasPageSample(pageCount, -1, true, seed);
+	}
+
+	/**
+	 * Creates a sample of a fraction of the pages, picked at random.
+	 * 
+	 * @param fraction
+	 *            the fraction (0 &lt; fraction &lt;= 1) of the pages to sample
+	 * @param seed
+	 *            the seed of the random selection
+	 * @return
+	 */
+	public static SasPageSample randomFraction(double fraction, long seed) {
+		checkFraction(fraction);
+		return new SasPageSample(-1, fraction, true, seed);
+	}
+
+	/**
+	 * Creates a sample of a number of pages, evenly strided across the file.
+	 * 
+	 * @param pageCount
+	 *            the number of pages to sample
+	 * @return
+	 */
+	public static SasPageSample strided(int pageCount) {
+		checkPageCount(pageCount);
+		return new SasPageSample(pageCount, -1, false, 0);
+	}
+
+	/**
+	 * Creates a sample of a fraction of the pages, evenly strided across the
+	 * file.
+	 * 
+	 * @param fraction
+	 *            the fraction (0 &lt; fraction &lt;= 1) of the pages to sample
+	 * @return
+	 */
+	public static SasPageSample stridedFraction(double fraction) {
+		checkFraction(fraction);
+		return new SasPageSample(-1, fraction, false, 0);
+	}
+
+	private static void checkPageCount(int pageCount) {
+		if (pageCount < 1) {
+			throw new IllegalArgumentException(
+					"Page count must be positive: " + pageCount);
+		}
+	}
+
+	private static void checkFraction(double fraction) {
+		if (!(fraction > 0 && fraction <= 1)) {
+			throw new IllegalArgumentException(
+					"Fraction must be above 0 and at most 1: " + fraction);
+		}
+	}
+
+	/**
+	 * Selects the pages of the sample.
+	 * 
+	 * @param firstPageNumber
+	 *            the number of the first page to select from
+	 * @param pageCount
+	 *            the number of pages to select from
+	 * @return the selected page numbers, in ascending order
+	 */
+	int[] selectPages(int firstPageNumber, int pageCount) {
+		if (pageCount <= 0) {
+			return new int[0];
+		}
+		final int sampleSize;
+		if (_pageCount == -1) {
+			sampleSize = (int) Math.min(pageCount,
+					Math.ceil(_fraction * pageCount));
+		} else {
+			sampleSize = Math.min(pageCount, _pageCount);
+		}
+
+		final int[] result = new int[sampleSize];
+		if (_random) {
+			// Floyd's algorithm picks distinct pages without shuffling them
+			// all
+			final Random random = new Random(_seed);
+			final BitSet selected = new BitSet(pageCount);
+			for (int j = pageCount - sampleSize; j < pageCount; j++) {
+				final int page = random.nextInt(j + 1);
+				selected.set(selected.get(page) ? j : page);
+			}
+			int i = 0;
+			for (int page = selected.nextSetBit(0); page >= 0; page = selected
+					.nextSetBit(page + 1)) {
+				result[i++] = firstPageNumber + page;
+			}
+		} else {
+			for (int i = 0; i < sampleSize; i++) {
+				result[i] = firstPageNumber
+						+ (int) ((long) i * pageCount / sampleSize);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return "SasPageSample[" + (_random ? "random" : "strided") + ","
+				+ (_pageCount == -1 ? "fraction=" + _fraction : "pages="
+						+ _pageCount) + (_random ? ",seed=" + _seed : "")
+				+ "]";
+	}
+}
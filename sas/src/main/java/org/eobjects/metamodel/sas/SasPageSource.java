@@ -0,0 +1,49 @@
+/**
+ * eobjects.org SassyReader
+ * Copyright (C) 2011 eobjects.org
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.eobjects.metamodel.sas;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A source of the raw bytes of a sas7bdat file, which the {@link SasReader}
+ * reads the header and the pages from. Pages are read into a buffer owned by
+ * the caller, which can thus be reused for all pages of a file.
+ */
+interface SasPageSource extends Closeable {
+
+	/**
+	 * Reads bytes from the file into a buffer. Unlike
+	 * {@link java.io.InputStream#read(byte[])} this method does not return
+	 * before the requested amount of bytes has been read or the end of the
+	 * file has been reached.
+	 * 
+	 * @param position
+	 *            the position in the file to read from
+	 * @param buffer
+	 *            the buffer to read into
+	 * @param len
+	 *            the amount of bytes to read
+	 * @return the amount of bytes read, which is only less than len if the
+	 *         end of the file was reached
+	 * @throws IOException
+	 */
+	public int read(long position, byte[] buffer, int len) throws IOException;
+}
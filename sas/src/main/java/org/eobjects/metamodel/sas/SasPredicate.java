@@ -0,0 +1,315 @@
+/**
+ * eobjects.org SassyReader
+ * Copyright (C) 2011 eobjects.org
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.eobjects.metamodel.sas;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * A predicate on the value of a single column, which the {@link SasReader}
+ * evaluates on the raw cell in the page data, before the rest of the row is
+ * decoded. Rows that do not satisfy the predicate are skipped without being
+ * decoded.
+ * 
+ * Operands must be {@link Number}s for numeric columns and {@link String}s for
+ * character columns. Numbers are compared like {@link Double#compare(double,
+ * double)}, so (missing) NaN values are equal to each other and greater than
+ * any other number. Character values are compared to the operands in their
+ * trimmed form, like they are read.
+ * 
+ * @see SasReader#setPredicates(SasPredicate...)
+ */
+public final class SasPredicate {
+
+	public static enum Operator {
+		EQUALS_TO, LESS_THAN, LESS_THAN_OR_EQUAL, GREATER_THAN,
+		GREATER_THAN_OR_EQUAL, IN, IS_NULL
+	}
+
+	private final int _columnIndex;
+	private final Operator _operator;
+	private final Object[] _operands;
+
+	// operands pre-converted for fast evaluation
+	private final double[] _numberOperands;
+	private final byte[][] _stringOperands;
+
+	public static SasPredicate equalTo(int columnIndex, Object operand) {
+		return new SasPredicate(columnIndex, Operator.EQUALS_TO,
+				new Object[] { operand });
+	}
+
+	public static SasPredicate lessThan(int columnIndex, Object operand) {
+		return new SasPredicate(columnIndex, Operator.LESS_THAN,
+				new Object[] { operand });
+	}
+
+	public static SasPredicate lessThanOrEqual(int columnIndex,
+			Object operand) {
+		return new SasPredicate(columnIndex, Operator.LESS_THAN_OR_EQUAL,
+				new Object[] { operand });
+	}
+
+	public static SasPredicate greaterThan(int columnIndex, Object operand) {
+		return new SasPredicate(columnIndex, Operator.GREATER_THAN,
+				new Object[] { operand });
+	}
+
+	public static SasPredicate greaterThanOrEqual(int columnIndex,
+			Object operand) {
+		return new SasPredicate(columnIndex, Operator.GREATER_THAN_OR_EQUAL,
+				new Object[] { operand });
+	}
+
+	public static SasPredicate in(int columnIndex, Collection<?> operands) {
+		return new SasPredicate(columnIndex, Operator.IN, operands.toArray());
+	}
+
+	public static SasPredicate isNull(int columnIndex) {
+		return new SasPredicate(columnIndex, Operator.IS_NULL, new Object[0]);
+	}
+
+	private SasPredicate(int columnIndex, Operator operator, Object[] operands) {
+		_columnIndex = columnIndex;
+		_operator = operator;
+		_operands = operands;
+
+		boolean numbers = true;
+		boolean strings = true;
+		for (Object operand : operands) {
+			if (operand == null) {
+				throw new IllegalArgumentException(
+						"Operand cannot be null, use isNull(...) instead");
+			}
+			numbers = numbers && operand instanceof Number;
+			strings = strings && operand instanceof String;
+		}
+
+		if (numbers) {
+			_numberOperands = new double[operands.length];
+			for (int i = 0; i < operands.length; i++) {
+				_numberOperands[i] = ((Number) operands[i]).doubleValue();
+			}
+		} else {
+			_numberOperands = null;
+		}
+
+		if (strings) {
+			_stringOperands = new byte[operands.length][];
+			for (int i = 0; i < operands.length; i++) {
+				// null if the operand cannot be encoded, ie. never matches
+				_stringOperands[i] = IO.encodeString((String) operands[i]);
+			}
+		} else {
+			_stringOperands = null;
+		}
+
+		if (!numbers && !strings) {
+			throw new IllegalArgumentException(
+					"Operands must be either all numbers or all strings: "
+							+ Arrays.toString(operands));
+		}
+	}
+
+	public int getColumnIndex() {
+		return _columnIndex;
+	}
+
+	public Operator getOperator() {
+		return _operator;
+	}
+
+	public Object[] getOperands() {
+		return _operands.clone();
+	}
+
+	/**
+	 * Determines if the predicate can be evaluated on a column of a
+	 * particular type.
+	 * 
+	 * @param columnType
+	 * @return
+	 */
+	boolean isApplicable(SasColumnType columnType) {
+		if (_operator == Operator.IS_NULL) {
+			return true;
+		}
+		if (columnType == SasColumnType.NUMERIC) {
+			return _numberOperands != null;
+		}
+		return _stringOperands != null;
+	}
+
+	/**
+	 * Evaluates the predicate on a raw cell.
+	 * 
+	 * @param pageData
+	 *            the data of the page that holds the cell
+	 * @param off
+	 *            the offset of the cell
+	 * @param len
+	 *            the length of the cell
+	 * @param character
+	 *            whether the cell is of a character column
+	 * @param layout
+	 *            the layout of the file, for reading numeric cells
+	 * @return
+	 */
+	boolean evaluate(byte[] pageData, int off, int len, boolean character,
+			SasLayout layout) {
+		if (len == 0) {
+			// zero length cells are read as null
+			return _operator == Operator.IS_NULL;
+		}
+		if (_operator == Operator.IS_NULL) {
+			return false;
+		}
+
+		if (character) {
+			return evaluateCharacter(pageData, off, len);
+		}
+
+		final double value = layout.readNumeric(pageData, off, len);
+		switch (_operator) {
+		case EQUALS_TO:
+		case IN:
+			for (double operand : _numberOperands) {
+				if (Double.compare(value, operand) == 0) {
+					return true;
+				}
+			}
+			return false;
+		case LESS_THAN:
+			return Double.compare(value, _numberOperands[0]) < 0;
+		case LESS_THAN_OR_EQUAL:
+			return Double.compare(value, _numberOperands[0]) <= 0;
+		case GREATER_THAN:
+			return Double.compare(value, _numberOperands[0]) > 0;
+		case GREATER_THAN_OR_EQUAL:
+			return Double.compare(value, _numberOperands[0]) >= 0;
+		default:
+			throw new IllegalStateException("Unsupported operator: "
+					+ _operator);
+		}
+	}
+
+	/**
+	 * Determines if the predicate may be satisfied by any of a range of
+	 * numeric cells, based on statistics of the range. Predicates that do not
+	 * compare numbers are always considered satisfiable.
+	 * 
+	 * @param min
+	 *            the min. non-missing value, or NaN if there are none
+	 * @param max
+	 *            the max. non-missing value, or NaN if there are none
+	 * @param missingCount
+	 *            the amount of missing (NaN) values
+	 * @return false if no cell in the range can satisfy the predicate
+	 */
+	boolean mayMatch(double min, double max, int missingCount) {
+		if (_operator == Operator.IS_NULL || _numberOperands == null) {
+			return true;
+		}
+
+		// comparisons are like in evaluate(...), where NaN is the greatest
+		final boolean hasValues = !Double.isNaN(min);
+		switch (_operator) {
+		case EQUALS_TO:
+		case IN:
+			for (double operand : _numberOperands) {
+				if (Double.isNaN(operand)) {
+					if (missingCount > 0) {
+						return true;
+					}
+				} else if (hasValues && Double.compare(operand, min) >= 0
+						&& Double.compare(operand, max) <= 0) {
+					return true;
+				}
+			}
+			return false;
+		case LESS_THAN:
+			return hasValues && Double.compare(min, _numberOperands[0]) < 0;
+		case LESS_THAN_OR_EQUAL:
+			return (missingCount > 0 && Double.isNaN(_numberOperands[0]))
+					|| (hasValues && Double.compare(min, _numberOperands[0]) <= 0);
+		case GREATER_THAN:
+			return (missingCount > 0 && Double.compare(Double.NaN,
+					_numberOperands[0]) > 0)
+					|| (hasValues && Double.compare(max, _numberOperands[0]) > 0);
+		case GREATER_THAN_OR_EQUAL:
+			return missingCount > 0
+					|| (hasValues && Double.compare(max, _numberOperands[0]) >= 0);
+		default:
+			return true;
+		}
+	}
+
+	private boolean evaluateCharacter(byte[] pageData, int off, int len) {
+		// trim the cell like when reading it
+		final int end = IO.trimEnd(pageData, off, off + len);
+		off = IO.trimStart(pageData, off, end);
+		len = end - off;
+
+		switch (_operator) {
+		case EQUALS_TO:
+		case IN:
+			for (byte[] operand : _stringOperands) {
+				if (operand != null && equals(operand, pageData, off, len)) {
+					return true;
+				}
+			}
+			return false;
+		case LESS_THAN:
+			return IO.readString(pageData, off, len).compareTo(
+					(String) _operands[0]) < 0;
+		case LESS_THAN_OR_EQUAL:
+			return IO.readString(pageData, off, len).compareTo(
+					(String) _operands[0]) <= 0;
+		case GREATER_THAN:
+			return IO.readString(pageData, off, len).compareTo(
+					(String) _operands[0]) > 0;
+		case GREATER_THAN_OR_EQUAL:
+			return IO.readString(pageData, off, len).compareTo(
+					(String) _operands[0]) >= 0;
+		default:
+			throw new IllegalStateException("Unsupported operator: "
+					+ _operator);
+		}
+	}
+
+	private static boolean equals(byte[] operand, byte[] pageData, int off,
+			int len) {
+		if (operand.length != len) {
+			return false;
+		}
+		for (int i = 0; i < len; i++) {
+			if (operand[i] != pageData[off + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return "SasPredicate[columnIndex=" + _columnIndex + ",operator="
+				+ _operator + ",operands=" + Arrays.toString(_operands) + "]";
+	}
+}
@@ -20,14 +20,25 @@
 package org.eobjects.metamodel.sas;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.metamodel.util.FileResource;
+import org.apache.metamodel.util.Resource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,20 +52,6 @@ public class SasReader {
 	private static final Logger logger = LoggerFactory
 			.getLogger(SasReader.class);
 
-	// Subheader 'signatures'
-	private static final byte[] SUBH_ROWSIZE = IO.toBytes(0xf7, 0xf7, 0xf7,
-			0xf7);
-	private static final byte[] SUBH_COLSIZE = IO.toBytes(0xf6, 0xf6, 0xf6,
-			0xf6);
-	private static final byte[] SUBH_COLTEXT = IO.toBytes(0xFD, 0xFF, 0xFF,
-			0xFF);
-	private static final byte[] SUBH_COLATTR = IO.toBytes(0xFC, 0xFF, 0xFF,
-			0xFF);
-	private static final byte[] SUBH_COLNAME = IO.toBytes(0xFF, 0xFF, 0xFF,
-			0xFF);
-	private static final byte[] SUBH_COLLABS = IO.toBytes(0xFE, 0xFB, 0xFF,
-			0xFF);
-
 	/**
 	 * Magic number
 	 */
@@ -63,19 +60,471 @@ public class SasReader {
 			0x14, 0x11, 0xcf, 0xbd, 0x92, 0x8, 0x0, 0x9, 0xc7, 0x31, 0x8c,
 			0x18, 0x1f, 0x10, 0x11);
 
+	/**
+	 * The minimum length of the file header, which holds all the fields that
+	 * are read from it. The actual length is recorded in the header.
+	 */
+	private static final int MIN_HEADER_LENGTH = 1024;
+
+	/**
+	 * The number of pages that each worker decodes at a time, when reading
+	 * with a parallelism above 1.
+	 */
+	private static final int PAGES_PER_TASK = 16;
+
+	/**
+	 * The default max. number of distinct values per character column to keep
+	 * in the string dictionaries, when string deduplication is turned on.
+	 */
+	private static final int DEFAULT_STRING_DICTIONARY_SIZE = 1024;
+
+	/**
+	 * The size of the buffer used when decompressing gzipped resources.
+	 */
+	private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
 	private final File _file;
+	private final Resource _resource;
+	private final StreamPageSource _stream;
+	private final String _name;
+	private volatile SasMetadata _metadata;
+	private boolean _stringDeduplication;
+	private int _stringDictionarySize;
+	private boolean _dateTimeDecoding;
+	private SasReaderMetrics _metrics;
+	private boolean _memoryMapped;
+	private int _parallelism;
+	private boolean _preserveRowOrder;
+	private int[] _projection;
+	private SasPredicate[] _predicates;
+	private int _readAhead;
+	private SasPageSample _pageSample;
+	private boolean _zoneMaps;
 
 	public SasReader(File file) {
+		this(file, null, null, String.valueOf(file));
 		if (file == null) {
 			throw new IllegalArgumentException("file cannot be null");
 		}
+	}
+
+	/**
+	 * Creates a reader for a sas7bdat file held by a {@link Resource}.
+	 * Resources other than (uncompressed) {@link FileResource}s are read
+	 * sequentially from the stream returned by {@link Resource#read()}, which
+	 * is decompressed on the fly if the name of the resource ends with ".gz".
+	 * Since such a stream cannot seek, reading a range of rows decodes and
+	 * skips the rows before the first row, parallel reading is turned off and
+	 * no zone maps are used. The resource is read again for each read
+	 * operation, but if it reports its size and modification time, its
+	 * metadata is cached like that of files.
+	 * 
+	 * @param resource
+	 */
+	public SasReader(Resource resource) {
+		this(getFile(resource), getFile(resource) == null ? resource : null,
+				null, resource == null ? null : resource.getQualifiedPath());
+		if (resource == null) {
+			throw new IllegalArgumentException("resource cannot be null");
+		}
+	}
+
+	/**
+	 * Creates a reader for a sas7bdat file that is read sequentially from an
+	 * {@link InputStream}. Like for non-file {@link Resource}s, reading a
+	 * range of rows decodes and skips the rows before the first row, and
+	 * parallel reading and zone maps are turned off. The header and metadata
+	 * pages are kept in memory, but the rest of the stream can only be read
+	 * once, ie. the reader only supports a single read operation (after any
+	 * number of calls to {@link #getRowCount()}). The stream is not closed by
+	 * the reader.
+	 * 
+	 * @param inputStream
+	 */
+	public SasReader(InputStream inputStream) {
+		this(null, null, inputStream == null ? null : new StreamPageSource(
+				inputStream), "InputStream");
+		if (inputStream == null) {
+			throw new IllegalArgumentException("input stream cannot be null");
+		}
+		_stream.setRetaining(true);
+	}
+
+	private SasReader(File file, Resource resource, StreamPageSource stream,
+			String name) {
 		_file = file;
+		_resource = resource;
+		_stream = stream;
+		_name = name;
+		_stringDeduplication = false;
+		_stringDictionarySize = DEFAULT_STRING_DICTIONARY_SIZE;
+		_dateTimeDecoding = false;
+		_memoryMapped = false;
+		_parallelism = 1;
+		_preserveRowOrder = true;
+		_projection = null;
+		_predicates = null;
+		_readAhead = 0;
+		_pageSample = null;
+		_zoneMaps = false;
+	}
+
+	/**
+	 * Gets the file of a resource that can be read directly, ie. an
+	 * uncompressed {@link FileResource}.
+	 */
+	private static File getFile(Resource resource) {
+		if (resource instanceof FileResource && !isGzipped(resource)) {
+			return ((FileResource) resource).getFile();
+		}
+		return null;
 	}
 
+	private static boolean isGzipped(Resource resource) {
+		return resource.getName().toLowerCase().endsWith(".gz");
+	}
+
+	/**
+	 * Gets the file that is read, or null if the reader reads from a stream.
+	 * 
+	 * @return
+	 */
 	public File getFile() {
 		return _file;
 	}
 
+	/**
+	 * Gets the resource that is read, or null if the reader reads from a
+	 * file or an {@link InputStream}.
+	 * 
+	 * @return
+	 */
+	public Resource getResource() {
+		return _resource;
+	}
+
+	/**
+	 * Determines if the reader can seek in the file, ie. read pages in any
+	 * order. Only files can be read this way, streams are read sequentially.
+	 */
+	private boolean isSeekable() {
+		return _file != null;
+	}
+
+	/**
+	 * Determines if repeated values in character columns should be
+	 * deduplicated, ie. share the same {@link String} instance.
+	 * 
+	 * @return
+	 */
+	public boolean isStringDeduplication() {
+		return _stringDeduplication;
+	}
+
+	/**
+	 * Sets whether or not repeated values in character columns should be
+	 * deduplicated. When turned on, the reader will keep a bounded dictionary
+	 * of values per character column, so that repeated values (eg. codes,
+	 * flags and other categories) are only decoded once and share the same
+	 * {@link String} instance. This reduces both decoding time and the memory
+	 * footprint of materialized rows, but adds a lookup to each cell, which
+	 * does not pay off for high-cardinality columns.
+	 * 
+	 * @param stringDeduplication
+	 */
+	public void setStringDeduplication(boolean stringDeduplication) {
+		_stringDeduplication = stringDeduplication;
+	}
+
+	/**
+	 * Gets the max. number of distinct values per character column that are
+	 * deduplicated, when string deduplication is turned on.
+	 * 
+	 * @return
+	 */
+	public int getStringDictionarySize() {
+		return _stringDictionarySize;
+	}
+
+	/**
+	 * Sets the max. number of distinct values per character column that are
+	 * deduplicated, when string deduplication is turned on. Once a dictionary
+	 * is full, further values are decoded without being deduplicated (and
+	 * get no dictionary id in batches), which bounds the memory used for
+	 * high-cardinality columns.
+	 * 
+	 * @param stringDictionarySize
+	 */
+	public void setStringDictionarySize(int stringDictionarySize) {
+		if (stringDictionarySize < 1) {
+			throw new IllegalArgumentException(
+					"String dictionary size must be positive: "
+							+ stringDictionarySize);
+		}
+		_stringDictionarySize = stringDictionarySize;
+	}
+
+	/**
+	 * Determines if the values of numeric columns with a date, datetime or
+	 * time format should be decoded into java.time objects.
+	 * 
+	 * @return
+	 */
+	public boolean isDateTimeDecoding() {
+		return _dateTimeDecoding;
+	}
+
+	/**
+	 * Sets whether the values of numeric columns with a date, datetime or time
+	 * format should be decoded into {@link java.time.LocalDate},
+	 * {@link java.time.LocalDateTime} and {@link java.time.LocalTime} objects,
+	 * while reading rows. Such columns are reported as
+	 * {@link SasColumnType#DATE}, {@link SasColumnType#DATETIME} and
+	 * {@link SasColumnType#TIME} columns. When turned off, they are reported
+	 * as {@link SasColumnType#NUMERIC} columns and their values are the raw
+	 * SAS numbers (days or seconds since 1960-01-01, or seconds since
+	 * midnight). Batches always hold the raw numbers. Default is off.
+	 * 
+	 * @param dateTimeDecoding
+	 */
+	public void setDateTimeDecoding(boolean dateTimeDecoding) {
+		_dateTimeDecoding = dateTimeDecoding;
+	}
+
+	/**
+	 * Gets the metrics that the reader reports its work to, if any.
+	 * 
+	 * @return
+	 */
+	public SasReaderMetrics getMetrics() {
+		return _metrics;
+	}
+
+	/**
+	 * Sets the metrics that the reader should report its work to: the bytes
+	 * read and the time spent reading them, the pages read and the rows and
+	 * cells decoded and the time spent decoding them. Reports are made per
+	 * read and per page, so the overhead is small, and there is none when no
+	 * metrics are set (the default). The same metrics can be shared by
+	 * several readers.
+	 * 
+	 * @param metrics
+	 *            the metrics, or null to not report anything
+	 * @see CountingSasReaderMetrics
+	 */
+	public void setMetrics(SasReaderMetrics metrics) {
+		_metrics = metrics;
+	}
+
+	/**
+	 * Determines if the file should be memory mapped while reading.
+	 * 
+	 * @return
+	 */
+	public boolean isMemoryMapped() {
+		return _memoryMapped;
+	}
+
+	/**
+	 * Sets whether or not the file should be memory mapped while reading.
+	 * Memory mapping saves a system call per page. Pages are still copied
+	 * from the mapping into a page buffer, since the rows are located,
+	 * decompressed and decoded in byte arrays rather than in buffers.
+	 * Mapping is off by default: the JVM cannot release a mapping
+	 * explicitly, so the mapped windows of the file stay mapped until they
+	 * are garbage collected, also after the read is done. Until then, some
+	 * platforms (eg. Windows) lock the file, so it cannot be modified or
+	 * deleted. If mapping fails, the reader falls back to regular reads.
+	 * 
+	 * @param memoryMapped
+	 */
+	public void setMemoryMapped(boolean memoryMapped) {
+		_memoryMapped = memoryMapped;
+	}
+
+	/**
+	 * Gets the number of threads used to decode data pages.
+	 * 
+	 * @return
+	 */
+	public int getParallelism() {
+		return _parallelism;
+	}
+
+	/**
+	 * Sets the number of threads used to decode data pages. With a
+	 * parallelism of 1 (the default) all pages are read and decoded on the
+	 * calling thread. With a higher parallelism, the metadata is still read
+	 * on the calling thread, after which ranges of data pages are read and
+	 * decoded concurrently by a pool of worker threads.
+	 * 
+	 * Regardless of the parallelism, the {@link SasReaderCallback} is only
+	 * invoked from the calling thread.
+	 * 
+	 * @param parallelism
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException(
+					"Parallelism must be positive: " + parallelism);
+		}
+		_parallelism = parallelism;
+	}
+
+	/**
+	 * Determines if rows are delivered in file order when reading with a
+	 * parallelism above 1.
+	 * 
+	 * @return
+	 */
+	public boolean isPreserveRowOrder() {
+		return _preserveRowOrder;
+	}
+
+	/**
+	 * Sets whether rows should be delivered in file order when reading with a
+	 * parallelism above 1 (the default). If not, rows are delivered page
+	 * range by page range as the workers complete them, which keeps all
+	 * workers busy, but only suits order-insensitive consumers such as
+	 * aggregations. In that case row numbers reflect the delivery order.
+	 * 
+	 * @param preserveRowOrder
+	 */
+	public void setPreserveRowOrder(boolean preserveRowOrder) {
+		_preserveRowOrder = preserveRowOrder;
+	}
+
+	/**
+	 * Gets the indexes of the columns to read, or null if all columns are
+	 * read.
+	 * 
+	 * @return
+	 */
+	public int[] getProjection() {
+		return _projection;
+	}
+
+	/**
+	 * Sets the indexes (0-based) of the columns to read. Only the values of
+	 * these columns are decoded, and they are passed to
+	 * {@link SasReaderCallback#row(int, Object[])} in the order of the
+	 * projection, rather than in the physical column order. All columns are
+	 * still passed to {@link SasReaderCallback#column(int, String, String,
+	 * SasColumnType, int)}.
+	 * 
+	 * @param projection
+	 *            the column indexes, or null to read all columns (the
+	 *            default)
+	 */
+	public void setProjection(int... projection) {
+		_projection = projection;
+	}
+
+	/**
+	 * Gets the predicates that rows must satisfy to be read, or null if all
+	 * rows are read.
+	 * 
+	 * @return
+	 */
+	public SasPredicate[] getPredicates() {
+		return _predicates;
+	}
+
+	/**
+	 * Sets predicates that rows must satisfy (all of them) to be read. The
+	 * predicates are evaluated on the raw cells before a row is decoded, and
+	 * rows that do not satisfy them are skipped without being decoded or
+	 * passed to the callback. Row numbers passed to the callback count only
+	 * the rows that satisfy the predicates.
+	 * 
+	 * @param predicates
+	 *            the predicates, or null to read all rows (the default)
+	 */
+	public void setPredicates(SasPredicate... predicates) {
+		_predicates = predicates;
+	}
+
+	/**
+	 * Gets the number of pages read ahead of the decoding, or 0 if pages are
+	 * not read ahead.
+	 * 
+	 * @return
+	 */
+	public int getReadAhead() {
+		return _readAhead;
+	}
+
+	/**
+	 * Sets the number of pages to read ahead of the decoding. With a read
+	 * ahead above 0, the data pages are read by a separate I/O thread into a
+	 * bounded ring of page buffers, while the calling thread decodes the
+	 * current page. This overlaps I/O latency with decoding, which mostly
+	 * pays off for files on slow (eg. network-mounted) volumes. Read ahead
+	 * is off (0) by default, and does not apply when reading with a
+	 * parallelism above 1.
+	 * 
+	 * @param readAhead
+	 *            the number of pages to read ahead
+	 */
+	public void setReadAhead(int readAhead) {
+		if (readAhead < 0) {
+			throw new IllegalArgumentException(
+					"Read ahead cannot be negative: " + readAhead);
+		}
+		_readAhead = readAhead;
+	}
+
+	/**
+	 * Gets the sample of data pages to read, or null if all pages are read.
+	 * 
+	 * @return
+	 */
+	public SasPageSample getPageSample() {
+		return _pageSample;
+	}
+
+	/**
+	 * Sets a sample of data pages to read, eg. for profiling large files.
+	 * Only the pages of the sample are read and decoded - the reader seeks
+	 * directly to each of them. Pages are picked among all the pages
+	 * following the metadata, so if the sample happens to contain pages
+	 * without data, fewer rows are read. Row numbers passed to the callback
+	 * (and the row range of {@link #read(SasReaderCallback, int, int)})
+	 * count the sampled rows. Sampled pages are always read on the calling
+	 * thread, regardless of the parallelism.
+	 * 
+	 * @param pageSample
+	 *            the sample, or null to read all pages (the default)
+	 */
+	public void setPageSample(SasPageSample pageSample) {
+		_pageSample = pageSample;
+	}
+
+	/**
+	 * Determines if zone maps are used (and built) to skip pages.
+	 * 
+	 * @return
+	 */
+	public boolean isZoneMaps() {
+		return _zoneMaps;
+	}
+
+	/**
+	 * Sets whether zone maps should be used to skip pages when reading with
+	 * predicates. A zone map holds the min. and max. value and the count of
+	 * missing values of each numeric column on each page. When zone maps are
+	 * turned on, the first read that scans all pages of the file builds the
+	 * zone map and persists it in a sidecar file next to the file (which is
+	 * ignored once the file is modified). Subsequent reads with predicates on
+	 * numeric columns skip the pages that cannot hold any row satisfying the
+	 * predicates. Zone maps are off by default.
+	 * 
+	 * @param zoneMaps
+	 */
+	public void setZoneMaps(boolean zoneMaps) {
+		_zoneMaps = zoneMaps;
+	}
+
 	protected static boolean isMagicNumber(int[] data) {
 		return isMagicNumber(IO.toBytes(data));
 	}
@@ -88,27 +537,86 @@ public class SasReader {
 		if (data == null) {
 			return false;
 		}
-		final byte[] comparedBytes;
-		if (data.length > expected.length) {
-			comparedBytes = Arrays.copyOf(data, expected.length);
-		} else {
-			comparedBytes = data;
+		if (data.length < expected.length) {
+			return false;
+		}
+		for (int i = 0; i < expected.length; i++) {
+			if (data[i] != expected[i]) {
+				return false;
+			}
 		}
-		return Arrays.equals(expected, comparedBytes);
+		return true;
 	}
 
 	public void read(SasReaderCallback callback) throws SasReaderException {
-		FileInputStream is = null;
+		read(callback, 1, -1);
+	}
+
+	/**
+	 * Reads a range of rows of the file. Rows before the first row are
+	 * skipped without being decoded, and unless predicates are set (in which
+	 * case row numbers depend on the rows that satisfy them), the reader uses
+	 * a {@link SasRowIndex} to seek directly to the page holding the first
+	 * row. The index is built from the page headers the first time it is
+	 * needed, and is then cached with the metadata of the file.
+	 * 
+	 * Row numbers passed to the callback are row numbers in the file (ie.
+	 * they start at the first row, not at 1). Reading a range of rows is
+	 * always done on the calling thread, regardless of the parallelism.
+	 * 
+	 * @param callback
+	 * @param firstRow
+	 *            the number (1-based) of the first row to read
+	 * @param maxRows
+	 *            the max. number of rows to read, or a negative number to
+	 *            read all rows after the first row
+	 * @throws SasReaderException
+	 */
+	public void read(SasReaderCallback callback, int firstRow, int maxRows)
+			throws SasReaderException {
+		if (firstRow < 1) {
+			throw new IllegalArgumentException("First row must be positive: "
+					+ firstRow);
+		}
+		SasPageSource source = null;
 		try {
-			is = new FileInputStream(_file);
+			SasMetadata metadata = getMetadata();
+
+			for (int i = 0; i < metadata.getColumnCount(); i++) {
+				if (logger.isDebugEnabled()) {
+					logger.debug(
+							"({}) column no. {} read: name={},label={},type={},length={}",
+							new Object[] { _name, i, metadata.getColumnName(i),
+									metadata.getColumnLabel(i),
+									getColumnType(metadata, i),
+									metadata.getColumnLength(i) });
+				}
+				callback.column(i, metadata.getColumnName(i),
+						metadata.getColumnLabel(i), getColumnType(metadata, i),
+						metadata.getColumnLength(i));
+			}
 
-			SasHeader header = readHeader(is);
-			logger.info("({}) Header: {}", _file, header);
-			logger.debug("Header: {}", header.toString());
+			if (!callback.readData()) {
+				logger.info("({}) Callback decided to not read data", _name);
+				return;
+			}
+
+			if (maxRows == 0) {
+				return;
+			}
 
-			readPages(is, header, callback);
+			if (_pageSample != null) {
+				source = openPageSource();
+				readSampledPages(source, metadata, callback, firstRow, maxRows);
+			} else if (_parallelism > 1 && firstRow == 1 && maxRows < 0
+					&& isSeekable()) {
+				readPagesParallel(metadata, callback);
+			} else {
+				source = openPageSource();
+				readPages(source, metadata, callback, firstRow, maxRows);
+			}
 
-			logger.info("({}) Done!", _file);
+			logger.info("({}) Done!", _name);
 		} catch (Exception e) {
 			if (e instanceof SasReaderException) {
 				throw (SasReaderException) e;
@@ -117,9 +625,9 @@ public class SasReader {
 					"Unhandled exception occurred while reading sas7bdat file!",
 					e);
 		} finally {
-			if (is != null) {
+			if (source != null) {
 				try {
-					is.close();
+					source.close();
 				} catch (IOException e) {
 					// do nothing
 				}
@@ -127,303 +635,1233 @@ public class SasReader {
 		}
 	}
 
-	private void readPages(FileInputStream is, SasHeader header,
-			SasReaderCallback callback) throws Exception {
-		final List<SasSubHeader> subHeaders = new ArrayList<SasSubHeader>();
-		final List<Integer> columnOffsets = new ArrayList<Integer>();
-		final List<Integer> columnLengths = new ArrayList<Integer>();
-		final List<SasColumnType> columnTypes = new ArrayList<SasColumnType>();
-		boolean subHeadersParsed = false;
+	/**
+	 * Gets the amount of rows in the file, as recorded in its row size
+	 * subheader. Only the header and metadata pages are read (unless the
+	 * metadata is already cached), so this is much cheaper than counting the
+	 * rows using a {@link CountReaderCallback}.
+	 * 
+	 * @return
+	 * @throws SasReaderException
+	 */
+	public int getRowCount() throws SasReaderException {
+		try {
+			return getMetadata().getRowCount();
+		} catch (Exception e) {
+			if (e instanceof SasReaderException) {
+				throw (SasReaderException) e;
+			}
+			throw new SasReaderException(
+					"Unhandled exception occurred while reading sas7bdat file!",
+					e);
+		}
+	}
 
-		int rowCount = 0;
+	/**
+	 * Gets the metadata of the file, either from the {@link SasMetadataCache}
+	 * or by reading the header and metadata pages of the file.
+	 */
+	private SasMetadata getMetadata() throws Exception {
+		if (!isSeekable()) {
+			// the metadata of streams is only read once per reader, that of
+			// resources may also be cached globally
+			SasMetadata metadata = _metadata;
+			if (metadata == null) {
+				metadata = getCachedResourceMetadata();
+			}
+			if (metadata == null) {
+				final SasPageSource source = openPageSource();
+				try {
+					final SasHeader header = readHeader(source);
+					logger.info("({}) Header: {}", _name, header);
+					metadata = readMetadata(source, header);
+				} finally {
+					source.close();
+				}
+				if (_stream != null) {
+					// the retained metadata pages are read again with the data
+					_stream.setRetaining(false);
+				}
+				if (isCachedResource()) {
+					SasMetadataCache.getInstance().put(
+							_resource.getQualifiedPath(), _resource.getSize(),
+							_resource.getLastModified(), metadata);
+				}
+			}
+			_metadata = metadata;
+			return metadata;
+		}
 
+		final SasMetadataCache cache = SasMetadataCache.getInstance();
+		final long length = _file.length();
+		final long lastModified = _file.lastModified();
+
+		SasMetadata metadata = cache.get(_file, length, lastModified);
+		if (metadata != null) {
+			logger.debug("({}) Using cached metadata", _name);
+			return metadata;
+		}
+
+		final SasPageSource source = openPageSource();
+		try {
+			SasHeader header = readHeader(source);
+			logger.info("({}) Header: {}", _name, header);
+			logger.debug("Header: {}", header.toString());
+
+			metadata = readMetadata(source, header);
+		} finally {
+			source.close();
+		}
+
+		cache.put(_file, length, lastModified, metadata);
+		return metadata;
+	}
+
+	/**
+	 * Determines if the metadata of a resource is cached in the
+	 * {@link SasMetadataCache}, like the metadata of files, so that it is not
+	 * decompressed again by every reader. This requires the resource to
+	 * report its size and modification time.
+	 */
+	private boolean isCachedResource() {
+		return _resource != null && _resource.getSize() >= 0
+				&& _resource.getLastModified() > 0;
+	}
+
+	private SasMetadata getCachedResourceMetadata() {
+		if (!isCachedResource()) {
+			return null;
+		}
+		final SasMetadata metadata = SasMetadataCache.getInstance().get(
+				_resource.getQualifiedPath(), _resource.getSize(),
+				_resource.getLastModified());
+		if (metadata != null) {
+			logger.debug("({}) Using cached metadata", _name);
+		}
+		return metadata;
+	}
+
+	/**
+	 * Gets the type of a column, as reported to callbacks.
+	 */
+	SasColumnType getColumnType(SasMetadata metadata, int columnIndex) {
+		if (_dateTimeDecoding) {
+			final SasColumnType columnType = metadata
+					.getDateTimeColumnType(columnIndex);
+			if (columnType != null) {
+				return columnType;
+			}
+		}
+		return metadata.getColumnType(columnIndex);
+	}
+
+	private int getStringDictionarySizeForDecoding() {
+		return _stringDeduplication ? _stringDictionarySize : 0;
+	}
+
+	private SasPageSource openPageSource() throws IOException {
+		final SasPageSource source;
+		if (_file != null) {
+			source = new FileChannelPageSource(_file, _memoryMapped);
+		} else if (_resource != null) {
+			InputStream in = _resource.read();
+			if (isGzipped(_resource)) {
+				in = new GZIPInputStream(in, GZIP_BUFFER_SIZE);
+			}
+			source = new StreamPageSource(in);
+		} else {
+			// the stream is shared by all reads, and owned by the caller
+			source = new SasPageSource() {
+				@Override
+				public int read(long position, byte[] buffer, int len)
+						throws IOException {
+					return _stream.read(position, buffer, len);
+				}
+
+				@Override
+				public void close() {
+					// do nothing
+				}
+			};
+		}
+		if (_metrics != null) {
+			return new MeteredPageSource(source, _metrics);
+		}
+		return source;
+	}
+
+	/**
+	 * Reads a page into the page buffer.
+	 * 
+	 * @return the page type, or -1 if the end of the file was reached
+	 */
+	byte readPage(SasPageSource source, SasHeader header,
+			int pageNumber, byte[] pageData) throws IOException {
+		logger.debug("({}) Reading page no. {}", _name, pageNumber);
 		final int pageSize = header.getPageSize();
+		int read = source.read(getPagePosition(header, pageNumber), pageData,
+				pageSize);
+		return checkPage(header, pageNumber, pageData, read);
+	}
+
+	private static long getPagePosition(SasHeader header, int pageNumber) {
+		return header.getHeaderLength() + (long) pageNumber
+				* header.getPageSize();
+	}
+
+	/**
+	 * Checks a page that has been read into a page buffer.
+	 * 
+	 * @param read
+	 *            the number of bytes read into the buffer
+	 * @return the page type, or -1 if the end of the file was reached
+	 */
+	private byte checkPage(SasHeader header, int pageNumber, byte[] pageData,
+			int read) {
+		final int pageSize = header.getPageSize();
+		if (read == 0) {
+			// reached end of file
+			return -1;
+		}
+		if (read < pageSize) {
+			logger.warn("({}) Page no. {} is truncated: {} of {} bytes",
+					new Object[] { _name, pageNumber, read, pageSize });
+			Arrays.fill(pageData, read, pageSize, (byte) 0);
+		}
+
+		byte pageType = header.getLayout().getPageType(pageData);
+
+		switch (pageType) {
+		case 0:
+		case 0x40:
+		case 1:
+		case 2:
+			// accepted type
+			logger.debug("({}) page type supported: {}", _name, pageType);
+			break;
+		case 4:
+		case (byte) 0x90:
+			// accepted but not supported
+			logger.debug("({}) page type not fully supported: {}", _name,
+					pageType);
+			break;
+		default:
+			throw new SasReaderException("Page " + pageNumber
+					+ " has unknown type: " + pageType);
+		}
+		if (_metrics != null) {
+			_metrics.pageRead(pageNumber, pageType);
+		}
+		return pageType;
+	}
+
+	/**
+	 * Reads the metadata of the file, by reading the subheaders of the pages
+	 * up until the first page that contains data.
+	 */
+	private SasMetadata readMetadata(SasPageSource source, SasHeader header)
+			throws Exception {
+		final SasLayout layout = header.getLayout();
+		final SasSubHeaderCatalog subHeaders = new SasSubHeaderCatalog(layout);
 		final int pageCount = header.getPageCount();
+		final byte[] pageData = new byte[header.getPageSize()];
 
-		// these variables will define the default amount of rows per page and
-		// other defaults
-		int row_count = -1;
-		int row_count_fp = -1;
-		int row_length = -1;
-		int col_count = -1;
-
-		for (int pageNumber = 0; pageNumber < pageCount; pageNumber++) {
-			logger.info("({}) Reading page no. {}", _file, pageNumber);
-			final byte[] pageData = new byte[pageSize];
-			int read = is.read(pageData);
-			if (read == -1) {
-				// reached end of file
+		SasCompression compression = null;
+		int pageNumber = 0;
+		for (; pageNumber < pageCount; pageNumber++) {
+			byte pageType = readPage(source, header, pageNumber, pageData);
+			if (pageType == -1) {
 				break;
 			}
 
-			byte pageType = IO.readByte(pageData, 17);
+			boolean rowSubHeaders = false;
+			if (isMetaPage(pageType) || pageType == 2) {
+				// Read subheaders
+				int subhCount = layout.getSubHeaderCount(pageData);
+				for (int subHeaderNumber = 0; subHeaderNumber < subhCount; subHeaderNumber++) {
+					int base = layout.getSubHeaderPointerOffset(subHeaderNumber);
+
+					int offset = layout.getSubHeaderOffset(pageData, base);
+					int length = layout.getSubHeaderLength(pageData, base);
+					byte compressionFlag = layout.getSubHeaderCompression(
+							pageData, base);
+					byte subHeaderType = layout.getSubHeaderType(pageData, base);
+
+					if (length > 0 && compressionFlag == 4) {
+						// a compressed row
+						rowSubHeaders = true;
+					} else if (length > 0) {
+						int signature = (length < layout.getWordLength() ? 0
+								: layout.readSignature(pageData, offset));
+						if (compression != null && subHeaderType == 1
+								&& !SasSubHeaderCatalog
+										.isMetadataSignature(signature)) {
+							// an uncompressed row of a compressed file
+							rowSubHeaders = true;
+							continue;
+						}
+						byte[] rawData = IO.readBytes(pageData, offset, length);
+						subHeaders.add(pageNumber, new SasSubHeader(rawData,
+								signature));
+						if (signature == SasSubHeaderCatalog.SIGNATURE_COLTEXT
+								&& compression == null) {
+							compression = SasCompression.get(rawData,
+									layout.getCompressionLiteralOffset());
+						}
+					}
+				}
+			}
 
-			switch (pageType) {
-			case 0:
-			case 1:
-			case 2:
-				// accepted type
-				logger.info("({}) page type supported: {}", _file, pageType);
+			if (pageType == 1 || pageType == 2 || rowSubHeaders) {
+				// all subheaders precede the first page with data
 				break;
-			case 4:
-				// accepted but not supported
-				logger.info("({}) page type not fully supported: {}", _file,
-						pageType);
+			}
+
+			if (isMetadataComplete(layout, subHeaders)) {
+				// no need to read further metadata pages
+				logger.debug("({}) Metadata complete after page no. {}",
+						_name, pageNumber);
+				pageNumber++;
 				break;
-			default:
-				throw new SasReaderException("Page " + pageNumber
-						+ " has unknown type: " + pageType);
 			}
+		}
 
-			if (pageType == 0 || pageType == 2) {
-				// Read subheaders
-				int subhCount = IO.readInt(pageData, 20);
-				for (int subHeaderNumber = 0; subHeaderNumber < subhCount; subHeaderNumber++) {
-					int base = 24 + subHeaderNumber * 12;
+		return parseSubHeaders(header, subHeaders, pageNumber, compression);
+	}
+
+	/**
+	 * Determines if the subheaders read so far contain the complete metadata,
+	 * ie. all the required subheaders, column attributes for all columns and
+	 * a label subheader for each column. Since label subheaders are optional,
+	 * this can only be determined for files where all columns have them -
+	 * for other files the metadata is complete when the first page with data
+	 * is reached.
+	 */
+	private boolean isMetadataComplete(SasLayout layout,
+			SasSubHeaderCatalog subHeaders) {
+		if (subHeaders.getCount(SasSubHeaderCatalog.SIGNATURE_COLSIZE) != 1
+				|| subHeaders.getCount(SasSubHeaderCatalog.SIGNATURE_ROWSIZE) != 1
+				|| subHeaders.getCount(SasSubHeaderCatalog.SIGNATURE_COLTEXT) != 1
+				|| subHeaders.getCount(SasSubHeaderCatalog.SIGNATURE_COLNAME) != 1) {
+			return false;
+		}
+		final int colCount = layout.readWord(
+				subHeaders.getSubHeaders(SasSubHeaderCatalog.SIGNATURE_COLSIZE)
+						.get(0).getRawData(), layout.getWordLength());
 
-					int offset = IO.readInt(pageData, base);
-					int length = IO.readInt(pageData, base + 4);
+		if (subHeaders.getColAttrEntryCount() < colCount) {
+			return false;
+		}
 
-					if (length > 0) {
-						byte[] rawData = IO.readBytes(pageData, offset, length);
-						byte[] signatureData = IO.readBytes(rawData, 0, 4);
-						SasSubHeader subHeader = new SasSubHeader(rawData,
-								signatureData);
-						subHeaders.add(subHeader);
-					}
+		return subHeaders.getCount(SasSubHeaderCatalog.SIGNATURE_COLLABS) == colCount;
+	}
+
+	private SasMetadata parseSubHeaders(SasHeader header,
+			SasSubHeaderCatalog subHeaders, int firstDataPageNumber,
+			SasCompression compression) {
+		if (compression != null) {
+			logger.info("({}) Compression: {}", _name, compression);
+		}
+		final SasLayout layout = header.getLayout();
+		final int wordLength = layout.getWordLength();
+
+		SasSubHeader rowSize = subHeaders.getSubHeader(
+				SasSubHeaderCatalog.SIGNATURE_ROWSIZE, "ROWSIZE");
+		int row_length = layout.readWord(rowSize.getRawData(),
+				layout.getRowSizeFieldOffset(5));
+		int row_count = layout.readWord(rowSize.getRawData(),
+				layout.getRowSizeFieldOffset(6));
+		int col_count_7 = layout.readWord(rowSize.getRawData(),
+				layout.getRowSizeFieldOffset(9));
+		int row_count_fp = layout.readWord(rowSize.getRawData(),
+				layout.getRowSizeFieldOffset(15));
+
+		SasSubHeader colSize = subHeaders.getSubHeader(
+				SasSubHeaderCatalog.SIGNATURE_COLSIZE, "COLSIZE");
+		int col_count_6 = layout.readWord(colSize.getRawData(), wordLength);
+		int col_count = col_count_6;
+
+		if (col_count_7 != col_count_6) {
+			logger.warn("({}) Column count mismatch: {} vs. {}", new Object[] {
+					_name, col_count_6, col_count_7 });
+		}
+
+		SasSubHeader colText = subHeaders.getSubHeader(
+				SasSubHeaderCatalog.SIGNATURE_COLTEXT, "COLTEXT");
+
+		List<SasSubHeader> colAttrHeaders = subHeaders
+				.getSubHeaders(SasSubHeaderCatalog.SIGNATURE_COLATTR);
+		final SasSubHeader colAttr;
+		if (colAttrHeaders.isEmpty()) {
+			throw new SasReaderException("No column attribute subheader found");
+		} else if (colAttrHeaders.size() == 1) {
+			colAttr = colAttrHeaders.get(0);
+		} else {
+			colAttr = spliceColAttrSubHeaders(layout, colAttrHeaders);
+		}
+
+		SasSubHeader colName = subHeaders.getSubHeader(
+				SasSubHeaderCatalog.SIGNATURE_COLNAME, "COLNAME");
+
+		List<SasSubHeader> colLabels = subHeaders
+				.getSubHeaders(SasSubHeaderCatalog.SIGNATURE_COLLABS);
+		if (!colLabels.isEmpty() && colLabels.size() != col_count) {
+			throw new SasReaderException("Unexpected column label count ("
+					+ colLabels.size() + ") expected 0 or " + col_count);
+		}
+
+		final String[] columnNames = new String[col_count];
+		final String[] columnLabels = new String[col_count];
+		final String[] columnFormats = new String[col_count];
+		final SasColumnType[] columnTypes = new SasColumnType[col_count];
+		final int[] columnOffsets = new int[col_count];
+		final int[] columnLengths = new int[col_count];
+
+		for (int i = 0; i < col_count; i++) {
+			int base = layout.getColumnNameOffset(i);
+
+			final String columnName;
+			short amd = layout.readShort(colName.getRawData(), base);
+			if (amd == 0) {
+				int off = layout.readShort(colName.getRawData(), base + 2)
+						+ wordLength;
+				int len = layout.readShort(colName.getRawData(), base + 4);
+				columnName = IO.readString(colText.getRawData(), off, len);
+			} else {
+				columnName = "COL" + i;
+			}
+			columnNames[i] = columnName;
+
+			// Read column formats and labels
+			String format = null;
+			String label = null;
+			if (colLabels != null && !colLabels.isEmpty()) {
+				byte[] rawData = colLabels.get(i).getRawData();
+				base = layout.getColumnFormatOffset();
+				int off = layout.readShort(rawData, base) + wordLength;
+				short len = layout.readShort(rawData, base + 2);
+				if (len > 0) {
+					format = IO.readString(colText.getRawData(), off, len);
+				}
+
+				base = layout.getColumnLabelOffset();
+				off = layout.readShort(rawData, base) + wordLength;
+				len = layout.readShort(rawData, base + 2);
+				if (len > 0) {
+					label = IO.readString(colText.getRawData(), off, len);
 				}
 			}
+			columnFormats[i] = format;
+			columnLabels[i] = label;
 
-			if ((pageType == 1 || pageType == 2)) {
+			// Read column offset, width, type (required)
+			base = layout.getColumnAttributesOffset(i);
 
-				if (!subHeadersParsed) {
-					// Parse subheaders
+			int offset = layout.readWord(colAttr.getRawData(), base);
+			columnOffsets[i] = offset;
 
-					SasSubHeader rowSize = getSubHeader(subHeaders,
-							SUBH_ROWSIZE, "ROWSIZE");
-					row_length = IO.readInt(rowSize.getRawData(), 20);
-					row_count = IO.readInt(rowSize.getRawData(), 24);
-					int col_count_7 = IO.readInt(rowSize.getRawData(), 36);
-					row_count_fp = IO.readInt(rowSize.getRawData(), 60);
+			int length = layout.readInt(colAttr.getRawData(), base
+					+ wordLength);
+			columnLengths[i] = length;
 
-					SasSubHeader colSize = getSubHeader(subHeaders,
-							SUBH_COLSIZE, "COLSIZE");
-					int col_count_6 = IO.readInt(colSize.getRawData(), 4);
-					col_count = col_count_6;
+			byte columnTypeCode = IO.readByte(colAttr.getRawData(), base
+					+ wordLength + 6);
+			SasColumnType columnType = (columnTypeCode == 1 ? SasColumnType.NUMERIC
+					: SasColumnType.CHARACTER);
+			columnTypes[i] = columnType;
+		}
 
-					if (col_count_7 != col_count_6) {
-						logger.warn(
-								"({}) Column count mismatch: {} vs. {}",
-								new Object[] { _file, col_count_6, col_count_7 });
-					}
+		return new SasMetadata(header, row_length, row_count, row_count_fp,
+				firstDataPageNumber, subHeaders.getPageNumbers(), columnNames,
+				columnLabels, columnFormats, columnTypes, columnOffsets,
+				columnLengths, compression);
+	}
 
-					SasSubHeader colText = getSubHeader(subHeaders,
-							SUBH_COLTEXT, "COLTEXT");
-
-					List<SasSubHeader> colAttrHeaders = getSubHeaders(
-							subHeaders, SUBH_COLATTR, "COLATTR");
-					final SasSubHeader colAttr;
-					if (colAttrHeaders.isEmpty()) {
-						throw new SasReaderException(
-								"No column attribute subheader found");
-					} else if (colAttrHeaders.size() == 1) {
-						colAttr = colAttrHeaders.get(0);
-					} else {
-						colAttr = spliceColAttrSubHeaders(colAttrHeaders);
-					}
+	/**
+	 * Determines if a page is a meta page, ie. a page that holds subheaders
+	 * (which in compressed files include the rows) but no other data.
+	 */
+	static boolean isMetaPage(byte pageType) {
+		return pageType == 0 || pageType == 0x40;
+	}
 
-					SasSubHeader colName = getSubHeader(subHeaders,
-							SUBH_COLNAME, "COLNAME");
+	/**
+	 * Gets the amount of rows on a page.
+	 */
+	static int getPageRowCount(SasMetadata metadata, byte[] pageData,
+			byte pageType) {
+		int row_count_p;
+		if (pageType == 2) {
+			row_count_p = metadata.getMixPageRowCount();
+		} else {
+			row_count_p = metadata.getHeader().getLayout()
+					.getPageBlockCount(pageData);
+		}
 
-					List<SasSubHeader> colLabels = getSubHeaders(subHeaders,
-							SUBH_COLLABS, "COLLABS");
-					if (!colLabels.isEmpty() && colLabels.size() != col_count) {
-						throw new SasReaderException(
-								"Unexpected column label count ("
-										+ colLabels.size() + ") expected 0 or "
-										+ col_count);
-					}
+		if (row_count_p > metadata.getRowCount()) {
+			row_count_p = metadata.getRowCount();
+		}
+		return row_count_p;
+	}
 
-					for (int i = 0; i < col_count; i++) {
-						int base = 12 + i * 8;
-
-						final String columnName;
-						byte amd = IO.readByte(colName.getRawData(), base);
-						if (amd == 0) {
-							int off = IO.readShort(colName.getRawData(),
-									base + 2) + 4;
-							int len = IO.readShort(colName.getRawData(),
-									base + 4);
-							columnName = IO.readString(colText.getRawData(),
-									off, len);
-						} else {
-							columnName = "COL" + i;
-						}
+	/**
+	 * Gets the offset of the first row on a page. On mix pages the rows
+	 * follow the subheader pointers (aligned to 8 bytes).
+	 */
+	static int getPageRowOffset(SasLayout layout, byte[] pageData,
+			byte pageType) {
+		if (pageType == 2) {
+			int subhCount = layout.getSubHeaderCount(pageData);
+			int base = layout.getSubHeaderPointerOffset(subhCount);
+			return base + base % 8;
+		}
+		return layout.getPageHeaderLength();
+	}
 
-						// Read column labels
-						final String label;
-						if (colLabels != null && !colLabels.isEmpty()) {
-							base = 42;
-							byte[] rawData = colLabels.get(i).getRawData();
-							int off = IO.readShort(rawData, base) + 4;
-							short len = IO.readShort(rawData, base + 2);
-							if (len > 0) {
-								label = IO.readString(colText.getRawData(),
-										off, len);
-							} else {
-								label = null;
-							}
-						} else {
-							label = null;
-						}
+	/**
+	 * Gets the zone map of a file, loading it from the sidecar file if
+	 * needed.
+	 * 
+	 * @return the zone map, or null if zone maps are off or the zone map has
+	 *         not been built yet
+	 */
+	SasZoneMap getZoneMap(SasMetadata metadata) {
+		if (!_zoneMaps || !isSeekable()) {
+			return null;
+		}
+		SasZoneMap zoneMap = metadata.getZoneMap();
+		if (zoneMap == null) {
+			final File sidecarFile = SasZoneMap.getSidecarFile(_file);
+			try {
+				zoneMap = SasZoneMap.read(sidecarFile, metadata,
+						_file.length(), _file.lastModified());
+			} catch (IOException e) {
+				logger.warn("({}) Could not read zone map sidecar file: {}",
+						_name, e.getMessage());
+			}
+			if (zoneMap != null) {
+				logger.debug("({}) Loaded zone map from {}", _name,
+						sidecarFile);
+				metadata.setZoneMap(zoneMap);
+			}
+		}
+		return zoneMap;
+	}
 
-						// Read column offset, width, type (required)
-						base = 12 + i * 12;
+	/**
+	 * Creates a builder for the zone map of a file, if zone maps are on and
+	 * the file does not have a zone map yet.
+	 */
+	SasZoneMap.Builder createZoneMapBuilder(SasMetadata metadata) {
+		if (!_zoneMaps || !isSeekable() || getZoneMap(metadata) != null) {
+			return null;
+		}
+		return new SasZoneMap.Builder(metadata);
+	}
 
-						int offset = IO.readInt(colAttr.getRawData(), base);
-						columnOffsets.add(offset);
+	/**
+	 * Saves a zone map that has been built by a full scan of a file, in
+	 * memory and in the sidecar file.
+	 */
+	void saveZoneMap(SasMetadata metadata, SasZoneMap zoneMap) {
+		metadata.setZoneMap(zoneMap);
+		final File sidecarFile = SasZoneMap.getSidecarFile(_file);
+		try {
+			zoneMap.write(sidecarFile, _file.length(), _file.lastModified());
+			logger.debug("({}) Wrote zone map to {}", _name, sidecarFile);
+		} catch (IOException e) {
+			logger.warn("({}) Could not write zone map sidecar file: {}",
+					_name, e.getMessage());
+		}
+	}
 
-						int length = IO.readInt(colAttr.getRawData(), base + 4);
-						columnLengths.add(length);
+	/**
+	 * Determines if the row index can be used to seek to a row. The index is
+	 * built from the page headers, so it requires random access to the pages
+	 * and rows that are stored back to back in the pages, ie. no compression.
+	 */
+	private boolean isRowIndexed(SasMetadata metadata) {
+		return isSeekable() && metadata.getCompression() == null;
+	}
 
-						short columnTypeCode = IO.readShort(
-								colAttr.getRawData(), base + 10);
-						SasColumnType columnType = (columnTypeCode == 1 ? SasColumnType.NUMERIC
-								: SasColumnType.CHARACTER);
-						columnTypes.add(columnType);
+	/**
+	 * Gets the row index of a file, building it if needed.
+	 */
+	private SasRowIndex getRowIndex(SasPageSource source, SasMetadata metadata)
+			throws IOException {
+		SasRowIndex rowIndex = metadata.getRowIndex();
+		if (rowIndex == null) {
+			rowIndex = buildRowIndex(source, metadata);
+			metadata.setRowIndex(rowIndex);
+		}
+		return rowIndex;
+	}
 
-						if (logger.isDebugEnabled()) {
-							logger.debug(
-									"({}) column no. {} read: name={},label={},type={},length={}",
-									new Object[] { _file, i, columnName, label,
-											columnType, length });
-						}
-						callback.column(i, columnName, label, columnType,
-								length);
-					}
+	/**
+	 * Builds the row index of a file, by reading the header of each page
+	 * following the metadata.
+	 */
+	private SasRowIndex buildRowIndex(SasPageSource source, SasMetadata metadata)
+			throws IOException {
+		final SasHeader header = metadata.getHeader();
+		final int firstPageNumber = metadata.getFirstDataPageNumber();
+		final int pageCount = Math.max(header.getPageCount() - firstPageNumber,
+				0);
+		logger.debug("({}) Building row index of {} pages", _name, pageCount);
+
+		final SasLayout layout = header.getLayout();
+		final byte[] pageHeader = new byte[layout.getPageHeaderLength()];
+		int[] pageRowCounts = new int[pageCount];
+		for (int i = 0; i < pageCount; i++) {
+			final int read = source.read(
+					getPagePosition(header, firstPageNumber + i), pageHeader,
+					pageHeader.length);
+			if (read < pageHeader.length) {
+				pageRowCounts = Arrays.copyOf(pageRowCounts, i);
+				break;
+			}
+			final byte pageType = layout.getPageType(pageHeader);
+			if (pageType == 1 || pageType == 2) {
+				pageRowCounts[i] = getPageRowCount(metadata, pageHeader,
+						pageType);
+			}
+		}
+		return new SasRowIndex(firstPageNumber, pageRowCounts);
+	}
 
-					subHeadersParsed = true;
+	/**
+	 * Decodes the rows of a page.
+	 * 
+	 * @param pageRows
+	 *            the rows of the page
+	 * @param rows
+	 *            the list to add decoded rows to
+	 * @param skipRows
+	 *            the amount of (accepted) rows to skip without decoding them
+	 * @return the amount of rows skipped
+	 */
+	int decodePage(SasMetadata metadata, SasRowDecoder decoder,
+			int pageNumber, SasPageRows pageRows, List<Object[]> rows,
+			int skipRows) {
+		final byte[] pageData = pageRows.getData();
+		final int rowLength = metadata.getRowLength();
+		final int pageRowCount = pageRows.getCount();
+		final long start = (_metrics == null ? 0 : System.nanoTime());
+		final int rowCount = rows.size();
+
+		int skipped = 0;
+		int base = pageRows.getOffset();
+		for (int row = 0; row < pageRowCount; row++) {
+			checkRowBounds(pageNumber, pageData.length, base, rowLength);
+
+			if (decoder.accept(pageData, base)) {
+				if (skipped < skipRows) {
+					skipped++;
+					base = base + rowLength;
+					continue;
 				}
 
-				if (!callback.readData()) {
-					logger.info("({}) Callback decided to not read data", _file);
-					return;
+				Object[] rowData = decoder.decodeRow(pageData, base);
+
+				if (logger.isDebugEnabled()) {
+					logger.debug("({}) row no. {} read: {}", new Object[] {
+							_name, row, rowData });
 				}
 
-				// Read data
-				int row_count_p;
-				int base;
-				if (pageType == 2) {
-					row_count_p = row_count_fp;
-					base = 24 + subHeaders.size() * 12 + 12;
-					base = base + base % 8;
-				} else {
-					row_count_p = IO.readInt(pageData, 18);
-					base = 24;
+				rows.add(rowData);
+			}
+			base = base + rowLength;
+		}
+		if (_metrics != null) {
+			reportPageDecoded(decoder, pageNumber, rows.size() - rowCount,
+					System.nanoTime() - start);
+		}
+		return skipped;
+	}
+
+	/**
+	 * Decodes the rows of a page into a batch.
+	 * 
+	 * @param pageRows
+	 *            the rows of the page
+	 * @param batch
+	 *            the batch to add decoded rows to
+	 */
+	private void decodePage(SasMetadata metadata, SasRowDecoder decoder,
+			int pageNumber, SasPageRows pageRows, SasRowBatch batch) {
+		final byte[] pageData = pageRows.getData();
+		final int rowLength = metadata.getRowLength();
+		final int pageRowCount = pageRows.getCount();
+		final long start = (_metrics == null ? 0 : System.nanoTime());
+
+		int base = pageRows.getOffset();
+		for (int row = 0; row < pageRowCount; row++) {
+			checkRowBounds(pageNumber, pageData.length, base, rowLength);
+
+			if (decoder.accept(pageData, base)) {
+				decoder.decodeRow(pageData, base, batch);
+			}
+			base = base + rowLength;
+		}
+		if (_metrics != null) {
+			reportPageDecoded(decoder, pageNumber, batch.getRowCount(),
+					System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Reports the decoding of a page to the metrics, which must be set.
+	 */
+	private void reportPageDecoded(SasRowDecoder decoder, int pageNumber,
+			int rows, long nanos) {
+		_metrics.pageDecoded(pageNumber, rows,
+				rows * decoder.getNumericColumnCount(),
+				rows * decoder.getCharacterColumnCount(), nanos);
+	}
+
+	static void checkRowBounds(int pageNumber, int dataLength,
+			int rowOffset, int rowLength) {
+		if (rowOffset + rowLength > dataLength) {
+			throw new SasReaderException("Row data exceeds page " + pageNumber
+					+ "! page size: " + dataLength + ", row offset: "
+					+ rowOffset + ", row length: " + rowLength);
+		}
+	}
+
+	private void readPages(SasPageSource source, SasMetadata metadata,
+			SasReaderCallback callback, int firstRow, int maxRows)
+			throws Exception {
+		final SasHeader header = metadata.getHeader();
+		final int pageCount = header.getPageCount();
+		final int[] seek = seekRow(source, metadata, firstRow - 1);
+		final int firstPageNumber = seek[0];
+
+		final SasZoneMap.Builder zoneMapBuilder;
+		if (firstPageNumber == metadata.getFirstDataPageNumber()) {
+			zoneMapBuilder = createZoneMapBuilder(metadata);
+		} else {
+			zoneMapBuilder = null;
+		}
+
+		// the pages that the zone map rules out are not even read ahead
+		final int[] pageNumbers = prunePages(metadata, getPageRange(
+				firstPageNumber, pageCount));
+
+		// a single page buffer (or a ring of buffers when reading ahead) is
+		// reused for all pages
+		final SasPagePrefetcher prefetcher;
+		if (_readAhead > 0 && pageNumbers.length > 0) {
+			final long[] positions = new long[pageNumbers.length];
+			for (int i = 0; i < pageNumbers.length; i++) {
+				positions[i] = getPagePosition(header, pageNumbers[i]);
+			}
+			prefetcher = new SasPagePrefetcher(source, "SasReader-prefetch-"
+					+ _name, positions, header.getPageSize(), _readAhead);
+		} else {
+			prefetcher = null;
+		}
+
+		try {
+			final RowCallbackHandler handler = new RowCallbackHandler(
+					metadata, callback, firstRow, maxRows, seek[1],
+					zoneMapBuilder);
+			if (readDataPages(source, metadata, pageNumbers, prefetcher,
+					handler)
+					&& zoneMapBuilder != null) {
+				saveZoneMap(metadata, zoneMapBuilder.build());
+			}
+		} finally {
+			if (prefetcher != null) {
+				prefetcher.close();
+			}
+		}
+	}
+
+	/**
+	 * Reads the data pages of the page sample.
+	 */
+	private void readSampledPages(SasPageSource source, SasMetadata metadata,
+			SasReaderCallback callback, int firstRow, int maxRows)
+			throws Exception {
+		final SasHeader header = metadata.getHeader();
+		final int firstPageNumber = metadata.getFirstDataPageNumber();
+		final int[] pageNumbers = _pageSample.selectPages(firstPageNumber,
+				header.getPageCount() - firstPageNumber);
+		logger.info("({}) Sampling {} pages: {}", new Object[] { _name,
+				pageNumbers.length, _pageSample });
+
+		readDataPages(source, metadata, pageNumbers, null,
+				new RowCallbackHandler(metadata, callback, firstRow, maxRows,
+						firstRow - 1, null));
+	}
+
+	/**
+	 * Finds the page to start reading at, to read from a particular row. If
+	 * the row index can be used, this is the page that holds the row,
+	 * otherwise it is the first data page.
+	 * 
+	 * @param skipRows
+	 *            the amount of (accepted) rows preceding the row
+	 * @return the page number, or the page count if the file has no such
+	 *         row, and the amount of (accepted) rows to skip from that page
+	 *         on
+	 */
+	private int[] seekRow(SasPageSource source, SasMetadata metadata,
+			int skipRows) throws Exception {
+		if (skipRows > 0 && (_predicates == null || _predicates.length == 0)
+				&& isRowIndexed(metadata)) {
+			// seek to the page that holds the first row
+			final SasRowIndex rowIndex = getRowIndex(source, metadata);
+			final int pageNumber = rowIndex.getPageNumber(skipRows);
+			if (pageNumber == -1) {
+				// no such row, start after the last page
+				return new int[] { metadata.getHeader().getPageCount(), 0 };
+			}
+			return new int[] { pageNumber,
+					skipRows - rowIndex.getFirstRow(pageNumber) };
+		}
+		return new int[] { metadata.getFirstDataPageNumber(), skipRows };
+	}
+
+	private static int[] getPageRange(int fromPageNumber, int toPageNumber) {
+		final int[] pageNumbers = new int[Math.max(toPageNumber
+				- fromPageNumber, 0)];
+		for (int i = 0; i < pageNumbers.length; i++) {
+			pageNumbers[i] = fromPageNumber + i;
+		}
+		return pageNumbers;
+	}
+
+	/**
+	 * Removes the pages that the zone map (if any) rules out for the
+	 * predicates from a list of page numbers.
+	 * 
+	 * @param metadata
+	 * @param pageNumbers
+	 * @return the page numbers of the remaining pages
+	 */
+	private int[] prunePages(SasMetadata metadata, int[] pageNumbers) {
+		final SasZoneMap zoneMap = getZoneMap(metadata);
+		if (zoneMap == null) {
+			return pageNumbers;
+		}
+		final int[] result = new int[pageNumbers.length];
+		int count = 0;
+		for (int pageNumber : pageNumbers) {
+			if (zoneMap.mayMatch(pageNumber, _predicates)) {
+				result[count++] = pageNumber;
+			} else {
+				logger.debug("({}) Skipping page no. {}", _name, pageNumber);
+			}
+		}
+		return (count == result.length ? pageNumbers : Arrays.copyOf(result,
+				count));
+	}
+
+	/**
+	 * Reads data pages, in the given order, skipping the pages that the zone
+	 * map (if any) rules out, and hands the pages with rows to a handler.
+	 * 
+	 * @param pageNumbers
+	 *            the numbers of the pages to read
+	 * @param prefetcher
+	 *            a prefetcher that reads the pages, which must then be the
+	 *            pages that remain after {@link #prunePages}, or null to read
+	 *            them from the source
+	 * @param handler
+	 * @return false if the handler stopped the reading
+	 */
+	private boolean readDataPages(SasPageSource source, SasMetadata metadata,
+			int[] pageNumbers, SasPagePrefetcher prefetcher,
+			PageHandler handler) throws Exception {
+		final SasHeader header = metadata.getHeader();
+		final byte[] buffer = (prefetcher == null ? new byte[header
+				.getPageSize()] : null);
+		final SasPageRows pageRows = new SasPageRows(metadata);
+
+		for (int pageNumber : prunePages(metadata, pageNumbers)) {
+			final byte[] pageData;
+			final byte pageType;
+			if (prefetcher == null) {
+				pageData = buffer;
+				pageType = readPage(source, header, pageNumber, pageData);
+			} else {
+				logger.debug("({}) Reading page no. {}", _name, pageNumber);
+				pageData = prefetcher.nextPage();
+				pageType = checkPage(header, pageNumber, pageData,
+						prefetcher.getBytesRead());
+			}
+			if (pageType == -1) {
+				break;
+			}
+
+			if (pageRows.load(pageNumber, pageData, pageType)
+					&& !handler.page(pageNumber, pageRows)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Handles the pages with rows that are read by
+	 * {@link SasReader#readDataPages}.
+	 */
+	private interface PageHandler {
+
+		/**
+		 * @return false to stop reading
+		 */
+		public boolean page(int pageNumber, SasPageRows pageRows)
+				throws Exception;
+	}
+
+	/**
+	 * Decodes the rows of pages and delivers them to a callback, up until
+	 * the last row of a range.
+	 */
+	private final class RowCallbackHandler implements PageHandler {
+
+		private final SasMetadata _metadata;
+		private final SasReaderCallback _callback;
+		private final SasRowDecoder _decoder;
+		private final SasZoneMap.Builder _zoneMapBuilder;
+		private final List<Object[]> _rows;
+		private final int _lastRow;
+		private int _skipRows;
+		private int _rowCount;
+
+		/**
+		 * @param skipRows
+		 *            the amount of (accepted) rows to skip on the first pages
+		 * @param zoneMapBuilder
+		 *            a builder to add the pages to, or null
+		 */
+		public RowCallbackHandler(SasMetadata metadata,
+				SasReaderCallback callback, int firstRow, int maxRows,
+				int skipRows, SasZoneMap.Builder zoneMapBuilder) {
+			_metadata = metadata;
+			_callback = callback;
+			_decoder = new SasRowDecoder(metadata, _projection, _predicates,
+					getStringDictionarySizeForDecoding(), _dateTimeDecoding);
+			_zoneMapBuilder = zoneMapBuilder;
+			_rows = new ArrayList<Object[]>();
+			_rowCount = firstRow - 1;
+			_lastRow = (maxRows < 0 ? Integer.MAX_VALUE : _rowCount + maxRows);
+			_skipRows = skipRows;
+		}
+
+		@Override
+		public boolean page(int pageNumber, SasPageRows pageRows) {
+			if (_zoneMapBuilder != null) {
+				_zoneMapBuilder.addPage(pageNumber, pageRows);
+			}
+
+			_rows.clear();
+			_skipRows -= decodePage(_metadata, _decoder, pageNumber,
+					pageRows, _rows, _skipRows);
+
+			for (Object[] rowData : _rows) {
+				_rowCount++;
+				boolean next = _callback.row(_rowCount, rowData);
+				if (_rowCount >= _lastRow) {
+					return false;
 				}
+				if (!next) {
+					logger.info("({}) Callback decided to stop iteration",
+							_name);
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Opens a cursor for pulling rows from the file, one at a time, on the
+	 * calling thread. The projection and predicates of the reader are
+	 * applied, like when reading with a callback, but the parallelism is
+	 * ignored. The cursor must be closed after use.
+	 * 
+	 * @return
+	 * @throws SasReaderException
+	 */
+	public SasRowCursor openCursor() throws SasReaderException {
+		return openCursor(1);
+	}
 
-				if (row_count_p > row_count) {
-					row_count_p = row_count;
+	/**
+	 * Opens a cursor for pulling rows from the file, starting at a particular
+	 * row. Like when reading a range of rows with
+	 * {@link #read(SasReaderCallback, int, int)}, the cursor seeks directly
+	 * to the page that holds the first row, unless predicates are set.
+	 * 
+	 * @param firstRow
+	 *            the number (1-based) of the first row to read
+	 * @return
+	 * @throws SasReaderException
+	 */
+	public SasRowCursor openCursor(int firstRow) throws SasReaderException {
+		if (firstRow < 1) {
+			throw new IllegalArgumentException("First row must be positive: "
+					+ firstRow);
+		}
+		SasPageSource source = null;
+		try {
+			final SasMetadata metadata = getMetadata();
+			final SasRowDecoder decoder = new SasRowDecoder(metadata,
+					_projection, _predicates,
+					getStringDictionarySizeForDecoding(), _dateTimeDecoding);
+			source = openPageSource();
+
+			final int[] seek = seekRow(source, metadata, firstRow - 1);
+			final int firstPageNumber = seek[0];
+			final int skipRows = seek[1];
+
+			final SasZoneMap.Builder zoneMapBuilder;
+			if (firstPageNumber == metadata.getFirstDataPageNumber()) {
+				zoneMapBuilder = createZoneMapBuilder(metadata);
+			} else {
+				zoneMapBuilder = null;
+			}
+
+			final SasRowCursor cursor = new SasRowCursor(this, metadata,
+					decoder, source, firstPageNumber, skipRows, firstRow - 1
+							- skipRows);
+			cursor.setZoneMap(getZoneMap(metadata), _predicates,
+					zoneMapBuilder);
+			source = null;
+			return cursor;
+		} catch (Exception e) {
+			if (source != null) {
+				try {
+					source.close();
+				} catch (IOException ioe) {
+					// do nothing
 				}
+			}
+			if (e instanceof SasReaderException) {
+				throw (SasReaderException) e;
+			}
+			throw new SasReaderException(
+					"Unhandled exception occurred while reading sas7bdat file!",
+					e);
+		}
+	}
+
+	/**
+	 * Reads the file and delivers its data as columnar batches, one batch per
+	 * page with data. The projection and predicates of the reader are
+	 * applied, like when reading rows. Batches are always read and decoded on
+	 * the calling thread, regardless of the parallelism.
+	 * 
+	 * @param callback
+	 * @throws SasReaderException
+	 */
+	public void readBatches(SasBatchCallback callback)
+			throws SasReaderException {
+		SasPageSource source = null;
+		try {
+			final SasMetadata metadata = getMetadata();
+			for (int i = 0; i < metadata.getColumnCount(); i++) {
+				callback.column(i, metadata.getColumnName(i),
+						metadata.getColumnLabel(i), metadata.getColumnType(i),
+						metadata.getColumnLength(i));
+			}
 
-				for (int row = 0; row < row_count_p; row++) {
-					Object[] rowData = new Object[col_count];
-					for (int col = 0; col < col_count; col++) {
-						int off = base + columnOffsets.get(col);
-						int len = columnLengths.get(col);
-
-						SasColumnType columnType = columnTypes.get(col);
-						if (len > 0) {
-							byte[] raw = IO.readBytes(pageData, off, len);
-							if (columnType == SasColumnType.NUMERIC && len < 8) {
-								ByteBuffer bb = ByteBuffer.allocate(8);
-								for (int j = 0; j < 8 - len; j++) {
-									bb.put((byte) 0x00);
-								}
-								bb.put(raw);
-								raw = bb.array();
-
-								// col$length <- 8
-								len = 8;
+			source = openPageSource();
+
+			final SasHeader header = metadata.getHeader();
+			final int pageCount = header.getPageCount();
+			final SasRowDecoder decoder = new SasRowDecoder(metadata,
+					_projection, _predicates,
+					getStringDictionarySizeForDecoding(), _dateTimeDecoding);
+
+			// the batch is reused for all pages
+			final SasRowBatch batch = decoder.createBatch(header.getPageSize()
+					/ Math.max(metadata.getRowLength(), 1));
+			final int[] rowCount = new int[1];
+			readDataPages(source, metadata, getPageRange(
+					metadata.getFirstDataPageNumber(), pageCount), null,
+					new PageHandler() {
+						@Override
+						public boolean page(int pageNumber,
+								SasPageRows pageRows) {
+							batch.reset(pageRows.getData(), rowCount[0] + 1);
+							decodePage(metadata, decoder, pageNumber,
+									pageRows, batch);
+							if (batch.getRowCount() == 0) {
+								return true;
 							}
+							rowCount[0] += batch.getRowCount();
 
-							final Object value;
-							if (columnType == SasColumnType.CHARACTER) {
-								String str = IO.readString(raw, 0, len);
-								str = str.trim();
-								value = str;
-							} else {
-								value = IO.readNumber(raw, 0, len);
+							boolean next = callback.batch(batch);
+							if (!next) {
+								logger.info(
+										"({}) Callback decided to stop iteration",
+										_name);
 							}
-							rowData[col] = value;
+							return next;
 						}
+					});
+
+			logger.info("({}) Done!", _name);
+		} catch (Exception e) {
+			if (e instanceof SasReaderException) {
+				throw (SasReaderException) e;
+			}
+			throw new SasReaderException(
+					"Unhandled exception occurred while reading sas7bdat file!",
+					e);
+		} finally {
+			if (source != null) {
+				try {
+					source.close();
+				} catch (IOException e) {
+					// do nothing
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads the data pages using a pool of worker threads. Each worker reads
+	 * and decodes a range of pages into a list of rows, which is then
+	 * delivered to the callback on the calling thread, either in page order
+	 * or in the order that the ranges complete.
+	 */
+	private void readPagesParallel(final SasMetadata metadata,
+			SasReaderCallback callback) throws Exception {
+		final int pageCount = metadata.getHeader().getPageCount();
+		final int maxPendingTasks = _parallelism * 4;
+
+		final ExecutorService executor = Executors.newFixedThreadPool(
+				_parallelism, new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "SasReader-"
+								+ _name);
+						thread.setDaemon(true);
+						return thread;
 					}
+				});
+		final CompletionService<List<Object[]>> completionService = new ExecutorCompletionService<List<Object[]>>(
+				executor);
+		final Deque<Future<List<Object[]>>> pendingTasks = new ArrayDeque<Future<List<Object[]>>>();
 
-					if (logger.isDebugEnabled()) {
-						logger.debug("({}) row no. {} read: {}", new Object[] {
-								_file, row, rowData });
+		try {
+			int nextPageNumber = metadata.getFirstDataPageNumber();
+			int rowCount = 0;
+
+			while (nextPageNumber < pageCount || !pendingTasks.isEmpty()) {
+				while (nextPageNumber < pageCount
+						&& pendingTasks.size() < maxPendingTasks) {
+					final int fromPageNumber = nextPageNumber;
+					final int toPageNumber = Math.min(pageCount, fromPageNumber
+							+ PAGES_PER_TASK);
+					final Callable<List<Object[]>> task = new Callable<List<Object[]>>() {
+						@Override
+						public List<Object[]> call() throws Exception {
+							return readPageRange(metadata, fromPageNumber,
+									toPageNumber);
+						}
+					};
+					if (_preserveRowOrder) {
+						pendingTasks.add(executor.submit(task));
+					} else {
+						pendingTasks.add(completionService.submit(task));
 					}
+					nextPageNumber = toPageNumber;
+				}
 
+				final Future<List<Object[]>> future;
+				if (_preserveRowOrder) {
+					future = pendingTasks.removeFirst();
+				} else {
+					future = completionService.take();
+					pendingTasks.remove(future);
+				}
+
+				final List<Object[]> rows;
+				try {
+					rows = future.get();
+				} catch (ExecutionException e) {
+					final Throwable cause = e.getCause();
+					if (cause instanceof SasReaderException) {
+						throw (SasReaderException) cause;
+					}
+					if (cause instanceof Error) {
+						throw (Error) cause;
+					}
+					throw new SasReaderException(
+							"Unhandled exception occurred while reading sas7bdat file!",
+							(Exception) cause);
+				}
+
+				for (Object[] rowData : rows) {
 					rowCount++;
 					boolean next = callback.row(rowCount, rowData);
 					if (!next) {
 						logger.info("({}) Callback decided to stop iteration",
-								_file);
+								_name);
 						return;
 					}
-
-					base = base + row_length;
 				}
 			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private List<Object[]> readPageRange(final SasMetadata metadata,
+			int fromPageNumber, int toPageNumber) throws Exception {
+		final SasRowDecoder decoder = new SasRowDecoder(metadata,
+				_projection, _predicates,
+				getStringDictionarySizeForDecoding(), _dateTimeDecoding);
+		final List<Object[]> rows = new ArrayList<Object[]>();
+
+		final SasPageSource source = openPageSource();
+		try {
+			readDataPages(source, metadata, getPageRange(fromPageNumber,
+					toPageNumber), null, new PageHandler() {
+				@Override
+				public boolean page(int pageNumber, SasPageRows pageRows) {
+					decodePage(metadata, decoder, pageNumber, pageRows, rows,
+							0);
+					return true;
+				}
+			});
+		} finally {
+			source.close();
 		}
+		return rows;
 	}
 
-	private SasSubHeader spliceColAttrSubHeaders(
+	private SasSubHeader spliceColAttrSubHeaders(SasLayout layout,
 			List<SasSubHeader> colAttrHeaders) {
 		final int colAttrHeadersSize = colAttrHeaders.size();
-		logger.info("({}) Splicing {} column attribute headers", _file,
+		logger.info("({}) Splicing {} column attribute headers", _name,
 				colAttrHeadersSize);
 
+		final int headerLength = layout.getColumnAttributesHeaderLength();
+		final int trailerLength = layout.getColumnAttributesTrailerLength();
 		byte[] result = IO.readBytes(colAttrHeaders.get(0).getRawData(), 0,
-				colAttrHeaders.get(0).getRawData().length - 8);
+				colAttrHeaders.get(0).getRawData().length - trailerLength);
 
 		for (int i = 1; i < colAttrHeadersSize; i++) {
 			byte[] rawData = colAttrHeaders.get(i).getRawData();
-			result = IO.concat(result,
-					IO.readBytes(rawData, 12, rawData.length - 20));
+			result = IO.concat(result, IO.readBytes(rawData, headerLength,
+					rawData.length - headerLength - trailerLength));
 		}
 
-		return new SasSubHeader(result, null);
+		return new SasSubHeader(result,
+				SasSubHeaderCatalog.SIGNATURE_COLATTR);
 	}
 
-	private List<SasSubHeader> getSubHeaders(List<SasSubHeader> subHeaders,
-			byte[] signature, String name) {
-		List<SasSubHeader> result = new ArrayList<SasSubHeader>();
-		for (SasSubHeader subHeader : subHeaders) {
-			byte[] signatureData = subHeader.getSignatureData();
-			if (isIdentical(signatureData, signature)) {
-				result.add(subHeader);
-			}
-		}
-		return result;
-	}
-
-	private SasSubHeader getSubHeader(List<SasSubHeader> subHeaders,
-			byte[] signature, final String name) {
-		List<SasSubHeader> result = getSubHeaders(subHeaders, signature, name);
-		if (result.isEmpty()) {
-			throw new SasReaderException("Could not find sub header: " + name);
-		} else if (result.size() != 1) {
-			throw new SasReaderException("Multiple (" + result.size()
-					+ ") instances of the same sub header: " + name);
-		}
-		return result.get(0);
-	}
-
-	private SasHeader readHeader(InputStream is) throws Exception {
-		byte[] header = new byte[1024];
-		int read = is.read(header);
-		if (read != 1024) {
+	private SasHeader readHeader(SasPageSource source) throws Exception {
+		byte[] header = new byte[MIN_HEADER_LENGTH];
+		int read = source.read(0, header, MIN_HEADER_LENGTH);
+		if (read != MIN_HEADER_LENGTH) {
 			throw new SasReaderException(
 					"Header too short (not a sas7bdat file?): " + read);
 		}
@@ -432,37 +1870,44 @@ public class SasReader {
 			throw new SasReaderException("Magic number mismatch!");
 		}
 
-        final byte byte32 = IO.readByte(header, 32);
-        final byte byte35 = IO.readByte(header, 35);
-        final byte byte37 = IO.readByte(header, 37);
+		final byte byte32 = IO.readByte(header, 32);
+		final byte byte35 = IO.readByte(header, 35);
+		final byte byte37 = IO.readByte(header, 37);
+
+		final int a2 = byte32 == 0x33 ? 4 : 0;
+		final int a1 = byte35 == 0x33 ? 4 : 0;
 
-        int a2 = byte32 == 0x33 ? 4 : 0;
-        int a1 = byte35 == 0x33 ? 4 : 0;
+		final boolean bigEndian = byte37 == 0;
+		final boolean u64 = a2 == 4;
+		final SasLayout layout = SasLayout.get(u64, bigEndian);
 
-        boolean bigEndian = byte37 == 0;
-        boolean u64 = a2 == 4;
+		logger.debug("({}) Layout: {}", _name, layout);
+		logger.debug("a1={}, a2={}", a1, a2);
 
-        logger.debug("Endianness: {}", (bigEndian ? "big" : "little"));
-        logger.debug("U64? {}", String.valueOf(u64));
-        logger.debug("a1={}, a2={}", a1, a2);
+		final int headerLength = layout.readInt(header, 196 + a1);
+		if (headerLength < MIN_HEADER_LENGTH) {
+			throw new SasReaderException("Header length is too small: "
+					+ headerLength);
+		}
 
-		final int pageSize = IO.readInt(header, 200+a1);
+		final int pageSize = layout.readInt(header, 200 + a1);
 		if (pageSize < 0) {
 			throw new SasReaderException("Page size is negative: " + pageSize);
 		}
 
-		final int pageCount = IO.readInt(header, 204+a1);
+		final int pageCount = layout.readWord(header, 204 + a1);
 		if (pageCount < 1) {
 			throw new SasReaderException("Page count is not positive: "
 					+ pageCount);
 		}
 
-		logger.info("({}) page size={}, page count={}", new Object[] { _file,
+		logger.info("({}) page size={}, page count={}", new Object[] { _name,
 				pageSize, pageCount });
 
-		final String sasRelease = IO.readString(header, 216, 8);
-		final String sasHost = IO.readString(header, 224, 8);
+		final String sasRelease = IO.readString(header, 216 + a1 + a2, 8);
+		final String sasHost = IO.readString(header, 224 + a1 + a2, 8);
 
-		return new SasHeader(sasRelease, sasHost, pageSize, pageCount);
+		return new SasHeader(sasRelease, sasHost, pageSize, pageCount,
+				headerLength, layout);
 	}
 }
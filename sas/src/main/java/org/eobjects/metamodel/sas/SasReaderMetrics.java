@@ -0,0 +1,74 @@
+/**
+ * eobjects.org SassyReader
+ * Copyright (C) 2011 eobjects.org
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.eobjects.metamodel.sas;
+
+/**
+ * A listener for the work done by a {@link SasReader}, eg. for exposing it in
+ * a metrics system. Methods are called once per read or page (not per row or
+ * cell), so implementations should be cheap, like incrementing counters.
+ * 
+ * When reading ahead or in parallel, methods are called from several threads,
+ * so implementations must be thread-safe.
+ * 
+ * @see SasReader#setMetrics(SasReaderMetrics)
+ * @see CountingSasReaderMetrics
+ */
+public interface SasReaderMetrics {
+
+	/**
+	 * Called after bytes have been read from the file (a page, the file
+	 * header or a page header).
+	 * 
+	 * @param bytes
+	 *            the amount of bytes read
+	 * @param nanos
+	 *            the time spent reading, in nanoseconds
+	 */
+	public void bytesRead(int bytes, long nanos);
+
+	/**
+	 * Called after a page has been read, whether it holds metadata, data or
+	 * both.
+	 * 
+	 * @param pageNumber
+	 *            the number (0-based) of the page
+	 * @param pageType
+	 *            the type of the page
+	 */
+	public void pageRead(int pageNumber, int pageType);
+
+	/**
+	 * Called after the rows of a page with data have been decoded. Rows that
+	 * are skipped or rejected by predicates are not decoded.
+	 * 
+	 * @param pageNumber
+	 *            the number (0-based) of the page
+	 * @param rows
+	 *            the amount of rows decoded
+	 * @param numericCells
+	 *            the amount of numeric (including date/time) cells decoded
+	 * @param characterCells
+	 *            the amount of character cells decoded
+	 * @param nanos
+	 *            the time spent decoding, in nanoseconds
+	 */
+	public void pageDecoded(int pageNumber, int rows, int numericCells,
+			int characterCells, long nanos);
+}
@@ -0,0 +1,311 @@
+/**
+ * eobjects.org SassyReader
+ * Copyright (C) 2011 eobjects.org
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.eobjects.metamodel.sas;
+
+import java.util.Arrays;
+
+/**
+ * A batch of rows (typically all the rows of a page) in columnar form.
+ * 
+ * Numeric columns are represented by a double vector and character columns by
+ * offsets and lengths of their (trimmed) values in the page data, so that
+ * values are only decoded into {@link String}s if needed. For all columns a
+ * bitmap marks the missing values, ie. NaN numbers and zero-length cells.
+ * 
+ * The columns of a batch are the projected columns of the reader (see
+ * {@link SasReader#setProjection(int...)}) and the rows are those that
+ * satisfy the reader's predicates. Vectors have room for more values than
+ * there are rows in the batch, so only the first {@link #getRowCount()}
+ * values of each vector are valid.
+ */
+public final class SasRowBatch {
+
+	private final SasColumnType[] _columnTypes;
+	private final double[][] _numbers;
+	private final int[][] _offsets;
+	private final int[][] _lengths;
+	private final long[][] _missing;
+	private final StringDictionary[] _dictionaries;
+	private final int[][] _dictionaryIds;
+	private byte[] _pageData;
+	private int _rowCount;
+	private int _firstRowNumber;
+
+	SasRowBatch(SasColumnType[] columnTypes, StringDictionary[] dictionaries,
+			int capacity) {
+		final int columnCount = columnTypes.length;
+		_columnTypes = columnTypes;
+		_dictionaries = (dictionaries == null ? new StringDictionary[columnCount]
+				: dictionaries);
+		_numbers = new double[columnCount][];
+		_offsets = new int[columnCount][];
+		_lengths = new int[columnCount][];
+		_dictionaryIds = new int[columnCount][];
+		_missing = new long[columnCount][];
+		for (int i = 0; i < columnCount; i++) {
+			if (columnTypes[i] == SasColumnType.NUMERIC) {
+				_numbers[i] = new double[capacity];
+			} else {
+				_offsets[i] = new int[capacity];
+				_lengths[i] = new int[capacity];
+				if (_dictionaries[i] != null) {
+					_dictionaryIds[i] = new int[capacity];
+				}
+			}
+			_missing[i] = new long[(capacity + 63) / 64];
+		}
+	}
+
+	/**
+	 * Resets the batch to hold the rows of a new page.
+	 */
+	void reset(byte[] pageData, int firstRowNumber) {
+		_pageData = pageData;
+		_firstRowNumber = firstRowNumber;
+		_rowCount = 0;
+		for (long[] missing : _missing) {
+			Arrays.fill(missing, 0);
+		}
+	}
+
+	/**
+	 * Adds a row to the batch. The values of the row are subsequently set
+	 * using the set methods.
+	 * 
+	 * @return the index of the new row within the batch
+	 */
+	int addRow() {
+		if (_rowCount == capacity()) {
+			grow();
+		}
+		return _rowCount++;
+	}
+
+	void setNumber(int column, int row, double value) {
+		_numbers[column][row] = value;
+		if (Double.isNaN(value)) {
+			setMissing(column, row);
+		}
+	}
+
+	void setCharacter(int column, int row, int offset, int length) {
+		_offsets[column][row] = offset;
+		_lengths[column][row] = length;
+	}
+
+	void setCharacter(int column, int row, int offset, int length,
+			int dictionaryId) {
+		_offsets[column][row] = offset;
+		_lengths[column][row] = length;
+		_dictionaryIds[column][row] = dictionaryId;
+	}
+
+	void setMissing(int column, int row) {
+		_missing[column][row >>> 6] |= 1L << row;
+		if (_dictionaryIds[column] != null) {
+			_dictionaryIds[column][row] = -1;
+		}
+	}
+
+	private int capacity() {
+		return _missing.length == 0 ? Integer.MAX_VALUE
+				: _missing[0].length * 64;
+	}
+
+	private void grow() {
+		final int capacity = capacity() * 2;
+		for (int i = 0; i < _columnTypes.length; i++) {
+			if (_numbers[i] != null) {
+				_numbers[i] = Arrays.copyOf(_numbers[i], capacity);
+			} else {
+				_offsets[i] = Arrays.copyOf(_offsets[i], capacity);
+				_lengths[i] = Arrays.copyOf(_lengths[i], capacity);
+				if (_dictionaryIds[i] != null) {
+					_dictionaryIds[i] = Arrays.copyOf(_dictionaryIds[i],
+							capacity);
+				}
+			}
+			_missing[i] = Arrays.copyOf(_missing[i], capacity / 64);
+		}
+	}
+
+	public int getColumnCount() {
+		return _columnTypes.length;
+	}
+
+	public SasColumnType getColumnType(int column) {
+		return _columnTypes[column];
+	}
+
+	/**
+	 * Gets the amount of rows in the batch.
+	 * 
+	 * @return
+	 */
+	public int getRowCount() {
+		return _rowCount;
+	}
+
+	/**
+	 * Gets the row number (1 = first row) of the first row in the batch.
+	 * 
+	 * @return
+	 */
+	public int getFirstRowNumber() {
+		return _firstRowNumber;
+	}
+
+	/**
+	 * Gets the values of a numeric column.
+	 * 
+	 * @param column
+	 * @return
+	 */
+	public double[] getNumbers(int column) {
+		checkType(column, SasColumnType.NUMERIC);
+		return _numbers[column];
+	}
+
+	/**
+	 * Gets the bitmap of missing values of a column. Bit (row % 64) of
+	 * element (row / 64) is set if the value of the row is missing.
+	 * 
+	 * @param column
+	 * @return
+	 */
+	public long[] getMissingBitmap(int column) {
+		return _missing[column];
+	}
+
+	public boolean isMissing(int column, int row) {
+		return (_missing[column][row >>> 6] & (1L << row)) != 0;
+	}
+
+	/**
+	 * Gets the data of the page that the values of character columns refer
+	 * to.
+	 * 
+	 * @return
+	 */
+	public byte[] getPageData() {
+		return _pageData;
+	}
+
+	/**
+	 * Gets the offsets (in the page data) of the values of a character
+	 * column.
+	 * 
+	 * @param column
+	 * @return
+	 */
+	public int[] getOffsets(int column) {
+		checkType(column, SasColumnType.CHARACTER);
+		return _offsets[column];
+	}
+
+	/**
+	 * Gets the (trimmed) lengths of the values of a character column.
+	 * 
+	 * @param column
+	 * @return
+	 */
+	public int[] getLengths(int column) {
+		checkType(column, SasColumnType.CHARACTER);
+		return _lengths[column];
+	}
+
+	/**
+	 * Gets the dictionary ids of the values of a character column, when the
+	 * reader deduplicates character values (see
+	 * {@link SasReader#setStringDeduplication(boolean)}). Ids identify
+	 * distinct values and stay the same for all batches of a read, so they
+	 * can be used to eg. group rows without decoding or comparing strings.
+	 * Missing values, and values that did not fit in the (bounded) dictionary,
+	 * have the id -1.
+	 * 
+	 * @param column
+	 * @return the ids, or null if the column is not dictionary encoded
+	 */
+	public int[] getDictionaryIds(int column) {
+		checkType(column, SasColumnType.CHARACTER);
+		return _dictionaryIds[column];
+	}
+
+	/**
+	 * Gets the value of a dictionary id of a character column.
+	 * 
+	 * @param column
+	 * @param dictionaryId
+	 *            an id from {@link #getDictionaryIds(int)}
+	 * @return
+	 */
+	public String getDictionaryValue(int column, int dictionaryId) {
+		checkType(column, SasColumnType.CHARACTER);
+		if (_dictionaries[column] == null) {
+			throw new IllegalStateException("Column " + column
+					+ " is not dictionary encoded");
+		}
+		return _dictionaries[column].getValue(dictionaryId);
+	}
+
+	/**
+	 * Gets the number of distinct values in the dictionary of a character
+	 * column, so far. Dictionary ids are less than this number.
+	 * 
+	 * @param column
+	 * @return the size of the dictionary, or 0 if the column is not
+	 *         dictionary encoded
+	 */
+	public int getDictionarySize(int column) {
+		checkType(column, SasColumnType.CHARACTER);
+		return _dictionaries[column] == null ? 0 : _dictionaries[column]
+				.size();
+	}
+
+	/**
+	 * Decodes the value of a character column. Values in the dictionary of
+	 * the column (if any) are not decoded again, but shared.
+	 * 
+	 * @param column
+	 * @param row
+	 * @return the value, or null if it is missing
+	 */
+	public String getString(int column, int row) {
+		checkType(column, SasColumnType.CHARACTER);
+		if (isMissing(column, row)) {
+			return null;
+		}
+		if (_dictionaryIds[column] != null && _dictionaryIds[column][row] != -1) {
+			return _dictionaries[column].getValue(_dictionaryIds[column][row]);
+		}
+		final int length = _lengths[column][row];
+		if (length == 0) {
+			return "";
+		}
+		return IO.readString(_pageData, _offsets[column][row], length);
+	}
+
+	private void checkType(int column, SasColumnType columnType) {
+		if (_columnTypes[column] != columnType) {
+			throw new IllegalArgumentException("Column " + column + " is not "
+					+ columnType + ", but " + _columnTypes[column]);
+		}
+	}
+}
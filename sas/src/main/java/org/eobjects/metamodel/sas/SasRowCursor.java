@@ -0,0 +1,241 @@
+/**
+ * eobjects.org SassyReader
+ * Copyright (C) 2011 eobjects.org
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.eobjects.metamodel.sas;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A cursor for pulling rows from a sas7bdat file, one at a time. Unlike
+ * {@link SasReader#read(SasReaderCallback)}, which pushes all rows to a
+ * callback, the cursor only reads a page when the rows of the previous page
+ * have been consumed, so rows are decoded on the consumer's thread and the
+ * consumer is free to stop at any time. When the reader collects metrics, the
+ * rows of a page are decoded as soon as the page is read, so that decoding is
+ * timed per page.
+ * 
+ * A cursor is not thread-safe.
+ * 
+ * @see SasReader#openCursor()
+ */
+public final class SasRowCursor implements Closeable {
+
+	private final SasReader _reader;
+	private final SasMetadata _metadata;
+	private final SasRowDecoder _decoder;
+	private final SasPageSource _source;
+	private final byte[] _pageData;
+	private final SasPageRows _pageRows;
+	private final SasReaderMetrics _metrics;
+
+	private int _pageNumber;
+	private int _pageRowCount;
+	private int _pageRow;
+	private int _rowOffset;
+	private int _rowNumber;
+	private int _skipRows;
+	private SasZoneMap _zoneMap;
+	private SasPredicate[] _predicates;
+	private SasZoneMap.Builder _zoneMapBuilder;
+	private boolean _closed;
+	private final List<Object[]> _decodedRows;
+	private int _decodedRow;
+
+	/**
+	 * Creates a cursor.
+	 * 
+	 * @param firstPageNumber
+	 *            the number of the first page to read
+	 * @param skipRows
+	 *            the amount of (accepted) rows to skip without decoding them
+	 * @param rowNumber
+	 *            the row number of the row preceding the first page
+	 */
+	SasRowCursor(SasReader reader, SasMetadata metadata,
+			SasRowDecoder decoder, SasPageSource source, int firstPageNumber,
+			int skipRows, int rowNumber) {
+		_reader = reader;
+		_metadata = metadata;
+		_decoder = decoder;
+		_source = source;
+		_pageData = new byte[metadata.getHeader().getPageSize()];
+		_pageRows = new SasPageRows(metadata);
+		_pageNumber = firstPageNumber;
+		_skipRows = skipRows;
+		_rowNumber = rowNumber;
+		_metrics = reader.getMetrics();
+		_decodedRows = (_metrics == null ? null : new ArrayList<Object[]>());
+	}
+
+	/**
+	 * Sets the zone map used to skip pages, and/or a builder of a zone map
+	 * to add the pages to, which is saved once all pages have been read.
+	 */
+	void setZoneMap(SasZoneMap zoneMap, SasPredicate[] predicates,
+			SasZoneMap.Builder zoneMapBuilder) {
+		_zoneMap = zoneMap;
+		_predicates = predicates;
+		_zoneMapBuilder = zoneMapBuilder;
+	}
+
+	/**
+	 * Gets the amount of columns in the file.
+	 * 
+	 * @return
+	 */
+	public int getColumnCount() {
+		return _metadata.getColumnCount();
+	}
+
+	public String getColumnName(int columnIndex) {
+		return _metadata.getColumnName(columnIndex);
+	}
+
+	public SasColumnType getColumnType(int columnIndex) {
+		return _reader.getColumnType(_metadata, columnIndex);
+	}
+
+	/**
+	 * Gets the row number (1 = first row of the file) of the row last
+	 * returned by {@link #nextRow()}, or the number of the row preceding the
+	 * first row if no rows have been returned.
+	 * 
+	 * @return
+	 */
+	public int getRowNumber() {
+		return _rowNumber;
+	}
+
+	/**
+	 * Reads the next row.
+	 * 
+	 * @return the values of the (projected) columns of the row, or null if
+	 *         there are no more rows
+	 * @throws SasReaderException
+	 */
+	public Object[] nextRow() throws SasReaderException {
+		if (_closed) {
+			return null;
+		}
+		final int rowLength = _metadata.getRowLength();
+		try {
+			while (true) {
+				if (_decodedRows != null
+						&& _decodedRow < _decodedRows.size()) {
+					_rowNumber++;
+					return _decodedRows.set(_decodedRow++, null);
+				}
+				while (_pageRow < _pageRowCount) {
+					final byte[] rowData = _pageRows.getData();
+					final int rowOffset = _rowOffset;
+					SasReader.checkRowBounds(_pageNumber - 1, rowData.length,
+							rowOffset, rowLength);
+					_pageRow++;
+					_rowOffset += rowLength;
+
+					if (_decoder.accept(rowData, rowOffset)) {
+						_rowNumber++;
+						if (_skipRows > 0) {
+							_skipRows--;
+							continue;
+						}
+						return _decoder.decodeRow(rowData, rowOffset);
+					}
+				}
+
+				if (!nextPage()) {
+					if (_zoneMapBuilder != null) {
+						_reader.saveZoneMap(_metadata, _zoneMapBuilder.build());
+						_zoneMapBuilder = null;
+					}
+					close();
+					return null;
+				}
+			}
+		} catch (IOException e) {
+			throw new SasReaderException(
+					"Unhandled exception occurred while reading sas7bdat file!",
+					e);
+		}
+	}
+
+	/**
+	 * Reads pages until a page with data is found.
+	 * 
+	 * @return false if there are no more pages
+	 */
+	private boolean nextPage() throws IOException {
+		final SasHeader header = _metadata.getHeader();
+		while (_pageNumber < header.getPageCount()) {
+			if (_zoneMap != null && !_zoneMap.mayMatch(_pageNumber, _predicates)) {
+				_pageNumber++;
+				continue;
+			}
+			final byte pageType = _reader.readPage(_source, header,
+					_pageNumber, _pageData);
+			_pageNumber++;
+			if (pageType == -1) {
+				return false;
+			}
+			if (_pageRows.load(_pageNumber - 1, _pageData, pageType)) {
+				if (_zoneMapBuilder != null) {
+					_zoneMapBuilder.addPage(_pageNumber - 1, _pageRows);
+				}
+				if (_decodedRows != null) {
+					decodePage();
+					return true;
+				}
+				_pageRowCount = _pageRows.getCount();
+				_pageRow = 0;
+				_rowOffset = _pageRows.getOffset();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Decodes all (accepted) rows of the current page at once, like a read
+	 * does, so that the decoding is timed per page rather than per row when
+	 * metrics are collected.
+	 */
+	private void decodePage() {
+		_decodedRows.clear();
+		_decodedRow = 0;
+		final int skipped = _reader.decodePage(_metadata, _decoder,
+				_pageNumber - 1, _pageRows, _decodedRows, _skipRows);
+		_skipRows -= skipped;
+		_rowNumber += skipped;
+	}
+
+	@Override
+	public void close() throws SasReaderException {
+		if (!_closed) {
+			_closed = true;
+			try {
+				_source.close();
+			} catch (IOException e) {
+				// do nothing
+			}
+		}
+	}
+}
@@ -0,0 +1,266 @@
+/**
+ * eobjects.org SassyReader
+ * Copyright (C) 2011 eobjects.org
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.eobjects.metamodel.sas;
+
+/**
+ * Decodes rows of a sas7bdat file, in place from the page data. A decoder
+ * holds state (eg. string dictionaries) and is thus not thread-safe, but it
+ * can be used for all rows of all pages read by a single thread.
+ */
+final class SasRowDecoder {
+
+	private final SasLayout _layout;
+	private final int _columnCount;
+	private final int[] _columnOffsets;
+	private final int[] _columnLengths;
+	private final boolean[] _characterColumns;
+	private final int _characterColumnCount;
+	private final SasColumnType[] _dateTimeColumnTypes;
+	private final StringDictionary[] _stringDictionaries;
+	private final SasPredicate[] _predicates;
+	private final int[] _predicateOffsets;
+	private final int[] _predicateLengths;
+	private final boolean[] _predicateCharacterColumns;
+
+	/**
+	 * Creates a decoder.
+	 * 
+	 * @param metadata
+	 *            the metadata of the file
+	 * @param projection
+	 *            the indexes of the columns to decode, in the order that
+	 *            their values should appear in the decoded rows, or null to
+	 *            decode all columns
+	 * @param predicates
+	 *            predicates that rows must satisfy to be decoded, or null
+	 * @param stringDictionarySize
+	 *            the max. number of distinct values per character column to
+	 *            deduplicate, or 0 to not deduplicate character values
+	 * @param dateTimeDecoding
+	 *            whether or not to decode the values of date/time columns
+	 *            into java.time objects
+	 */
+	public SasRowDecoder(SasMetadata metadata, int[] projection,
+			SasPredicate[] predicates, int stringDictionarySize,
+			boolean dateTimeDecoding) {
+		if (projection == null) {
+			projection = new int[metadata.getColumnCount()];
+			for (int i = 0; i < projection.length; i++) {
+				projection[i] = i;
+			}
+		}
+
+		_layout = metadata.getHeader().getLayout();
+		_columnCount = projection.length;
+		_columnOffsets = new int[_columnCount];
+		_columnLengths = new int[_columnCount];
+		_characterColumns = new boolean[_columnCount];
+		_dateTimeColumnTypes = new SasColumnType[_columnCount];
+		for (int i = 0; i < _columnCount; i++) {
+			final int columnIndex = projection[i];
+			if (columnIndex < 0 || columnIndex >= metadata.getColumnCount()) {
+				throw new SasReaderException("Column index out of range: "
+						+ columnIndex + " (column count: "
+						+ metadata.getColumnCount() + ")");
+			}
+			_columnOffsets[i] = metadata.getColumnOffset(columnIndex);
+			_columnLengths[i] = metadata.getColumnLength(columnIndex);
+			_characterColumns[i] = metadata.getColumnType(columnIndex) == SasColumnType.CHARACTER;
+			if (dateTimeDecoding) {
+				_dateTimeColumnTypes[i] = metadata
+						.getDateTimeColumnType(columnIndex);
+			}
+		}
+
+		int characterColumnCount = 0;
+		for (int i = 0; i < _columnCount; i++) {
+			if (_characterColumns[i]) {
+				characterColumnCount++;
+			}
+		}
+		_characterColumnCount = characterColumnCount;
+
+		if (stringDictionarySize > 0) {
+			_stringDictionaries = new StringDictionary[_columnCount];
+			for (int i = 0; i < _columnCount; i++) {
+				if (_characterColumns[i]) {
+					_stringDictionaries[i] = new StringDictionary(
+							stringDictionarySize);
+				}
+			}
+		} else {
+			_stringDictionaries = null;
+		}
+
+		_predicates = (predicates == null ? new SasPredicate[0] : predicates);
+		_predicateOffsets = new int[_predicates.length];
+		_predicateLengths = new int[_predicates.length];
+		_predicateCharacterColumns = new boolean[_predicates.length];
+		for (int i = 0; i < _predicates.length; i++) {
+			final SasPredicate predicate = _predicates[i];
+			final int columnIndex = predicate.getColumnIndex();
+			if (columnIndex < 0 || columnIndex >= metadata.getColumnCount()) {
+				throw new SasReaderException("Column index out of range: "
+						+ columnIndex + " (column count: "
+						+ metadata.getColumnCount() + ")");
+			}
+			final SasColumnType columnType = metadata.getColumnType(columnIndex);
+			if (!predicate.isApplicable(columnType)) {
+				throw new SasReaderException("Predicate not applicable to "
+						+ columnType + " column: " + predicate);
+			}
+			_predicateOffsets[i] = metadata.getColumnOffset(columnIndex);
+			_predicateLengths[i] = metadata.getColumnLength(columnIndex);
+			_predicateCharacterColumns[i] = columnType == SasColumnType.CHARACTER;
+		}
+	}
+
+	/**
+	 * Gets the amount of (projected) character columns that are decoded.
+	 * 
+	 * @return
+	 */
+	public int getCharacterColumnCount() {
+		return _characterColumnCount;
+	}
+
+	/**
+	 * Gets the amount of (projected) numeric columns that are decoded.
+	 * 
+	 * @return
+	 */
+	public int getNumericColumnCount() {
+		return _columnCount - _characterColumnCount;
+	}
+
+	/**
+	 * Determines if a row satisfies the predicates of the decoder, by
+	 * evaluating them on the raw cells of the row.
+	 * 
+	 * @param pageData
+	 *            the data of the page that holds the row
+	 * @param rowOffset
+	 *            the offset of the row within the page
+	 * @return true if the row should be decoded
+	 */
+	public boolean accept(byte[] pageData, int rowOffset) {
+		for (int i = 0; i < _predicates.length; i++) {
+			if (!_predicates[i].evaluate(pageData, rowOffset
+					+ _predicateOffsets[i], _predicateLengths[i],
+					_predicateCharacterColumns[i], _layout)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Decodes a single row.
+	 * 
+	 * @param pageData
+	 *            the data of the page that holds the row
+	 * @param rowOffset
+	 *            the offset of the row within the page
+	 * @return the values of the (projected) columns of the row
+	 */
+	public Object[] decodeRow(byte[] pageData, int rowOffset) {
+		final Object[] rowData = new Object[_columnCount];
+		for (int col = 0; col < _columnCount; col++) {
+			final int off = rowOffset + _columnOffsets[col];
+			final int len = _columnLengths[col];
+
+			if (len > 0) {
+				// decode the cell in place in the page data
+				final Object value;
+				if (_characterColumns[col]) {
+					if (_stringDictionaries == null) {
+						value = IO.readTrimmedString(pageData, off, len);
+					} else {
+						value = _stringDictionaries[col].get(pageData, off,
+								len);
+					}
+				} else if (_dateTimeColumnTypes[col] == null) {
+					value = _layout.readNumeric(pageData, off, len);
+				} else {
+					value = SasDateTimeFormats.decode(
+							_dateTimeColumnTypes[col],
+							_layout.readNumeric(pageData, off, len));
+				}
+				rowData[col] = value;
+			}
+		}
+		return rowData;
+	}
+
+	/**
+	 * Creates a batch with vectors for the (projected) columns of the
+	 * decoder. If the decoder deduplicates character values, the batch also
+	 * gets the dictionary ids of character values.
+	 * 
+	 * @param capacity
+	 *            the initial number of rows that the batch has room for
+	 * @return
+	 */
+	public SasRowBatch createBatch(int capacity) {
+		final SasColumnType[] columnTypes = new SasColumnType[_columnCount];
+		for (int col = 0; col < _columnCount; col++) {
+			columnTypes[col] = _characterColumns[col] ? SasColumnType.CHARACTER
+					: SasColumnType.NUMERIC;
+		}
+		return new SasRowBatch(columnTypes, _stringDictionaries, Math.max(
+				capacity, 1));
+	}
+
+	/**
+	 * Decodes a single row into a batch. Character values are not decoded,
+	 * only their (trimmed) position in the page data is recorded. Date/time
+	 * values are kept as (raw) numbers.
+	 * 
+	 * @param pageData
+	 *            the data of the page that holds the row
+	 * @param rowOffset
+	 *            the offset of the row within the page
+	 * @param batch
+	 *            the batch to add the row to
+	 */
+	public void decodeRow(byte[] pageData, int rowOffset, SasRowBatch batch) {
+		final int row = batch.addRow();
+		for (int col = 0; col < _columnCount; col++) {
+			final int off = rowOffset + _columnOffsets[col];
+			final int len = _columnLengths[col];
+
+			if (len == 0) {
+				batch.setMissing(col, row);
+			} else if (_characterColumns[col]) {
+				final int end = IO.trimEnd(pageData, off, off + len);
+				final int start = IO.trimStart(pageData, off, end);
+				if (_stringDictionaries == null) {
+					batch.setCharacter(col, row, start, end - start);
+				} else {
+					batch.setCharacter(col, row, start, end - start,
+							_stringDictionaries[col].getId(pageData, start,
+									end - start));
+				}
+			} else {
+				batch.setNumber(col, row, _layout.readNumeric(pageData, off, len));
+			}
+		}
+	}
+}
@@ -0,0 +1,100 @@
+/**
+ * eobjects.org SassyReader
+ * Copyright (C) 2011 eobjects.org
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.eobjects.metamodel.sas;
+
+import java.util.Arrays;
+
+/**
+ * An index of the data pages of a sas7bdat file, which maps page numbers to
+ * the (0-based) number of the first row on the page. The index is built from
+ * the page headers only, and allows a reader to seek directly to the page
+ * that holds a particular row.
+ * 
+ * Instances are immutable, so they can be shared between threads.
+ */
+final class SasRowIndex {
+
+	private final int _firstPageNumber;
+	private final int[] _firstRows;
+	private final int _rowCount;
+
+	/**
+	 * Creates an index.
+	 * 
+	 * @param firstPageNumber
+	 *            the number of the first indexed page
+	 * @param pageRowCounts
+	 *            the amount of rows on each page, starting from the first
+	 *            indexed page
+	 */
+	public SasRowIndex(int firstPageNumber, int[] pageRowCounts) {
+		_firstPageNumber = firstPageNumber;
+		_firstRows = new int[pageRowCounts.length];
+		int rowCount = 0;
+		for (int i = 0; i < pageRowCounts.length; i++) {
+			_firstRows[i] = rowCount;
+			rowCount += pageRowCounts[i];
+		}
+		_rowCount = rowCount;
+	}
+
+	/**
+	 * Gets the total amount of rows on the indexed pages.
+	 * 
+	 * @return
+	 */
+	public int getRowCount() {
+		return _rowCount;
+	}
+
+	/**
+	 * Gets the number of the page that holds a row.
+	 * 
+	 * @param row
+	 *            the row number (0-based)
+	 * @return the page number, or -1 if the row does not exist
+	 */
+	public int getPageNumber(int row) {
+		if (row < 0 || row >= _rowCount) {
+			return -1;
+		}
+		int i = Arrays.binarySearch(_firstRows, row);
+		if (i < 0) {
+			// the row is on the page before the insertion point
+			i = -i - 2;
+		} else {
+			// skip pages without rows, which share first row with the next
+			while (i + 1 < _firstRows.length && _firstRows[i + 1] == row) {
+				i++;
+			}
+		}
+		return _firstPageNumber + i;
+	}
+
+	/**
+	 * Gets the number (0-based) of the first row on a page.
+	 * 
+	 * @param pageNumber
+	 * @return
+	 */
+	public int getFirstRow(int pageNumber) {
+		return _firstRows[pageNumber - _firstPageNumber];
+	}
+}
@@ -27,15 +27,21 @@ package org.eobjects.metamodel.sas;
 final class SasSubHeader {
 
 	private final byte[] _rawData;
-	private final byte[] _signatureData;
+	private final int _signature;
 
-	public SasSubHeader(byte[] rawData, byte[] signatureData) {
+	public SasSubHeader(byte[] rawData, int signature) {
 		_rawData = rawData;
-		_signatureData = signatureData;
+		_signature = signature;
 	}
 
-	public byte[] getSignatureData() {
-		return _signatureData;
+	/**
+	 * Gets the signature of the subheader, ie. its first 4 bytes, as an int.
+	 * 
+	 * @return
+	 * @see SasSubHeaderCatalog
+	 */
+	public int getSignature() {
+		return _signature;
 	}
 
 	public byte[] getRawData() {
@@ -0,0 +1,172 @@
+/**
+ * eobjects.org SassyReader
+ * Copyright (C) 2011 eobjects.org
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.eobjects.metamodel.sas;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A catalog of the subheaders of a sas7bdat file, classified by their
+ * signature when they are read, so that subheaders of a particular kind can
+ * be looked up without scanning all subheaders. The catalog also records
+ * which pages hold subheaders.
+ */
+final class SasSubHeaderCatalog {
+
+	public static final int SIGNATURE_ROWSIZE = 0xf7f7f7f7;
+	public static final int SIGNATURE_COLSIZE = 0xf6f6f6f6;
+	public static final int SIGNATURE_COLTEXT = 0xfffffffd;
+	public static final int SIGNATURE_COLATTR = 0xfffffffc;
+	public static final int SIGNATURE_COLNAME = 0xffffffff;
+	public static final int SIGNATURE_COLLABS = 0xfffffbfe;
+	public static final int SIGNATURE_COLLIST = 0xfffffffe;
+	public static final int SIGNATURE_COUNTS = 0xfffffc00;
+
+	private final SasLayout _layout;
+	private final Map<Integer, List<SasSubHeader>> _subHeaders;
+	private final List<Integer> _pageNumbers;
+	private int _colAttrEntryCount;
+
+	public SasSubHeaderCatalog(SasLayout layout) {
+		_layout = layout;
+		_subHeaders = new HashMap<Integer, List<SasSubHeader>>();
+		_pageNumbers = new ArrayList<Integer>();
+		_colAttrEntryCount = 0;
+	}
+
+	/**
+	 * Determines if a signature is the signature of a metadata subheader.
+	 * Subheaders with other signatures hold data, ie. they are the
+	 * (uncompressed) rows of compressed files.
+	 * 
+	 * @param signature
+	 * @return
+	 */
+	public static boolean isMetadataSignature(int signature) {
+		switch (signature) {
+		case SIGNATURE_ROWSIZE:
+		case SIGNATURE_COLSIZE:
+		case SIGNATURE_COLTEXT:
+		case SIGNATURE_COLATTR:
+		case SIGNATURE_COLNAME:
+		case SIGNATURE_COLLABS:
+		case SIGNATURE_COLLIST:
+		case SIGNATURE_COUNTS:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Adds a subheader to the catalog.
+	 * 
+	 * @param pageNumber
+	 *            the number of the page that holds the subheader
+	 * @param subHeader
+	 */
+	public void add(int pageNumber, SasSubHeader subHeader) {
+		final Integer signature = subHeader.getSignature();
+		List<SasSubHeader> list = _subHeaders.get(signature);
+		if (list == null) {
+			list = new ArrayList<SasSubHeader>(1);
+			_subHeaders.put(signature, list);
+		}
+		list.add(subHeader);
+
+		if (signature == SIGNATURE_COLATTR) {
+			_colAttrEntryCount += (subHeader.getRawData().length
+					- _layout.getColumnAttributesHeaderLength() - _layout
+					.getColumnAttributesTrailerLength())
+					/ _layout.getColumnAttributesEntryLength();
+		}
+
+		if (_pageNumbers.isEmpty()
+				|| _pageNumbers.get(_pageNumbers.size() - 1) != pageNumber) {
+			_pageNumbers.add(pageNumber);
+		}
+	}
+
+	/**
+	 * Gets all subheaders with a signature, in the order they were added.
+	 * 
+	 * @param signature
+	 * @return
+	 */
+	public List<SasSubHeader> getSubHeaders(int signature) {
+		final List<SasSubHeader> list = _subHeaders.get(signature);
+		if (list == null) {
+			return Collections.emptyList();
+		}
+		return list;
+	}
+
+	/**
+	 * Gets the single subheader with a signature.
+	 * 
+	 * @param signature
+	 * @param name
+	 *            the name of the subheader, for error messages
+	 * @return
+	 * @throws SasReaderException
+	 *             if there is not exactly one such subheader
+	 */
+	public SasSubHeader getSubHeader(int signature, String name)
+			throws SasReaderException {
+		final List<SasSubHeader> list = getSubHeaders(signature);
+		if (list.isEmpty()) {
+			throw new SasReaderException("Could not find sub header: " + name);
+		} else if (list.size() != 1) {
+			throw new SasReaderException("Multiple (" + list.size()
+					+ ") instances of the same sub header: " + name);
+		}
+		return list.get(0);
+	}
+
+	public int getCount(int signature) {
+		return getSubHeaders(signature).size();
+	}
+
+	/**
+	 * Gets the total number of column attribute entries in the column
+	 * attribute subheaders.
+	 * 
+	 * @return
+	 */
+	public int getColAttrEntryCount() {
+		return _colAttrEntryCount;
+	}
+
+	/**
+	 * Gets the numbers of the pages that hold subheaders, in ascending order.
+	 * 
+	 * @return
+	 */
+	public int[] getPageNumbers() {
+		final int[] result = new int[_pageNumbers.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = _pageNumbers.get(i);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,362 @@
+/**
+ * eobjects.org SassyReader
+ * Copyright (C) 2011 eobjects.org
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.eobjects.metamodel.sas;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Per-page statistics (min, max and missing value count) of the numeric
+ * columns of a sas7bdat file. A zone map allows a reader to skip pages that
+ * cannot hold any row satisfying its predicates.
+ * 
+ * Zone maps are persisted in a sidecar file next to the sas7bdat file (with
+ * the extension ".zonemap"), along with the size and modification time of
+ * the sas7bdat file, so that a stale sidecar is ignored. A sidecar that does
+ * not match the metadata of the sas7bdat file is rejected.
+ * 
+ * Instances are immutable, so they can be shared between threads.
+ */
+final class SasZoneMap {
+
+	private static final int SIDECAR_MAGIC = 0x5a4d4150;
+	private static final int SIDECAR_VERSION = 1;
+
+	private final int _firstPageNumber;
+	private final int[] _columnIndexes;
+	private final int[] _columnSlots;
+	private final double[] _mins;
+	private final double[] _maxs;
+	private final int[] _missingCounts;
+
+	private SasZoneMap(int columnCount, int firstPageNumber,
+			int[] columnIndexes, double[] mins, double[] maxs,
+			int[] missingCounts) {
+		_firstPageNumber = firstPageNumber;
+		_columnIndexes = columnIndexes;
+		_columnSlots = new int[columnCount];
+		Arrays.fill(_columnSlots, -1);
+		for (int slot = 0; slot < columnIndexes.length; slot++) {
+			_columnSlots[columnIndexes[slot]] = slot;
+		}
+		_mins = mins;
+		_maxs = maxs;
+		_missingCounts = missingCounts;
+	}
+
+	/**
+	 * Gets the number of pages that the zone map covers.
+	 * 
+	 * @return
+	 */
+	public int getPageCount() {
+		return _columnIndexes.length == 0 ? 0 : _mins.length
+				/ _columnIndexes.length;
+	}
+
+	/**
+	 * Determines if a page may hold rows that satisfy all of the predicates.
+	 * 
+	 * @param pageNumber
+	 * @param predicates
+	 * @return false if the page can be skipped
+	 */
+	public boolean mayMatch(int pageNumber, SasPredicate[] predicates) {
+		if (predicates == null || _columnIndexes.length == 0) {
+			return true;
+		}
+		final int page = pageNumber - _firstPageNumber;
+		if (page < 0 || page >= getPageCount()) {
+			return true;
+		}
+		for (SasPredicate predicate : predicates) {
+			final int columnIndex = predicate.getColumnIndex();
+			if (columnIndex < 0 || columnIndex >= _columnSlots.length) {
+				continue;
+			}
+			final int slot = _columnSlots[columnIndex];
+			if (slot == -1) {
+				continue;
+			}
+			final int i = page * _columnIndexes.length + slot;
+			if (!predicate.mayMatch(_mins[i], _maxs[i], _missingCounts[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the sidecar file of a sas7bdat file.
+	 * 
+	 * @param file
+	 * @return
+	 */
+	public static File getSidecarFile(File file) {
+		return new File(file.getPath() + ".zonemap");
+	}
+
+	/**
+	 * Writes the zone map to a sidecar file. The zone map is written to a
+	 * temporary file in the same directory first, which then replaces the
+	 * sidecar file atomically, so that concurrent readers never see a
+	 * partially written sidecar file.
+	 * 
+	 * @param sidecarFile
+	 * @param length
+	 *            the length of the sas7bdat file
+	 * @param lastModified
+	 *            the modification time of the sas7bdat file
+	 * @throws IOException
+	 */
+	public void write(File sidecarFile, long length, long lastModified)
+			throws IOException {
+		final File tempFile = File.createTempFile(sidecarFile.getName(),
+				".tmp", sidecarFile.getAbsoluteFile().getParentFile());
+		try {
+			final DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(tempFile)));
+			try {
+				out.writeInt(SIDECAR_MAGIC);
+				out.writeInt(SIDECAR_VERSION);
+				out.writeLong(length);
+				out.writeLong(lastModified);
+				out.writeInt(_columnSlots.length);
+				out.writeInt(_firstPageNumber);
+				out.writeInt(getPageCount());
+				out.writeInt(_columnIndexes.length);
+				for (int columnIndex : _columnIndexes) {
+					out.writeInt(columnIndex);
+				}
+				for (int i = 0; i < _mins.length; i++) {
+					out.writeDouble(_mins[i]);
+					out.writeDouble(_maxs[i]);
+					out.writeInt(_missingCounts[i]);
+				}
+			} finally {
+				out.close();
+			}
+			Files.move(tempFile.toPath(), sidecarFile.toPath(),
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			tempFile.delete();
+		}
+	}
+
+	/**
+	 * Reads a zone map from a sidecar file. The contents are validated
+	 * against the metadata of the sas7bdat file, so a corrupt sidecar file
+	 * fails with an {@link IOException} rather than a runtime exception or
+	 * an allocation of arbitrary size.
+	 * 
+	 * @param sidecarFile
+	 * @param metadata
+	 *            the metadata of the sas7bdat file
+	 * @param length
+	 *            the current length of the sas7bdat file
+	 * @param lastModified
+	 *            the current modification time of the sas7bdat file
+	 * @return the zone map, or null if the sidecar file does not exist or is
+	 *         stale
+	 * @throws IOException
+	 *             if the sidecar file cannot be read, is corrupt or does not
+	 *             match the metadata
+	 */
+	public static SasZoneMap read(File sidecarFile, SasMetadata metadata,
+			long length, long lastModified) throws IOException {
+		if (!sidecarFile.isFile()) {
+			return null;
+		}
+		final DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(sidecarFile)));
+		try {
+			if (in.readInt() != SIDECAR_MAGIC
+					|| in.readInt() != SIDECAR_VERSION
+					|| in.readLong() != length
+					|| in.readLong() != lastModified) {
+				return null;
+			}
+			final int[] expectedColumnIndexes = getNumericColumnIndexes(metadata);
+			final int columnCount = in.readInt();
+			checkValue("column count", columnCount, metadata.getColumnCount());
+			final int firstPageNumber = in.readInt();
+			checkValue("first page number", firstPageNumber,
+					metadata.getFirstDataPageNumber());
+			final int pageCount = in.readInt();
+			checkValue("page count", pageCount, getPageCount(metadata));
+			final int[] columnIndexes = new int[checkValue(
+					"numeric column count", in.readInt(),
+					expectedColumnIndexes.length)];
+			for (int i = 0; i < columnIndexes.length; i++) {
+				columnIndexes[i] = checkValue("numeric column index",
+						in.readInt(), expectedColumnIndexes[i]);
+			}
+			final int size = pageCount * columnIndexes.length;
+			final double[] mins = new double[size];
+			final double[] maxs = new double[size];
+			final int[] missingCounts = new int[size];
+			for (int i = 0; i < size; i++) {
+				mins[i] = in.readDouble();
+				maxs[i] = in.readDouble();
+				missingCounts[i] = in.readInt();
+			}
+			if (in.read() != -1) {
+				throw new IOException("Unexpected data after the zone map");
+			}
+			return new SasZoneMap(columnCount, firstPageNumber,
+					columnIndexes, mins, maxs, missingCounts);
+		} finally {
+			in.close();
+		}
+	}
+
+	private static int checkValue(String name, int value, int expected)
+			throws IOException {
+		if (value != expected) {
+			throw new IOException("Zone map " + name + " mismatch: " + value
+					+ " vs. " + expected);
+		}
+		return value;
+	}
+
+	/**
+	 * Gets the number of data pages that a zone map of a file covers.
+	 */
+	private static int getPageCount(SasMetadata metadata) {
+		return Math.max(metadata.getHeader().getPageCount()
+				- metadata.getFirstDataPageNumber(), 0);
+	}
+
+	/**
+	 * Gets the indexes of the numeric columns of a file, which are the
+	 * columns that a zone map has statistics for.
+	 */
+	private static int[] getNumericColumnIndexes(SasMetadata metadata) {
+		int numericColumns = 0;
+		for (int i = 0; i < metadata.getColumnCount(); i++) {
+			if (metadata.getColumnType(i) == SasColumnType.NUMERIC) {
+				numericColumns++;
+			}
+		}
+		final int[] columnIndexes = new int[numericColumns];
+		for (int i = 0, slot = 0; i < metadata.getColumnCount(); i++) {
+			if (metadata.getColumnType(i) == SasColumnType.NUMERIC) {
+				columnIndexes[slot++] = i;
+			}
+		}
+		return columnIndexes;
+	}
+
+	/**
+	 * Builds a zone map from the data pages of a file, page by page.
+	 */
+	static final class Builder {
+
+		private final SasMetadata _metadata;
+		private final int _firstPageNumber;
+		private final int _pageCount;
+		private final int[] _columnIndexes;
+		private final double[] _mins;
+		private final double[] _maxs;
+		private final int[] _missingCounts;
+
+		public Builder(SasMetadata metadata) {
+			_metadata = metadata;
+			_firstPageNumber = metadata.getFirstDataPageNumber();
+			_pageCount = getPageCount(metadata);
+			_columnIndexes = getNumericColumnIndexes(metadata);
+
+			// pages without rows (or not added) have no values
+			final int size = _pageCount * _columnIndexes.length;
+			_mins = new double[size];
+			_maxs = new double[size];
+			_missingCounts = new int[size];
+			Arrays.fill(_mins, Double.NaN);
+			Arrays.fill(_maxs, Double.NaN);
+		}
+
+		/**
+		 * Adds the statistics of a page with data.
+		 */
+		public void addPage(int pageNumber, SasPageRows pageRows) {
+			final int page = pageNumber - _firstPageNumber;
+			if (page < 0 || page >= _pageCount || _columnIndexes.length == 0) {
+				return;
+			}
+			final byte[] pageData = pageRows.getData();
+			final SasLayout layout = _metadata.getHeader().getLayout();
+			final int rowLength = _metadata.getRowLength();
+			final int pageRowCount = pageRows.getCount();
+			final int firstRowOffset = pageRows.getOffset();
+
+			for (int slot = 0; slot < _columnIndexes.length; slot++) {
+				final int columnIndex = _columnIndexes[slot];
+				final int columnOffset = _metadata.getColumnOffset(columnIndex);
+				final int columnLength = _metadata.getColumnLength(columnIndex);
+				if (columnLength == 0) {
+					// all values are null
+					continue;
+				}
+
+				double min = Double.NaN;
+				double max = Double.NaN;
+				int missingCount = 0;
+				int base = firstRowOffset;
+				for (int row = 0; row < pageRowCount; row++) {
+					SasReader.checkRowBounds(pageNumber, pageData.length,
+							base, rowLength);
+					final double value = layout.readNumeric(pageData, base
+							+ columnOffset, columnLength);
+					if (Double.isNaN(value)) {
+						missingCount++;
+					} else {
+						if (Double.isNaN(min) || Double.compare(value, min) < 0) {
+							min = value;
+						}
+						if (Double.isNaN(max) || Double.compare(value, max) > 0) {
+							max = value;
+						}
+					}
+					base += rowLength;
+				}
+
+				final int i = page * _columnIndexes.length + slot;
+				_mins[i] = min;
+				_maxs[i] = max;
+				_missingCounts[i] = missingCount;
+			}
+		}
+
+		public SasZoneMap build() {
+			return new SasZoneMap(_metadata.getColumnCount(),
+					_firstPageNumber, _columnIndexes, _mins, _maxs,
+					_missingCounts);
+		}
+	}
+}
@@ -0,0 +1,148 @@
+/**
+ * eobjects.org SassyReader
+ * Copyright (C) 2011 eobjects.org
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.eobjects.metamodel.sas;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * A {@link SasPageSource} that reads a sas7bdat file sequentially from an
+ * {@link InputStream}, eg. a decompressing stream. Since a stream cannot be
+ * rewound, reads must be made at increasing positions - gaps are skipped, but
+ * reading a position that has already been passed fails.
+ * 
+ * To allow the header and metadata pages to be read again when the data is
+ * read, the source can retain the bytes read from the stream (see
+ * {@link #setRetaining(boolean)}), which are then served from memory.
+ */
+final class StreamPageSource implements SasPageSource {
+
+	private final InputStream _in;
+	private long _position;
+	private boolean _retaining;
+	private byte[] _retained;
+	private int _retainedLength;
+
+	public StreamPageSource(InputStream in) {
+		_in = in;
+		_position = 0;
+		_retaining = false;
+		_retained = new byte[0];
+		_retainedLength = 0;
+	}
+
+	/**
+	 * Sets whether the bytes read from the stream should be retained in
+	 * memory, so that they can be read again. Only the bytes at the start of
+	 * the stream can be retained, ie. retaining must be turned on before
+	 * reading, and stays off once turned off.
+	 * 
+	 * @param retaining
+	 */
+	public void setRetaining(boolean retaining) {
+		_retaining = retaining && _position == _retainedLength;
+	}
+
+	@Override
+	public int read(long position, byte[] buffer, int len) throws IOException {
+		int read = 0;
+		if (position < _retainedLength) {
+			read = (int) Math.min(len, _retainedLength - position);
+			System.arraycopy(_retained, (int) position, buffer, 0, read);
+			if (read == len) {
+				return read;
+			}
+			position += read;
+		}
+
+		if (position < _position) {
+			throw new IOException("Cannot read position " + position
+					+ " of a stream that has been read up to position "
+					+ _position);
+		}
+		if (!skip(position - _position)) {
+			return read;
+		}
+
+		while (read < len) {
+			final int n = _in.read(buffer, read, len - read);
+			if (n == -1) {
+				break;
+			}
+			if (_retaining) {
+				retain(buffer, read, n);
+			}
+			read += n;
+			_position += n;
+		}
+		return read;
+	}
+
+	/**
+	 * Skips bytes of the stream.
+	 * 
+	 * @return false if the end of the stream was reached
+	 */
+	private boolean skip(long count) throws IOException {
+		if (_retaining) {
+			// skipped bytes are retained too
+			final byte[] buffer = new byte[(int) Math.min(count, 8192)];
+			while (count > 0) {
+				final int n = _in.read(buffer, 0,
+						(int) Math.min(count, buffer.length));
+				if (n == -1) {
+					return false;
+				}
+				retain(buffer, 0, n);
+				_position += n;
+				count -= n;
+			}
+			return true;
+		}
+		while (count > 0) {
+			final long n = _in.skip(count);
+			if (n > 0) {
+				_position += n;
+				count -= n;
+			} else if (_in.read() == -1) {
+				return false;
+			} else {
+				_position++;
+				count--;
+			}
+		}
+		return true;
+	}
+
+	private void retain(byte[] buffer, int offset, int len) {
+		if (_retainedLength + len > _retained.length) {
+			_retained = Arrays.copyOf(_retained,
+					Math.max(_retained.length * 2, _retainedLength + len));
+		}
+		System.arraycopy(buffer, offset, _retained, _retainedLength, len);
+		_retainedLength += len;
+	}
+
+	@Override
+	public void close() throws IOException {
+		_in.close();
+	}
+}
@@ -0,0 +1,189 @@
+/**
+ * eobjects.org SassyReader
+ * Copyright (C) 2011 eobjects.org
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.eobjects.metamodel.sas;
+
+import java.util.Arrays;
+
+/**
+ * A bounded dictionary of decoded character values, keyed by their raw bytes.
+ * Repeated values (typically in low-cardinality "category" columns) are thus
+ * only decoded once and share a single {@link String} instance.
+ * 
+ * Values are keyed by their trimmed bytes and numbered in the order they are
+ * added, so the ids can also be used to group or join on a column without
+ * comparing strings. Lookups are done directly on the page data, so a hit does
+ * not allocate anything. When the dictionary is full, values that are not in
+ * it are simply decoded without being added.
+ */
+final class StringDictionary {
+
+	private final int _maxSize;
+	private int[] _slots;
+	private byte[][] _keys;
+	private int[] _hashes;
+	private String[] _values;
+	private int _size;
+
+	public StringDictionary(int maxSize) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("Max size must be positive: "
+					+ maxSize);
+		}
+		_maxSize = maxSize;
+		_slots = new int[16];
+		_keys = new byte[8][];
+		_hashes = new int[8];
+		_values = new String[8];
+		_size = 0;
+	}
+
+	/**
+	 * Gets the (trimmed) string value of a raw character value.
+	 * 
+	 * @param buffer
+	 * @param off
+	 * @param len
+	 * @return
+	 */
+	public String get(byte[] buffer, int off, int len) {
+		final int end = IO.trimEnd(buffer, off, off + len);
+		final int start = IO.trimStart(buffer, off, end);
+		final int id = getId(buffer, start, end - start);
+		if (id == -1) {
+			return decode(buffer, start, end - start);
+		}
+		return _values[id];
+	}
+
+	/**
+	 * Gets the id of an already trimmed character value, adding the value to
+	 * the dictionary if it is not in it. Ids are assigned in the order that
+	 * values are added, starting from 0, so equal values always have the same
+	 * id and different values never do.
+	 * 
+	 * @param buffer
+	 * @param off
+	 * @param len
+	 * @return the id of the value, or -1 if the value is not in the
+	 *         dictionary and the dictionary is full
+	 */
+	public int getId(byte[] buffer, int off, int len) {
+		final int hash = hash(buffer, off, len);
+		final int mask = _slots.length - 1;
+		int slot = hash & mask;
+		while (_slots[slot] != 0) {
+			final int id = _slots[slot] - 1;
+			if (_hashes[id] == hash && equals(_keys[id], buffer, off, len)) {
+				return id;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		if (_size == _maxSize) {
+			return -1;
+		}
+		final int id = _size;
+		add(slot, hash, Arrays.copyOfRange(buffer, off, off + len),
+				decode(buffer, off, len));
+		return id;
+	}
+
+	/**
+	 * Gets the value of an id returned by
+	 * {@link #getId(byte[], int, int)}.
+	 * 
+	 * @param id
+	 * @return
+	 */
+	public String getValue(int id) {
+		if (id < 0 || id >= _size) {
+			throw new IllegalArgumentException("No such id: " + id);
+		}
+		return _values[id];
+	}
+
+	public int getMaxSize() {
+		return _maxSize;
+	}
+
+	public int size() {
+		return _size;
+	}
+
+	private void add(int slot, int hash, byte[] key, String value) {
+		final int id = _size;
+		if (id == _keys.length) {
+			final int capacity = id * 2;
+			_keys = Arrays.copyOf(_keys, capacity);
+			_hashes = Arrays.copyOf(_hashes, capacity);
+			_values = Arrays.copyOf(_values, capacity);
+		}
+		_keys[id] = key;
+		_hashes[id] = hash;
+		_values[id] = value;
+		_slots[slot] = id + 1;
+		_size++;
+
+		if (_size * 2 > _slots.length) {
+			rehash();
+		}
+	}
+
+	private void rehash() {
+		final int[] slots = new int[_slots.length * 2];
+		final int mask = slots.length - 1;
+		for (int id = 0; id < _size; id++) {
+			int slot = _hashes[id] & mask;
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = id + 1;
+		}
+		_slots = slots;
+	}
+
+	private static String decode(byte[] buffer, int off, int len) {
+		if (len == 0) {
+			return "";
+		}
+		return IO.readString(buffer, off, len);
+	}
+
+	private static int hash(byte[] buffer, int off, int len) {
+		int hash = 1;
+		for (int i = off; i < off + len; i++) {
+			hash = 31 * hash + buffer[i];
+		}
+		// spread the bits, since slots are selected by the lowest bits
+		return hash ^ (hash >>> 16);
+	}
+
+	private static boolean equals(byte[] key, byte[] buffer, int off, int len) {
+		if (key.length != len) {
+			return false;
+		}
+		for (int i = 0; i < len; i++) {
+			if (key[i] != buffer[off + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -52,6 +52,12 @@ final class ColumnBuildingSasCallback implements SasReaderCallback {
 			type = ColumnType.NUMERIC;
 		} else if (columnType == SasColumnType.CHARACTER) {
 			type = ColumnType.VARCHAR;
+		} else if (columnType == SasColumnType.DATE) {
+			type = ColumnType.DATE;
+		} else if (columnType == SasColumnType.DATETIME) {
+			type = ColumnType.TIMESTAMP;
+		} else if (columnType == SasColumnType.TIME) {
+			type = ColumnType.TIME;
 		} else {
 			type = null;
 		}
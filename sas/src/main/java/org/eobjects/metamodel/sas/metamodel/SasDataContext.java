@@ -20,37 +20,98 @@
 package org.eobjects.metamodel.sas.metamodel;
 
 import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import org.apache.metamodel.DataContext;
 import org.apache.metamodel.MetaModelException;
+import org.apache.metamodel.MetaModelHelper;
 import org.apache.metamodel.QueryPostprocessDataContext;
 import org.apache.metamodel.data.DataSet;
-import org.apache.metamodel.data.RowPublisherDataSet;
 import org.apache.metamodel.query.FilterItem;
+import org.apache.metamodel.query.OperatorType;
 import org.apache.metamodel.query.SelectItem;
 import org.apache.metamodel.schema.Column;
+import org.apache.metamodel.schema.ColumnType;
 import org.apache.metamodel.schema.MutableSchema;
 import org.apache.metamodel.schema.Schema;
 import org.apache.metamodel.schema.Table;
-import org.eobjects.metamodel.sas.CountReaderCallback;
+import org.apache.metamodel.util.FileResource;
 import org.eobjects.metamodel.sas.SasFilenameFilter;
+import org.eobjects.metamodel.sas.SasPredicate;
 import org.eobjects.metamodel.sas.SasReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * {@link DataContext} for a directory of SAS tables (aka. a "libref" in
- * SAS-lingo).
+ * SAS-lingo). Besides .sas7bdat files, gzipped files (.sas7bdat.gz) and the
+ * .sas7bdat entries of zip archives in the directory are also available as
+ * tables, which are decompressed on the fly when they are read.
  */
 public final class SasDataContext extends QueryPostprocessDataContext {
 
 	private static final Logger logger = LoggerFactory
 			.getLogger(SasDataContext.class);
 
+	/**
+	 * The origins of SAS dates and datetimes, and of the times that SAS times
+	 * are decoded into.
+	 */
+	private static final LocalDateTime SAS_EPOCH = LocalDateTime.of(1960, 1,
+			1, 0, 0);
+	private static final LocalDateTime TIME_EPOCH = LocalDateTime.of(1970, 1,
+			1, 0, 0);
+
 	private final File _directory;
+	private boolean _zoneMaps;
+	private boolean _stringDeduplication;
+	private boolean _dateTimeDecoding;
+	private int _schemaLoadingParallelism;
+	private volatile Map<String, Exception> _schemaLoadingFailures;
+	private final List<UnionTableDefinition> _unionTableDefinitions;
+
+	/**
+	 * The definition of a union table, see
+	 * {@link SasDataContext#addUnionTable(String, String, int, boolean)}.
+	 */
+	private static final class UnionTableDefinition {
+		final String tableName;
+		final Pattern filenamePattern;
+		final int parallelism;
+		final boolean preserveRowOrder;
+
+		UnionTableDefinition(String tableName, Pattern filenamePattern,
+				int parallelism, boolean preserveRowOrder) {
+			this.tableName = tableName;
+			this.filenamePattern = filenamePattern;
+			this.parallelism = parallelism;
+			this.preserveRowOrder = preserveRowOrder;
+		}
+	}
 
 	public SasDataContext(String directoryPath) {
 		this(new File(directoryPath));
@@ -69,28 +130,340 @@ public final class SasDataContext extends QueryPostprocessDataContext {
 					+ " is not a directory");
 		}
 		_directory = directory;
+		_zoneMaps = false;
+		_stringDeduplication = false;
+		_dateTimeDecoding = false;
+		_schemaLoadingParallelism = 0;
+		_schemaLoadingFailures = Collections.emptyMap();
+		_unionTableDefinitions = new ArrayList<UnionTableDefinition>();
+	}
+
+	/**
+	 * Adds a union table to the schema, which combines the rows of all the
+	 * SAS files whose name matches a pattern, eg. a dataset that is split
+	 * into monthly files. The files are read concurrently (by as many threads
+	 * as there are processors) and their rows are returned file by file. See
+	 * {@link #addUnionTable(String, String, int, boolean)}.
+	 * 
+	 * @param tableName
+	 *            the name of the union table
+	 * @param filenamePattern
+	 *            a regular expression that the names of the files must match
+	 */
+	public void addUnionTable(String tableName, String filenamePattern) {
+		addUnionTable(tableName, filenamePattern, Runtime.getRuntime()
+				.availableProcessors(), true);
+	}
+
+	/**
+	 * Adds a union table to the schema, which combines the rows of all the
+	 * SAS files whose name matches a pattern, eg. a dataset that is split
+	 * into monthly files. The columns of the union table are those of the
+	 * first matching file (in name order), and files with other columns are
+	 * left out of the union. The files also remain available as separate
+	 * tables. Union tables must be added before the schema is loaded (or be
+	 * followed by {@link #refreshSchemas()}).
+	 * 
+	 * @param tableName
+	 *            the name of the union table
+	 * @param filenamePattern
+	 *            a regular expression that the names of the files must match
+	 * @param parallelism
+	 *            the max. number of files to read concurrently
+	 * @param preserveRowOrder
+	 *            whether rows should be returned file by file, in the order
+	 *            of the files, or in the order they are read (which keeps
+	 *            all readers busy)
+	 */
+	public void addUnionTable(String tableName, String filenamePattern,
+			int parallelism, boolean preserveRowOrder) {
+		if (tableName == null) {
+			throw new IllegalArgumentException("Table name cannot be null");
+		}
+		if (parallelism < 1) {
+			throw new IllegalArgumentException(
+					"Parallelism must be positive: " + parallelism);
+		}
+		_unionTableDefinitions.add(new UnionTableDefinition(tableName,
+				Pattern.compile(filenamePattern), parallelism,
+				preserveRowOrder));
+	}
+
+	/**
+	 * Gets the number of threads used to load the schema eagerly, or 0 if
+	 * the columns of each table are loaded lazily.
+	 * 
+	 * @return
+	 */
+	public int getSchemaLoadingParallelism() {
+		return _schemaLoadingParallelism;
+	}
+
+	/**
+	 * Sets the number of threads used to load the schema eagerly. By default
+	 * (0) the metadata of each table is read lazily, when its columns are
+	 * first requested. With a parallelism of 1 or more, the metadata of all
+	 * tables is read when the schema is loaded, by a pool of that many
+	 * threads. Tables whose metadata cannot be read are then left out of the
+	 * schema, and the failures are available from
+	 * {@link #getSchemaLoadingFailures()}.
+	 * 
+	 * @param parallelism
+	 */
+	public void setSchemaLoadingParallelism(int parallelism) {
+		if (parallelism < 0) {
+			throw new IllegalArgumentException(
+					"Parallelism cannot be negative: " + parallelism);
+		}
+		_schemaLoadingParallelism = parallelism;
+	}
+
+	/**
+	 * Gets the tables that could not be loaded, when the schema was last
+	 * loaded eagerly, by table name along with the reason why. Table names
+	 * identify the files as well as the entries of zip archives, which share
+	 * the same archive file.
+	 * 
+	 * @return
+	 */
+	public Map<String, Exception> getSchemaLoadingFailures() {
+		return _schemaLoadingFailures;
+	}
+
+	/**
+	 * Determines if zone maps are used to skip pages of the SAS tables when
+	 * querying with filters.
+	 * 
+	 * @return
+	 */
+	public boolean isZoneMaps() {
+		return _zoneMaps;
+	}
+
+	/**
+	 * Sets whether zone maps should be used to skip pages of the SAS tables
+	 * when querying with filters on numeric columns. The zone map of a table
+	 * is built by the first query that reads all of its rows, and is
+	 * persisted in a sidecar file next to the table file.
+	 * 
+	 * @param zoneMaps
+	 * @see SasReader#setZoneMaps(boolean)
+	 */
+	public void setZoneMaps(boolean zoneMaps) {
+		_zoneMaps = zoneMaps;
+	}
+
+	/**
+	 * Determines if repeated values in character columns should share the
+	 * same {@link String} instance in query results.
+	 * 
+	 * @return
+	 */
+	public boolean isStringDeduplication() {
+		return _stringDeduplication;
+	}
+
+	/**
+	 * Sets whether repeated values in character columns should share the same
+	 * {@link String} instance in query results, which reduces the memory
+	 * footprint of materialized results (eg. for joins) with low-cardinality
+	 * columns.
+	 * 
+	 * @param stringDeduplication
+	 * @see SasReader#setStringDeduplication(boolean)
+	 */
+	public void setStringDeduplication(boolean stringDeduplication) {
+		_stringDeduplication = stringDeduplication;
+	}
+
+	/**
+	 * Determines if numeric columns with a date, datetime or time format are
+	 * exposed as date/time columns.
+	 * 
+	 * @return
+	 */
+	public boolean isDateTimeDecoding() {
+		return _dateTimeDecoding;
+	}
+
+	/**
+	 * Sets whether numeric columns with a date, datetime or time format
+	 * should be exposed as {@link ColumnType#DATE},
+	 * {@link ColumnType#TIMESTAMP} and {@link ColumnType#TIME} columns, with
+	 * java.sql.Date, Timestamp and Time values. When turned off, they are
+	 * {@link ColumnType#NUMERIC} columns with the raw SAS numbers. Default is
+	 * off. Must be set before the schema is loaded.
+	 * 
+	 * The values are converted in the default time zone of the JVM, so a
+	 * datetime that falls in a daylight saving time gap of that zone is
+	 * shifted forward by the length of the gap.
+	 * 
+	 * @param dateTimeDecoding
+	 * @see SasReader#setDateTimeDecoding(boolean)
+	 */
+	public void setDateTimeDecoding(boolean dateTimeDecoding) {
+		_dateTimeDecoding = dateTimeDecoding;
 	}
 
 	@Override
 	protected Schema getMainSchema() throws MetaModelException {
 		MutableSchema schema = new MutableSchema(getMainSchemaName());
 		File[] tableFiles = _directory.listFiles(new SasFilenameFilter());
+		Arrays.sort(tableFiles);
 
-		if (tableFiles.length == 0) {
+		final List<SasTable> tables = new ArrayList<SasTable>();
+		for (File file : tableFiles) {
+			tables.add(new SasTable(file, schema, _dateTimeDecoding));
+		}
+		addCompressedTables(schema, tables);
+
+		if (tables.isEmpty()) {
 			logger.warn("Directory did not contain any SAS tables: {}",
 					_directory);
 		}
 
-		Arrays.sort(tableFiles);
+		if (_schemaLoadingParallelism > 0) {
+			loadTables(schema, tables);
+		} else {
+			for (SasTable table : tables) {
+				schema.addTable(table);
+			}
+		}
 
-		for (File file : tableFiles) {
-			SasTable table = new SasTable(file, schema);
+		for (UnionTableDefinition definition : _unionTableDefinitions) {
+			final List<File> files = new ArrayList<File>();
+			for (File file : tableFiles) {
+				if (definition.filenamePattern.matcher(file.getName())
+						.matches()) {
+					files.add(file);
+				}
+			}
+			if (files.isEmpty()) {
+				logger.warn("No files match union table {}: {}",
+						definition.tableName, definition.filenamePattern);
+				continue;
+			}
+			SasUnionTable table = new SasUnionTable(definition.tableName,
+					schema, files, definition.parallelism,
+					definition.preserveRowOrder, _dateTimeDecoding);
+			if (_schemaLoadingParallelism > 0) {
+				table.loadColumns();
+			}
 			schema.addTable(table);
 		}
 
 		return schema;
 	}
 
+	/**
+	 * Adds tables for the gzipped files and the entries of the zip archives in
+	 * the directory, unless a table of the same name already exists.
+	 */
+	private void addCompressedTables(MutableSchema schema,
+			List<SasTable> tables) {
+		final Set<String> tableNames = new HashSet<String>();
+		for (SasTable table : tables) {
+			tableNames.add(table.getName());
+		}
+
+		File[] files = _directory.listFiles();
+		Arrays.sort(files);
+		for (File file : files) {
+			final String filename = file.getName();
+			final String lowerCaseFilename = filename.toLowerCase();
+			if (lowerCaseFilename.endsWith(".sas7bdat.gz")) {
+				final String name = SasTable.createName(filename.substring(0,
+						filename.length() - 3));
+				if (tableNames.add(name)) {
+					tables.add(new SasTable(name, file, new FileResource(file),
+							schema, _dateTimeDecoding));
+				} else {
+					logger.warn("Ignoring {}, table {} already exists", file,
+							name);
+				}
+			} else if (lowerCaseFilename.endsWith(".zip") && file.isFile()) {
+				try (ZipFile zipFile = new ZipFile(file)) {
+					final Enumeration<? extends ZipEntry> entries = zipFile
+							.entries();
+					while (entries.hasMoreElements()) {
+						final ZipEntry entry = entries.nextElement();
+						if (entry.isDirectory()
+								|| !entry.getName().toLowerCase()
+										.endsWith(".sas7bdat")) {
+							continue;
+						}
+						final ZipEntryResource resource = new ZipEntryResource(
+								file, entry);
+						final String name = SasTable.createName(resource
+								.getName());
+						if (tableNames.add(name)) {
+							tables.add(new SasTable(name, file, resource,
+									schema, _dateTimeDecoding));
+						} else {
+							logger.warn(
+									"Ignoring {}, table {} already exists",
+									resource.getQualifiedPath(), name);
+						}
+					}
+				} catch (IOException e) {
+					logger.warn("Could not read zip archive {}: {}", file,
+							e.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Loads the tables of the schema eagerly, by reading the metadata of the
+	 * table files concurrently.
+	 */
+	private void loadTables(MutableSchema schema, List<SasTable> tables) {
+		final ExecutorService executor = Executors.newFixedThreadPool(
+				Math.min(_schemaLoadingParallelism,
+						Math.max(tables.size(), 1)), new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "SasDataContext-"
+								+ _directory.getName());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		try {
+			final List<Future<?>> futures = new ArrayList<Future<?>>();
+			for (final SasTable table : tables) {
+				futures.add(executor.submit(new Runnable() {
+					@Override
+					public void run() {
+						table.loadColumns();
+					}
+				}));
+			}
+
+			final Map<String, Exception> failures = new LinkedHashMap<String, Exception>();
+			for (int i = 0; i < tables.size(); i++) {
+				final SasTable table = tables.get(i);
+				try {
+					futures.get(i).get();
+					schema.addTable(table);
+				} catch (ExecutionException e) {
+					final Throwable cause = e.getCause();
+					logger.warn("Could not load SAS table {}: {}",
+							table.getName(), cause.getMessage());
+					failures.put(table.getName(),
+							cause instanceof Exception ? (Exception) cause : e);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new MetaModelException(
+							"Interrupted while loading SAS tables", e);
+				}
+			}
+			_schemaLoadingFailures = Collections.unmodifiableMap(failures);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
 	@Override
 	protected String getMainSchemaName() throws MetaModelException {
 		return _directory.getName();
@@ -98,30 +471,336 @@ public final class SasDataContext extends QueryPostprocessDataContext {
 	
 	@Override
 	protected Number executeCountQuery(Table table, List<FilterItem> whereItems, boolean functionApproximationAllowed) {
+	    if (whereItems.isEmpty() && table instanceof SasUnionTable) {
+	        // combine the row counts of the files
+	        final SasUnionTable unionTable = (SasUnionTable) table;
+	        long count = 0;
+	        for (File file : unionTable.getFiles()) {
+	            count += unionTable.createReader(file).getRowCount();
+	        }
+	        return count;
+	    }
 	    if (whereItems.isEmpty()) {
 	        SasTable sasTable = (SasTable) table;
-	        File file = sasTable.getFile();
 	        
-	        SasReader sasReader = new SasReader(file);
-	        CountReaderCallback callback = new CountReaderCallback();
-            sasReader.read(callback);
-            int count = callback.getCount();
-            return count;
+	        // the row count is recorded in the metadata, no need to read the rows
+	        SasReader sasReader = sasTable.createReader();
+	        return sasReader.getRowCount();
 	    }
 	    return super.executeCountQuery(table, whereItems, functionApproximationAllowed);
 	}
 
+	@Override
+	protected DataSet materializeMainSchemaTable(Table table,
+			List<SelectItem> selectItems, List<FilterItem> whereItems,
+			int firstRow, int maxRows) {
+		final List<SasPredicate> predicates = new ArrayList<SasPredicate>();
+		final List<FilterItem> remainingWhereItems = new ArrayList<FilterItem>();
+		for (FilterItem whereItem : whereItems) {
+			SasPredicate predicate = createPredicate(table, whereItem);
+			if (predicate == null) {
+				// comparisons of date/time columns are evaluated on the
+				// decoded values, but may still narrow down the rows read
+				predicates.addAll(createDateTimePredicates(table, whereItem));
+				remainingWhereItems.add(whereItem);
+			} else {
+				predicates.add(predicate);
+			}
+		}
+
+		if (predicates.isEmpty()) {
+			return super.materializeMainSchemaTable(table, selectItems,
+					whereItems, firstRow, maxRows);
+		}
+
+		// read the selected columns and the columns of any where items that
+		// could not be pushed down to the reader
+		final List<Column> columns = new ArrayList<Column>();
+		for (SelectItem selectItem : selectItems) {
+			if (!isColumnSelect(table, selectItem)) {
+				return super.materializeMainSchemaTable(table, selectItems,
+						whereItems, firstRow, maxRows);
+			}
+			if (!columns.contains(selectItem.getColumn())) {
+				columns.add(selectItem.getColumn());
+			}
+		}
+		for (FilterItem whereItem : remainingWhereItems) {
+			for (Column column : getColumns(whereItem)) {
+				if (!columns.contains(column)) {
+					columns.add(column);
+				}
+			}
+		}
+
+		DataSet dataSet;
+		if (remainingWhereItems.isEmpty()) {
+			// the reader can skip to the first row itself
+			dataSet = readTable(table, columns, predicates, firstRow, maxRows);
+		} else {
+			dataSet = readTable(table, columns, predicates, 1, -1);
+			dataSet = MetaModelHelper.getFiltered(dataSet, remainingWhereItems);
+			if (firstRow > 1 || maxRows >= 0) {
+				dataSet = MetaModelHelper.getPaged(dataSet, firstRow, maxRows);
+			}
+		}
+		return MetaModelHelper.getSelection(selectItems, dataSet);
+	}
+
 	@Override
 	protected DataSet materializeMainSchemaTable(Table table, List<Column> columns,
 			int maxRows) {
-		SasTable sasTable = (SasTable) table;
-		File file = sasTable.getFile();
+		return readTable(table, columns,
+				Collections.<SasPredicate> emptyList(), 1, maxRows);
+	}
+
+	@Override
+	protected DataSet materializeMainSchemaTable(Table table,
+			List<Column> columns, int firstRow, int maxRows) {
+		return readTable(table, columns,
+				Collections.<SasPredicate> emptyList(), firstRow, maxRows);
+	}
 
+	/**
+	 * Reads a range of rows of the projected columns of a table, applying
+	 * predicates in the reader.
+	 */
+	private DataSet readTable(Table table, List<Column> columns,
+			List<SasPredicate> predicates, int firstRow, int maxRows) {
 		List<SelectItem> selectItems = columns.stream().map(c -> new SelectItem(c)).collect(Collectors.toList());
 
-		SasReader sasReader = new SasReader(file);
-		return new RowPublisherDataSet(
-				selectItems.toArray(new SelectItem[selectItems.size()]),
-				maxRows, new SasRowPublisherAction(sasReader, columns, maxRows));
+		if (table instanceof SasUnionTable) {
+			final SasUnionTable unionTable = (SasUnionTable) table;
+			final List<SasReader> sasReaders = new ArrayList<SasReader>();
+			for (File file : unionTable.getFiles()) {
+				sasReaders.add(configureReader(unionTable.createReader(file),
+						columns, predicates));
+			}
+			final int readMaxRows = (maxRows < 0 ? -1 : firstRow - 1
+					+ maxRows);
+			DataSet dataSet = new SasUnionDataSet(selectItems, sasReaders,
+					unionTable.getParallelism(),
+					unionTable.isPreserveRowOrder(), readMaxRows);
+			if (firstRow > 1) {
+				dataSet = MetaModelHelper.getPaged(dataSet, firstRow, maxRows);
+			}
+			return dataSet;
+		}
+
+		SasTable sasTable = (SasTable) table;
+		SasReader sasReader = configureReader(sasTable.createReader(),
+				columns, predicates);
+		return new SasDataSet(selectItems, sasReader.openCursor(firstRow),
+				maxRows);
+	}
+
+	private SasReader configureReader(SasReader sasReader,
+			List<Column> columns, List<SasPredicate> predicates) {
+		int[] projection = new int[columns.size()];
+		for (int i = 0; i < projection.length; i++) {
+			projection[i] = columns.get(i).getColumnNumber();
+		}
+		sasReader.setProjection(projection);
+		sasReader.setZoneMaps(_zoneMaps);
+		sasReader.setStringDeduplication(_stringDeduplication);
+		if (!predicates.isEmpty()) {
+			sasReader.setPredicates(predicates
+					.toArray(new SasPredicate[predicates.size()]));
+		}
+		return sasReader;
+	}
+
+	/**
+	 * Creates a {@link SasPredicate} for a where item, if it is a simple
+	 * comparison (=, &lt;, &lt;=, &gt;, &gt;=, IN or IS NULL) of a single
+	 * column with operand(s) of a type matching the column.
+	 * 
+	 * @return the predicate, or null if the where item cannot be pushed down
+	 *         to the reader
+	 */
+	private SasPredicate createPredicate(Table table, FilterItem whereItem) {
+		if (whereItem.isCompoundFilter() || whereItem.getExpression() != null) {
+			return null;
+		}
+		final SelectItem selectItem = whereItem.getSelectItem();
+		if (!isColumnSelect(table, selectItem)) {
+			return null;
+		}
+		final Column column = selectItem.getColumn();
+		final int columnIndex = column.getColumnNumber();
+		final OperatorType operator = whereItem.getOperator();
+		final Object operand = whereItem.getOperand();
+
+		if (operand == null) {
+			// missing date/time values are decoded into nulls from NaN
+			// numerics, which the predicate does not consider null
+			if (operator == OperatorType.EQUALS_TO
+					&& (column.getType() == ColumnType.NUMERIC || column
+							.getType() == ColumnType.VARCHAR)) {
+				return SasPredicate.isNull(columnIndex);
+			}
+			return null;
+		}
+
+		final List<Object> operands = getOperands(operator, operand);
+		if (operands == null) {
+			return null;
+		}
+		for (Object o : operands) {
+			final boolean applicable;
+			if (column.getType() == ColumnType.NUMERIC) {
+				applicable = o instanceof Number;
+			} else if (column.getType() == ColumnType.VARCHAR) {
+				applicable = o instanceof String;
+			} else {
+				// date/time columns are filtered on their decoded values
+				applicable = false;
+			}
+			if (!applicable) {
+				return null;
+			}
+		}
+
+		if (operator == OperatorType.EQUALS_TO) {
+			return SasPredicate.equalTo(columnIndex, operand);
+		} else if (operator == OperatorType.LESS_THAN) {
+			return SasPredicate.lessThan(columnIndex, operand);
+		} else if (operator == OperatorType.LESS_THAN_OR_EQUAL) {
+			return SasPredicate.lessThanOrEqual(columnIndex, operand);
+		} else if (operator == OperatorType.GREATER_THAN) {
+			return SasPredicate.greaterThan(columnIndex, operand);
+		} else if (operator == OperatorType.GREATER_THAN_OR_EQUAL) {
+			return SasPredicate.greaterThanOrEqual(columnIndex, operand);
+		} else if (operator == OperatorType.IN && !operands.isEmpty()) {
+			return SasPredicate.in(columnIndex, operands);
+		}
+		return null;
+	}
+
+	/**
+	 * Creates {@link SasPredicate}s for a comparison (=, &lt;, &lt;=, &gt;,
+	 * &gt;= or IN) of a date, time or timestamp column with Date operand(s),
+	 * which limit the raw SAS numbers of the column (days since 1960-01-01
+	 * for dates, seconds since 1960-01-01 for datetimes and seconds since
+	 * midnight for times) to a range that holds all matching values.
+	 * 
+	 * The decoded values are floored to days or rounded to milliseconds, and
+	 * converted to instants in the default time zone, so the range is
+	 * widened by up to a day and the where item must still be evaluated on
+	 * the decoded values.
+	 * 
+	 * @return the predicates, or an empty list if the where item cannot be
+	 *         narrowed down to a range
+	 */
+	private List<SasPredicate> createDateTimePredicates(Table table,
+			FilterItem whereItem) {
+		if (whereItem.isCompoundFilter() || whereItem.getExpression() != null) {
+			return Collections.emptyList();
+		}
+		final SelectItem selectItem = whereItem.getSelectItem();
+		if (!isColumnSelect(table, selectItem)) {
+			return Collections.emptyList();
+		}
+		final Column column = selectItem.getColumn();
+		final ColumnType columnType = column.getType();
+		final OperatorType operator = whereItem.getOperator();
+		final List<Object> operands = getOperands(operator,
+				whereItem.getOperand());
+		if (operands == null || operands.isEmpty()
+				|| (columnType != ColumnType.DATE
+						&& columnType != ColumnType.TIMESTAMP
+						&& columnType != ColumnType.TIME)) {
+			return Collections.emptyList();
+		}
+
+		double lower = Double.POSITIVE_INFINITY;
+		double upper = Double.NEGATIVE_INFINITY;
+		for (Object o : operands) {
+			if (!(o instanceof Date)) {
+				return Collections.emptyList();
+			}
+			// java.sql.Date does not support toInstant()
+			final LocalDateTime dateTime = LocalDateTime.ofInstant(
+					Instant.ofEpochMilli(((Date) o).getTime()),
+					ZoneId.systemDefault());
+			if (columnType == ColumnType.DATE) {
+				final double days = ChronoUnit.DAYS.between(
+						SAS_EPOCH.toLocalDate(), dateTime.toLocalDate());
+				lower = Math.min(lower, days);
+				upper = Math.max(upper, days + 1);
+			} else {
+				// a day of slack for daylight saving time transitions
+				final double seconds = ChronoUnit.MILLIS.between(
+						columnType == ColumnType.TIME ? TIME_EPOCH
+								: SAS_EPOCH, dateTime) / 1000.0;
+				lower = Math.min(lower, seconds - 86400);
+				upper = Math.max(upper, seconds + 86400);
+			}
+		}
+
+		final int columnIndex = column.getColumnNumber();
+		final List<SasPredicate> predicates = new ArrayList<SasPredicate>();
+		if (operator == OperatorType.EQUALS_TO
+				|| operator == OperatorType.IN
+				|| operator == OperatorType.GREATER_THAN
+				|| operator == OperatorType.GREATER_THAN_OR_EQUAL) {
+			predicates.add(SasPredicate.greaterThanOrEqual(columnIndex, lower));
+		}
+		if (operator == OperatorType.EQUALS_TO
+				|| operator == OperatorType.IN
+				|| operator == OperatorType.LESS_THAN
+				|| operator == OperatorType.LESS_THAN_OR_EQUAL) {
+			predicates.add(SasPredicate.lessThan(columnIndex, upper));
+		}
+		return predicates;
+	}
+
+	/**
+	 * Gets the operands of a where item.
+	 * 
+	 * @return the operands, or null if the operand of an IN where item is not
+	 *         a collection or an array
+	 */
+	private static List<Object> getOperands(OperatorType operator,
+			Object operand) {
+		if (operator == OperatorType.IN) {
+			if (operand instanceof Collection) {
+				return new ArrayList<Object>((Collection<?>) operand);
+			} else if (operand instanceof Object[]) {
+				return Arrays.asList((Object[]) operand);
+			}
+			return null;
+		}
+		return Collections.singletonList(operand);
+	}
+
+	private static boolean isColumnSelect(Table table, SelectItem selectItem) {
+		return selectItem != null && selectItem.getColumn() != null
+				&& table.equals(selectItem.getColumn().getTable())
+				&& selectItem.getScalarFunction() == null
+				&& selectItem.getAggregateFunction() == null
+				&& selectItem.getSubQuerySelectItem() == null;
+	}
+
+	private static List<Column> getColumns(FilterItem whereItem) {
+		final List<Column> columns = new ArrayList<Column>();
+		if (whereItem.isCompoundFilter()) {
+			for (FilterItem childItem : whereItem.getChildItems()) {
+				columns.addAll(getColumns(childItem));
+			}
+		} else {
+			final SelectItem selectItem = whereItem.getSelectItem();
+			if (selectItem != null && selectItem.getColumn() != null) {
+				columns.add(selectItem.getColumn());
+			}
+			if (whereItem.getOperand() instanceof SelectItem) {
+				final Column operandColumn = ((SelectItem) whereItem
+						.getOperand()).getColumn();
+				if (operandColumn != null) {
+					columns.add(operandColumn);
+				}
+			}
+		}
+		return columns;
 	}
 }
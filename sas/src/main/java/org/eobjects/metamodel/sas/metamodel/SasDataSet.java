@@ -0,0 +1,137 @@
+/**
+ * eobjects.org SassyReader
+ * Copyright (C) 2011 eobjects.org
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.eobjects.metamodel.sas.metamodel;
+
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+
+import org.apache.metamodel.data.AbstractDataSet;
+import org.apache.metamodel.data.DefaultRow;
+import org.apache.metamodel.data.Row;
+import org.apache.metamodel.query.SelectItem;
+import org.apache.metamodel.schema.Column;
+import org.eobjects.metamodel.sas.SasRowCursor;
+
+/**
+ * {@link org.apache.metamodel.data.DataSet} that pulls rows from a
+ * {@link SasRowCursor}. Rows are read and decoded on the thread that iterates
+ * the data set.
+ */
+final class SasDataSet extends AbstractDataSet {
+
+	private static final LocalDate TIME_EPOCH = LocalDate.of(1970, 1, 1);
+
+	private final SasRowCursor _cursor;
+	private final int _maxRows;
+	private final boolean _dateTimeColumns;
+	private int _rowCount;
+	private Row _row;
+
+	public SasDataSet(List<SelectItem> selectItems, SasRowCursor cursor,
+			int maxRows) {
+		super(selectItems);
+		_cursor = cursor;
+		_maxRows = maxRows;
+		_dateTimeColumns = hasDateTimeColumns(selectItems);
+	}
+
+	static boolean hasDateTimeColumns(List<SelectItem> selectItems) {
+		for (SelectItem selectItem : selectItems) {
+			final Column column = selectItem.getColumn();
+			if (column != null && column.getType() != null
+					&& column.getType().isTimeBased()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Converts the java.time values that the reader decodes date/time cells
+	 * into, to the java.sql types that MetaModel compares and converts.
+	 * 
+	 * SAS dates and times have no time zone, while the java.sql types are
+	 * instants. Like {@link Timestamp#valueOf(LocalDateTime)}, values are
+	 * converted in the default time zone of the JVM, so that they print as
+	 * (and compare like) the local date/time that SAS recorded. The
+	 * exception is a datetime that does not exist in that zone, ie. falls in
+	 * a daylight saving time gap, which is shifted forward by the length of
+	 * the gap. Fractions of seconds are kept, also for times.
+	 * 
+	 * @param values
+	 */
+	static void convertDateTimeValues(Object[] values) {
+		for (int i = 0; i < values.length; i++) {
+			final Object value = values[i];
+			if (value instanceof LocalDate) {
+				values[i] = java.sql.Date.valueOf((LocalDate) value);
+			} else if (value instanceof LocalDateTime) {
+				values[i] = Timestamp.valueOf((LocalDateTime) value);
+			} else if (value instanceof LocalTime) {
+				values[i] = toTime((LocalTime) value);
+			}
+		}
+	}
+
+	/**
+	 * Converts a time to a {@link Time} on 1970-01-01, keeping the fraction of
+	 * a second that {@link Time#valueOf(LocalTime)} drops.
+	 */
+	private static Time toTime(LocalTime value) {
+		return new Time(Timestamp.valueOf(TIME_EPOCH.atTime(value)).getTime());
+	}
+
+	@Override
+	public boolean next() {
+		if (_maxRows > 0 && _rowCount >= _maxRows) {
+			_row = null;
+			close();
+			return false;
+		}
+
+		// the cursor has already projected the row onto the columns
+		final Object[] values = _cursor.nextRow();
+		if (values == null) {
+			_row = null;
+			return false;
+		}
+		_rowCount++;
+		if (_dateTimeColumns) {
+			convertDateTimeValues(values);
+		}
+		_row = new DefaultRow(getHeader(), values);
+		return true;
+	}
+
+	@Override
+	public Row getRow() {
+		return _row;
+	}
+
+	@Override
+	public void close() {
+		super.close();
+		_cursor.close();
+	}
+}
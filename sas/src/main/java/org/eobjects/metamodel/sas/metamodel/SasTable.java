@@ -29,7 +29,9 @@ import org.apache.metamodel.schema.MutableTable;
 import org.apache.metamodel.schema.Schema;
 import org.apache.metamodel.schema.Table;
 import org.apache.metamodel.schema.TableType;
+import org.apache.metamodel.util.Resource;
 import org.eobjects.metamodel.sas.SasReader;
+import org.eobjects.metamodel.sas.SasReaderException;
 
 /**
  * {@link Table} implementation for SAS data.
@@ -41,35 +43,99 @@ final class SasTable extends MutableTable implements Serializable {
 	private static final long serialVersionUID = 1L;
 
 	private final File _file;
+	private final Resource _resource;
+	private final boolean _dateTimeDecoding;
 	private final List<Column> _columns;
 	private boolean _columnsLoaded;
 
-	public SasTable(File file, Schema schema) {
-		super(createName(file), TableType.TABLE, schema);
+	/**
+	 * Creates a table for a sas7bdat file.
+	 * 
+	 * @param file
+	 * @param schema
+	 * @param dateTimeDecoding
+	 *            whether columns with a date/time format should be date/time
+	 *            columns, see {@link SasReader#setDateTimeDecoding(boolean)}
+	 */
+	public SasTable(File file, Schema schema, boolean dateTimeDecoding) {
+		this(createName(file.getName()), file, null, schema, dateTimeDecoding);
+	}
+
+	/**
+	 * Creates a table for a sas7bdat file that is read from a resource, eg.
+	 * a compressed file or an entry of an archive.
+	 * 
+	 * @param name
+	 * @param file
+	 *            the file on disk that holds the table
+	 * @param resource
+	 *            the resource to read the table from
+	 * @param schema
+	 * @param dateTimeDecoding
+	 */
+	public SasTable(String name, File file, Resource resource, Schema schema,
+			boolean dateTimeDecoding) {
+		super(name, TableType.TABLE, schema);
 		_file = file;
+		_resource = resource;
+		_dateTimeDecoding = dateTimeDecoding;
 		_columns = new ArrayList<Column>();
 		_columnsLoaded = false;
 	}
 
-	private static String createName(File file) {
-		String name = file.getName();
-		if (name.endsWith(".sas7bdat")) {
+	static String createName(String name) {
+		if (name.toLowerCase().endsWith(".sas7bdat")) {
 			name = name.substring(0, name.length() - 9);
 		}
 		return name;
 	}
 
+	/**
+	 * Gets the file that holds the table. For tables that are read from a
+	 * resource, this is the compressed file or the archive.
+	 * 
+	 * @return
+	 */
 	public File getFile() {
 		return _file;
 	}
 
+	/**
+	 * Creates a reader for the table.
+	 * 
+	 * @return
+	 */
+	public SasReader createReader() {
+		final SasReader sasReader;
+		if (_resource == null) {
+			sasReader = new SasReader(_file);
+		} else {
+			sasReader = new SasReader(_resource);
+		}
+		sasReader.setDateTimeDecoding(_dateTimeDecoding);
+		return sasReader;
+	}
+
 	@Override
-	protected List<Column> getColumnsInternal() {
+	protected synchronized List<Column> getColumnsInternal() {
+		loadColumns();
+		return _columns;
+	}
+
+	/**
+	 * Loads the columns of the table from the metadata of its file, unless
+	 * they have already been loaded.
+	 * 
+	 * @throws SasReaderException
+	 *             if the metadata could not be read
+	 */
+	synchronized void loadColumns() throws SasReaderException {
 		if (!_columnsLoaded) {
+			final List<Column> columns = new ArrayList<Column>();
+			SasReader sasReader = createReader();
+			sasReader.read(new ColumnBuildingSasCallback(this, columns));
+			_columns.addAll(columns);
 			_columnsLoaded = true;
-			SasReader sasReader = new SasReader(_file);
-			sasReader.read(new ColumnBuildingSasCallback(this, _columns));
 		}
-		return _columns;
 	}
 }
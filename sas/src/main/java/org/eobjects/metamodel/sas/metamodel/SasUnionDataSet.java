@@ -0,0 +1,268 @@
+/**
+ * eobjects.org SassyReader
+ * Copyright (C) 2011 eobjects.org
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.eobjects.metamodel.sas.metamodel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.metamodel.MetaModelException;
+import org.apache.metamodel.data.AbstractDataSet;
+import org.apache.metamodel.data.DefaultRow;
+import org.apache.metamodel.data.Row;
+import org.apache.metamodel.query.SelectItem;
+import org.eobjects.metamodel.sas.SasColumnType;
+import org.eobjects.metamodel.sas.SasReader;
+import org.eobjects.metamodel.sas.SasReaderCallback;
+
+/**
+ * {@link org.apache.metamodel.data.DataSet} that reads a number of SAS files
+ * concurrently, and returns their rows combined. Each file is read by a
+ * worker of a bounded pool, which hands over rows in chunks through a bounded
+ * queue. If row order is preserved, each file has its own queue, and the
+ * queues are drained in file order, otherwise all files share a queue.
+ */
+final class SasUnionDataSet extends AbstractDataSet {
+
+	/**
+	 * The max. number of rows per chunk handed over by a worker.
+	 */
+	private static final int CHUNK_SIZE = 256;
+
+	/**
+	 * The max. number of chunks in a queue.
+	 */
+	private static final int QUEUE_CAPACITY = 16;
+
+	/**
+	 * A chunk of rows, or the end of a file.
+	 */
+	private static final class Chunk {
+		final List<Object[]> rows;
+		final RuntimeException error;
+
+		Chunk(List<Object[]> rows, RuntimeException error) {
+			this.rows = rows;
+			this.error = error;
+		}
+
+		boolean isEndOfFile() {
+			return rows == null;
+		}
+	}
+
+	private final List<SasReader> _readers;
+	private final int _maxRows;
+	private final boolean _dateTimeColumns;
+	private final ExecutorService _executor;
+	private final List<BlockingQueue<Chunk>> _queues;
+	private volatile boolean _closed;
+
+	private int _queueIndex;
+	private int _remainingFiles;
+	private List<Object[]> _chunk;
+	private int _chunkIndex;
+	private int _rowCount;
+	private Row _row;
+
+	public SasUnionDataSet(List<SelectItem> selectItems,
+			List<SasReader> readers, int parallelism,
+			boolean preserveRowOrder, int maxRows) {
+		super(selectItems);
+		_readers = readers;
+		_maxRows = maxRows;
+		_dateTimeColumns = SasDataSet.hasDateTimeColumns(selectItems);
+		_queues = new ArrayList<BlockingQueue<Chunk>>();
+		_remainingFiles = readers.size();
+
+		final BlockingQueue<Chunk> sharedQueue = (preserveRowOrder ? null
+				: new ArrayBlockingQueue<Chunk>(QUEUE_CAPACITY));
+		if (sharedQueue != null) {
+			_queues.add(sharedQueue);
+		}
+
+		_executor = Executors.newFixedThreadPool(
+				Math.max(1, Math.min(parallelism, readers.size())),
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "SasUnionDataSet");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+
+		// tasks are started in file order, so the file being drained in
+		// ordered mode is always being read
+		for (final SasReader reader : readers) {
+			final BlockingQueue<Chunk> queue;
+			if (sharedQueue == null) {
+				queue = new ArrayBlockingQueue<Chunk>(QUEUE_CAPACITY);
+				_queues.add(queue);
+			} else {
+				queue = sharedQueue;
+			}
+			_executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					readFile(reader, queue);
+				}
+			});
+		}
+		_executor.shutdown();
+	}
+
+	/**
+	 * Reads a file and hands over its rows in chunks. Runs on a worker.
+	 */
+	private void readFile(SasReader reader, BlockingQueue<Chunk> queue) {
+		RuntimeException error = null;
+		try {
+			final ChunkingCallback callback = new ChunkingCallback(queue);
+			reader.read(callback);
+			callback.flush();
+		} catch (RuntimeException e) {
+			error = e;
+		}
+		if (!_closed) {
+			put(queue, new Chunk(null, error));
+		}
+	}
+
+	/**
+	 * Callback that collects the rows of a file into chunks.
+	 */
+	private final class ChunkingCallback implements SasReaderCallback {
+
+		private final BlockingQueue<Chunk> _queue;
+		private List<Object[]> _rows;
+
+		public ChunkingCallback(BlockingQueue<Chunk> queue) {
+			_queue = queue;
+			_rows = new ArrayList<Object[]>(CHUNK_SIZE);
+		}
+
+		@Override
+		public boolean readData() {
+			return !_closed;
+		}
+
+		@Override
+		public void column(int columnIndex, String columnName,
+				String columnLabel, SasColumnType columnType, int columnLength) {
+			// do nothing
+		}
+
+		@Override
+		public boolean row(int row, Object[] rowData) {
+			_rows.add(rowData);
+			if (_rows.size() == CHUNK_SIZE) {
+				flush();
+			}
+			if (_maxRows > 0 && row >= _maxRows) {
+				// no file needs to contribute more rows than that
+				return false;
+			}
+			return !_closed;
+		}
+
+		public void flush() {
+			if (!_rows.isEmpty() && !_closed) {
+				put(_queue, new Chunk(_rows, null));
+				_rows = new ArrayList<Object[]>(CHUNK_SIZE);
+			}
+		}
+	}
+
+	private void put(BlockingQueue<Chunk> queue, Chunk chunk) {
+		try {
+			queue.put(chunk);
+		} catch (InterruptedException e) {
+			// the data set has been closed
+			Thread.currentThread().interrupt();
+			throw new MetaModelException("Interrupted while reading SAS file",
+					e);
+		}
+	}
+
+	@Override
+	public boolean next() {
+		if (_maxRows > 0 && _rowCount >= _maxRows) {
+			_row = null;
+			close();
+			return false;
+		}
+
+		while (_chunk == null || _chunkIndex >= _chunk.size()) {
+			if (_remainingFiles == 0) {
+				_row = null;
+				return false;
+			}
+			final Chunk chunk;
+			try {
+				chunk = _queues.get(_queueIndex).take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new MetaModelException(
+						"Interrupted while reading SAS files", e);
+			}
+			if (chunk.isEndOfFile()) {
+				_remainingFiles--;
+				if (_queues.size() > 1) {
+					_queueIndex++;
+				}
+				if (chunk.error != null) {
+					close();
+					throw chunk.error;
+				}
+				_chunk = null;
+			} else {
+				_chunk = chunk.rows;
+				_chunkIndex = 0;
+			}
+		}
+
+		_rowCount++;
+		final Object[] values = _chunk.get(_chunkIndex++);
+		if (_dateTimeColumns) {
+			SasDataSet.convertDateTimeValues(values);
+		}
+		_row = new DefaultRow(getHeader(), values);
+		return true;
+	}
+
+	@Override
+	public Row getRow() {
+		return _row;
+	}
+
+	@Override
+	public void close() {
+		super.close();
+		if (!_closed) {
+			_closed = true;
+			_executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,172 @@
+/**
+ * eobjects.org SassyReader
+ * Copyright (C) 2011 eobjects.org
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.eobjects.metamodel.sas.metamodel;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.metamodel.schema.Column;
+import org.apache.metamodel.schema.MutableTable;
+import org.apache.metamodel.schema.Schema;
+import org.apache.metamodel.schema.Table;
+import org.apache.metamodel.schema.TableType;
+import org.eobjects.metamodel.sas.SasReader;
+import org.eobjects.metamodel.sas.SasReaderException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Virtual {@link Table} that represents the union of the rows of a number of
+ * SAS files with the same layout, eg. a dataset that is partitioned into
+ * monthly files. The columns of the table are those of the first file, and
+ * files whose columns do not match (by name and type) are left out of the
+ * union.
+ */
+final class SasUnionTable extends MutableTable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(SasUnionTable.class);
+
+	private final List<File> _files;
+	private final int _parallelism;
+	private final boolean _preserveRowOrder;
+	private final boolean _dateTimeDecoding;
+	private final List<Column> _columns;
+	private boolean _columnsLoaded;
+
+	public SasUnionTable(String name, Schema schema, List<File> files,
+			int parallelism, boolean preserveRowOrder,
+			boolean dateTimeDecoding) {
+		super(name, TableType.TABLE, schema);
+		_files = new ArrayList<File>(files);
+		_parallelism = parallelism;
+		_preserveRowOrder = preserveRowOrder;
+		_dateTimeDecoding = dateTimeDecoding;
+		_columns = new ArrayList<Column>();
+		_columnsLoaded = false;
+	}
+
+	/**
+	 * Gets the files of the union, that match the layout of the first file.
+	 * 
+	 * @return
+	 */
+	public synchronized List<File> getFiles() {
+		loadColumns();
+		return Collections.unmodifiableList(_files);
+	}
+
+	/**
+	 * Gets the number of files read concurrently when scanning the table.
+	 * 
+	 * @return
+	 */
+	public int getParallelism() {
+		return _parallelism;
+	}
+
+	/**
+	 * Determines if rows are returned file by file, in the order of the
+	 * files, or in the order they are read.
+	 * 
+	 * @return
+	 */
+	public boolean isPreserveRowOrder() {
+		return _preserveRowOrder;
+	}
+
+	/**
+	 * Creates a reader for a file of the union.
+	 * 
+	 * @param file
+	 * @return
+	 */
+	public SasReader createReader(File file) {
+		final SasReader sasReader = new SasReader(file);
+		sasReader.setDateTimeDecoding(_dateTimeDecoding);
+		return sasReader;
+	}
+
+	@Override
+	protected synchronized List<Column> getColumnsInternal() {
+		loadColumns();
+		return _columns;
+	}
+
+	/**
+	 * Loads the columns of the table from the metadata of the first file,
+	 * and leaves out the files that do not match them.
+	 * 
+	 * @throws SasReaderException
+	 *             if the metadata of the first file could not be read
+	 */
+	synchronized void loadColumns() throws SasReaderException {
+		if (_columnsLoaded || _files.isEmpty()) {
+			return;
+		}
+
+		final List<Column> columns = new ArrayList<Column>();
+		createReader(_files.get(0)).read(new ColumnBuildingSasCallback(this,
+				columns));
+
+		for (int i = _files.size() - 1; i > 0; i--) {
+			final File file = _files.get(i);
+			final List<Column> fileColumns = new ArrayList<Column>();
+			try {
+				createReader(file).read(new ColumnBuildingSasCallback(this,
+						fileColumns));
+			} catch (SasReaderException e) {
+				logger.warn("Leaving {} out of union table {}: {}",
+						new Object[] { file, getName(), e.getMessage() });
+				_files.remove(i);
+				continue;
+			}
+			if (!isSameLayout(columns, fileColumns)) {
+				logger.warn(
+						"Leaving {} out of union table {}: columns do not match {}",
+						new Object[] { file, getName(), _files.get(0) });
+				_files.remove(i);
+			}
+		}
+
+		_columns.addAll(columns);
+		_columnsLoaded = true;
+	}
+
+	private static boolean isSameLayout(List<Column> columns1,
+			List<Column> columns2) {
+		if (columns1.size() != columns2.size()) {
+			return false;
+		}
+		for (int i = 0; i < columns1.size(); i++) {
+			final Column column1 = columns1.get(i);
+			final Column column2 = columns2.get(i);
+			if (!column1.getName().equals(column2.getName())
+					|| column1.getType() != column2.getType()) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
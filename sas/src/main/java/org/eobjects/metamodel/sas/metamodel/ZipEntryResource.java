@@ -0,0 +1,137 @@
+/**
+ * eobjects.org SassyReader
+ * Copyright (C) 2011 eobjects.org
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.eobjects.metamodel.sas.metamodel;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.metamodel.util.AbstractResource;
+import org.apache.metamodel.util.Resource;
+import org.apache.metamodel.util.ResourceException;
+
+/**
+ * A read-only {@link Resource} for an entry of a zip archive. The entry is
+ * decompressed on the fly when it is read.
+ */
+final class ZipEntryResource extends AbstractResource implements
+		Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final File _zipFile;
+	private final String _entryName;
+	private final long _size;
+	private final long _lastModified;
+
+	public ZipEntryResource(File zipFile, ZipEntry entry) {
+		_zipFile = zipFile;
+		_entryName = entry.getName();
+		_size = entry.getSize();
+		_lastModified = entry.getTime();
+	}
+
+	public File getZipFile() {
+		return _zipFile;
+	}
+
+	@Override
+	public String getName() {
+		final int index = _entryName.lastIndexOf('/');
+		return _entryName.substring(index + 1);
+	}
+
+	@Override
+	public String getQualifiedPath() {
+		return _zipFile.getPath() + "!/" + _entryName;
+	}
+
+	@Override
+	public boolean isReadOnly() {
+		return true;
+	}
+
+	@Override
+	public boolean isExists() {
+		return _zipFile.exists();
+	}
+
+	@Override
+	public long getSize() {
+		return _size;
+	}
+
+	@Override
+	public long getLastModified() {
+		return _lastModified;
+	}
+
+	@Override
+	public OutputStream write() throws ResourceException {
+		throw new ResourceException(this, "Zip entries are read-only");
+	}
+
+	@Override
+	public OutputStream append() throws ResourceException {
+		throw new ResourceException(this, "Zip entries are read-only");
+	}
+
+	@Override
+	public InputStream read() throws ResourceException {
+		ZipFile zipFile = null;
+		try {
+			zipFile = new ZipFile(_zipFile);
+			final ZipEntry entry = zipFile.getEntry(_entryName);
+			if (entry == null) {
+				throw new IOException("No such zip entry: " + _entryName);
+			}
+			final ZipFile archive = zipFile;
+			final InputStream in = new FilterInputStream(
+					zipFile.getInputStream(entry)) {
+				@Override
+				public void close() throws IOException {
+					// closing the entry's stream closes the archive
+					try {
+						super.close();
+					} finally {
+						archive.close();
+					}
+				}
+			};
+			zipFile = null;
+			return in;
+		} catch (IOException e) {
+			throw new ResourceException(this, e);
+		} finally {
+			if (zipFile != null) {
+				try {
+					zipFile.close();
+				} catch (IOException e) {
+					// do nothing
+				}
+			}
+		}
+	}
+}
@@ -46,6 +46,76 @@ public class IOTest extends TestCase {
 		assertEquals(562.3, IO.readDouble(bytes, 6));
 	}
 
+	public void testReadNegativeAndLongValues() throws Exception {
+		ByteBuffer bb = ByteBuffer.allocate(4 + 2 + 8 + 8);
+		bb.order(ByteOrder.LITTLE_ENDIAN);
+
+		bb.putInt(-123456789);
+		bb.putShort((short) -2);
+		bb.putLong(Long.MIN_VALUE + 42);
+		bb.putDouble(-0.000125);
+
+		byte[] bytes = bb.array();
+		assertEquals(-123456789, IO.readInt(bytes, 0));
+		assertEquals(-2, IO.readShort(bytes, 4));
+		assertEquals(Long.MIN_VALUE + 42, IO.readLong(bytes, 6));
+		assertEquals(-0.000125, IO.readDouble(bytes, 14));
+		assertEquals((byte) 0xfe, IO.readByte(bytes, 4));
+	}
+
+	public void testReadTruncatedNumeric() throws Exception {
+		byte[] full = new byte[8];
+		ByteBuffer.wrap(full).order(ByteOrder.LITTLE_ENDIAN).putDouble(1983.0);
+
+		// 1983.0 only has significant bits in the 3 most significant bytes, so
+		// SAS may store it truncated to 3, 4, ... bytes
+		for (int len = 3; len <= 8; len++) {
+			byte[] page = new byte[2 + len];
+			System.arraycopy(full, 8 - len, page, 2, len);
+			assertEquals(1983.0, IO.readNumeric(page, 2, len));
+		}
+
+		try {
+			IO.readNumeric(full, 0, 9);
+			fail("Exception expected");
+		} catch (UnsupportedOperationException e) {
+			assertEquals("Number byte-length not supported: 9", e.getMessage());
+		}
+	}
+
+	public void testReadBigEndianValues() throws Exception {
+		ByteBuffer bb = ByteBuffer.allocate(4 + 2 + 8 + 8);
+		bb.order(ByteOrder.BIG_ENDIAN);
+
+		bb.putInt(-123456789);
+		bb.putShort((short) -2);
+		bb.putLong(Long.MIN_VALUE + 42);
+		bb.putDouble(1983.0);
+
+		byte[] bytes = bb.array();
+		assertEquals(-123456789, IO.readBigEndianInt(bytes, 0));
+		assertEquals(-2, IO.readBigEndianShort(bytes, 4));
+		assertEquals(Long.MIN_VALUE + 42, IO.readBigEndianLong(bytes, 6));
+
+		// truncated numerics keep their leading (most significant) bytes
+		for (int len = 3; len <= 8; len++) {
+			assertEquals(1983.0, IO.readBigEndianNumeric(bytes, 14, len));
+		}
+	}
+
+	public void testReadStringInPlace() throws Exception {
+		byte[] bytes = "xxhello worldxx".getBytes("windows-1252");
+		assertEquals("hello world", IO.readString(bytes, 2, 11));
+	}
+
+	public void testReadTrimmedString() throws Exception {
+		byte[] bytes = "  Fr\u00e6kk\u00e9 \u20ac   ".getBytes("windows-1252");
+		assertEquals("Fr\u00e6kk\u00e9 \u20ac",
+				IO.readTrimmedString(bytes, 0, bytes.length));
+		assertEquals("", IO.readTrimmedString(bytes, 0, 2));
+		assertEquals("", IO.readTrimmedString(bytes, 0, 0));
+	}
+
 	public void testGetBytes() throws Exception {
 		byte[] bytes = new byte[] { 0, 2, 4, 6, 8, 10, 12 };
 
@@ -0,0 +1,179 @@
+/**
+ * eobjects.org SassyReader
+ * Copyright (C) 2011 eobjects.org
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.eobjects.metamodel.sas;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class SasCompressionTest extends TestCase {
+
+	public void testGet() throws Exception {
+		byte[] colText = "                SASYZCR2        ".getBytes("US-ASCII");
+		assertEquals(SasCompression.RDC, SasCompression.get(colText, 16));
+		assertNull(SasCompression.get(colText, 0));
+		assertNull(SasCompression.get(colText, 28));
+
+		colText = "                SASYZCRL".getBytes("US-ASCII");
+		assertEquals(SasCompression.RLE, SasCompression.get(colText, 16));
+	}
+
+	public void testDecompressRle() throws Exception {
+		ByteArrayOutputStream in = new ByteArrayOutputStream();
+		StringBuilder expected = new StringBuilder();
+
+		// long copy of 64 bytes
+		in.write(new byte[] { 0x00, 0x00 });
+		in.write(repeat('l', 64));
+		expected.append(new String(repeat('l', 64), "US-ASCII"));
+		// long run of 18 bytes
+		in.write(new byte[] { 0x40, 0x00, 'x' });
+		expected.append(new String(repeat('x', 18), "US-ASCII"));
+		// long runs of 17 blanks and 18 zeroes
+		in.write(new byte[] { 0x60, 0x00, 0x70, 0x01 });
+		expected.append(new String(repeat(' ', 17), "US-ASCII"));
+		expected.append(new String(repeat(0, 18), "US-ASCII"));
+		// short copies of 2, 17, 33 and 49 bytes
+		in.write(new byte[] { (byte) 0x81, 'a', 'b' });
+		expected.append("ab");
+		for (int i = 0; i < 3; i++) {
+			in.write((byte) (0x90 + i * 0x10));
+			in.write(repeat('0' + i, 17 + i * 16));
+			expected.append(new String(repeat('0' + i, 17 + i * 16),
+					"US-ASCII"));
+		}
+		// short runs of 4 bytes, 2 '@'s, 3 blanks and 2 zeroes
+		in.write(new byte[] { (byte) 0xC1, 'y', (byte) 0xD0, (byte) 0xE1,
+				(byte) 0xF0 });
+		expected.append("yyyy@@   ").append((char) 0).append((char) 0);
+
+		assertEquals(expected.toString(),
+				decompress(SasCompression.RLE, in.toByteArray(), expected.length()));
+	}
+
+	public void testDecompressRleLongCommands() throws Exception {
+		ByteArrayOutputStream in = new ByteArrayOutputStream();
+		StringBuilder expected = new StringBuilder();
+
+		// long copy of 4096 + 64 + 256 + 2 bytes
+		in.write(new byte[] { 0x11, 0x02 });
+		in.write(repeat('a', 4418));
+		expected.append(new String(repeat('a', 4418), "US-ASCII"));
+		// long copy of 96 + 256 + 3 bytes
+		in.write(new byte[] { 0x21, 0x03 });
+		in.write(repeat('b', 355));
+		expected.append(new String(repeat('b', 355), "US-ASCII"));
+		// long runs of 17 and 256 + 17 + 4 '@'s
+		in.write(new byte[] { 0x50, 0x00, 0x51, 0x04 });
+		expected.append(new String(repeat('@', 17 + 277), "US-ASCII"));
+		// long copy of 64 bytes and more, in the same row
+		in.write(new byte[] { 0x00, 0x01 });
+		in.write(repeat('c', 65));
+		expected.append(new String(repeat('c', 65), "US-ASCII"));
+
+		assertEquals(expected.toString(),
+				decompress(SasCompression.RLE, in.toByteArray(), expected.length()));
+
+		// a long copy must not read past the compressed row
+		try {
+			decompress(SasCompression.RLE, new byte[] { 0x20, 0x00, 'x' }, 96);
+			fail("Exception expected");
+		} catch (SasReaderException e) {
+			assertEquals("Compressed row is truncated", e.getMessage());
+		}
+	}
+
+	public void testDecompressRdc() throws Exception {
+		byte[] in = new byte[] {
+				// control bits of the items below
+				0x78, 0x00,
+				// literal
+				'a',
+				// short run of 5 bytes
+				0x02, 'b',
+				// long run of 35 bytes
+				0x10, 0x01, 'c',
+				// short pattern of 3 bytes at offset 5
+				0x32, 0x00,
+				// long pattern of 16 bytes at offset 5, overlapping the copy
+				0x22, 0x00, 0x00,
+				// literal
+				'z' };
+		StringBuilder expected = new StringBuilder("abbbbb");
+		expected.append(new String(repeat('c', 35), "US-ASCII"));
+		for (int i = 0; i < 3 + 16; i++) {
+			expected.append(expected.charAt(expected.length() - 5));
+		}
+		expected.append('z');
+
+		assertEquals(expected.toString(),
+				decompress(SasCompression.RDC, in, expected.length()));
+	}
+
+	public void testDecompressCorruptRow() throws Exception {
+		byte[] in = new byte[] { (byte) 0xC1, 'y' };
+		try {
+			decompress(SasCompression.RLE, in, 5);
+			fail("Exception expected");
+		} catch (SasReaderException e) {
+			assertEquals(
+					"Decompressed row length 4 does not match the row length 5",
+					e.getMessage());
+		}
+		try {
+			decompress(SasCompression.RLE, in, 3);
+			fail("Exception expected");
+		} catch (SasReaderException e) {
+			assertEquals("Decompressed row exceeds the row length",
+					e.getMessage());
+		}
+		try {
+			decompress(SasCompression.RDC, new byte[] { (byte) 0x80, 0x00, 0x32,
+					0x00 }, 3);
+			fail("Exception expected");
+		} catch (SasReaderException e) {
+			assertEquals("RDC pattern offset 5 precedes the decompressed row",
+					e.getMessage());
+		}
+	}
+
+	/**
+	 * Decompresses a row at an offset of the buffers, to check that the
+	 * offsets are respected.
+	 */
+	private static String decompress(SasCompression compression, byte[] in,
+			int rowLength) throws Exception {
+		byte[] src = new byte[in.length + 10];
+		System.arraycopy(in, 0, src, 7, in.length);
+		byte[] dst = new byte[rowLength + 20];
+		Arrays.fill(dst, (byte) '#');
+		compression.decompress(src, 7, in.length, dst, 10, rowLength);
+		assertEquals('#', dst[9]);
+		assertEquals('#', dst[10 + rowLength]);
+		return new String(dst, 10, rowLength, "US-ASCII");
+	}
+
+	private static byte[] repeat(int b, int count) {
+		byte[] bytes = new byte[count];
+		Arrays.fill(bytes, (byte) b);
+		return bytes;
+	}
+}
@@ -0,0 +1,76 @@
+/**
+ * eobjects.org SassyReader
+ * Copyright (C) 2011 eobjects.org
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.eobjects.metamodel.sas;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+import junit.framework.TestCase;
+
+public class SasDateTimeFormatsTest extends TestCase {
+
+	public void testGetColumnType() throws Exception {
+		assertEquals(SasColumnType.DATE, SasDateTimeFormats.getColumnType("DATE"));
+		assertEquals(SasColumnType.DATE, SasDateTimeFormats.getColumnType("date9."));
+		assertEquals(SasColumnType.DATE, SasDateTimeFormats.getColumnType("YYMMDD10"));
+		assertEquals(SasColumnType.DATE, SasDateTimeFormats.getColumnType("MMDDYYS"));
+		assertEquals(SasColumnType.DATE, SasDateTimeFormats.getColumnType("E8601DA"));
+		assertEquals(SasColumnType.DATETIME, SasDateTimeFormats.getColumnType("DATETIME20."));
+		assertEquals(SasColumnType.DATETIME, SasDateTimeFormats.getColumnType("IS8601DT"));
+		assertEquals(SasColumnType.TIME, SasDateTimeFormats.getColumnType("TIME8"));
+		assertEquals(SasColumnType.TIME, SasDateTimeFormats.getColumnType("HHMM"));
+
+		assertNull(SasDateTimeFormats.getColumnType(null));
+		assertNull(SasDateTimeFormats.getColumnType(""));
+		assertNull(SasDateTimeFormats.getColumnType("BEST12."));
+		assertNull(SasDateTimeFormats.getColumnType("F"));
+		assertNull(SasDateTimeFormats.getColumnType("$CHAR"));
+		assertNull(SasDateTimeFormats.getColumnType("MMDDYYX"));
+	}
+
+	public void testDecode() throws Exception {
+		assertEquals(LocalDate.of(1960, 1, 1),
+				SasDateTimeFormats.decode(SasColumnType.DATE, 0));
+		assertEquals(LocalDate.of(2020, 1, 1),
+				SasDateTimeFormats.decode(SasColumnType.DATE, 21915));
+		assertEquals(LocalDate.of(1959, 12, 31),
+				SasDateTimeFormats.decode(SasColumnType.DATE, -1));
+
+		assertEquals(LocalDateTime.of(1960, 1, 1, 0, 0),
+				SasDateTimeFormats.decode(SasColumnType.DATETIME, 0));
+		assertEquals(LocalDateTime.of(2020, 1, 1, 0, 0, 1, 500000000),
+				SasDateTimeFormats.decode(SasColumnType.DATETIME,
+						1893456001.5));
+		assertEquals(LocalDateTime.of(1959, 12, 31, 23, 59, 59),
+				SasDateTimeFormats.decode(SasColumnType.DATETIME,
+						-1.0000001));
+
+		assertEquals(LocalTime.of(1, 1, 1),
+				SasDateTimeFormats.decode(SasColumnType.TIME, 3661));
+
+		// missing and out of range values
+		assertNull(SasDateTimeFormats.decode(SasColumnType.DATE, Double.NaN));
+		assertNull(SasDateTimeFormats.decode(SasColumnType.TIME, Double.NaN));
+		assertNull(SasDateTimeFormats.decode(SasColumnType.TIME, 90000));
+		assertNull(SasDateTimeFormats.decode(SasColumnType.DATE, 1e300));
+		assertNull(SasDateTimeFormats.decode(SasColumnType.DATETIME, -1e300));
+	}
+}
@@ -0,0 +1,543 @@
+/**
+ * eobjects.org SassyReader
+ * Copyright (C) 2011 eobjects.org
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.eobjects.metamodel.sas;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Generates sas7bdat files for tests from the subheaders and rows of a
+ * (32-bit, little-endian, uncompressed) sas7bdat file, optionally with
+ * another layout, compression, column formats and missing values.
+ *
+ * The subheaders and rows are located by parsing the source file, and are
+ * then laid out anew: the subheaders on meta pages, followed by the rows on
+ * data pages or, when compressed, as row subheaders of meta pages like in
+ * files written with the COMPRESS option. The signatures, offsets and
+ * compression literals are spelled out here rather than taken from the
+ * reader, so a mistake in the reader's constants is not repeated in the
+ * files. Reading a generated file is still a round trip, though: it only
+ * tests the layouts and compression methods as understood by both, and the
+ * generator uses only the short commands of each compression method.
+ */
+final class SasFileGenerator {
+
+	/**
+	 * The bytes of a missing numeric value ('.'), in little-endian order.
+	 */
+	private static final byte[] MISSING = { 0, 0, 0, 0, 0, (byte) 0xfe,
+			(byte) 0xff, (byte) 0xff };
+
+	private static final int SIGNATURE_ROWSIZE = 0xf7f7f7f7;
+	private static final int SIGNATURE_COLSIZE = 0xf6f6f6f6;
+	private static final int SIGNATURE_COLTEXT = 0xfffffffd;
+	private static final int SIGNATURE_COLATTR = 0xfffffffc;
+	private static final int SIGNATURE_COLNAME = 0xffffffff;
+	private static final int SIGNATURE_COLLABS = 0xfffffbfe;
+
+	private final byte[] _header;
+	private final int _pageSize;
+	private final List<SubHeader> _subHeaders = new ArrayList<SubHeader>();
+	private final List<byte[]> _rows = new ArrayList<byte[]>();
+	private final List<int[]> _columns = new ArrayList<int[]>();
+	private final List<SubHeader> _columnLabels = new ArrayList<SubHeader>();
+	private SubHeader _columnText;
+	private int _rowLength;
+
+	public SasFileGenerator(File file) throws IOException {
+		final byte[] data = Files.readAllBytes(file.toPath());
+		if (data[32] != 0x22 || data[37] != 1) {
+			throw new IllegalArgumentException(
+					"Not a 32-bit, little-endian file: " + file);
+		}
+		final ByteBuffer in = ByteBuffer.wrap(data).order(
+				ByteOrder.LITTLE_ENDIAN);
+		final int headerLength = in.getInt(196);
+		final int pageCount = in.getInt(204);
+		_pageSize = in.getInt(200);
+		_header = Arrays.copyOf(data, headerLength);
+
+		int rowCount = 0;
+		int mixPageRowCount = 0;
+		for (int p = 0; p < pageCount; p++) {
+			int pageOffset = headerLength + p * _pageSize;
+			byte pageType = data[pageOffset + 17];
+			int blockCount = in.getShort(pageOffset + 18) & 0xffff;
+			int subhCount = in.getShort(pageOffset + 20) & 0xffff;
+			if (pageType == 0 || pageType == 0x40 || pageType == 2) {
+				for (int i = 0; i < subhCount; i++) {
+					int pointer = pageOffset + 24 + i * 12;
+					int offset = pageOffset + in.getInt(pointer);
+					int length = in.getInt(pointer + 4);
+					if (length < 4) {
+						continue;
+					}
+					if (data[pointer + 8] == 4) {
+						throw new IllegalArgumentException(
+								"Compressed file: " + file);
+					}
+					SubHeader subHeader = new SubHeader(Arrays.copyOfRange(
+							data, offset, offset + length), data[pointer + 8],
+							data[pointer + 9]);
+					_subHeaders.add(subHeader);
+
+					switch (in.getInt(offset)) {
+					case SIGNATURE_ROWSIZE:
+						_rowLength = in.getInt(offset + 20);
+						rowCount = in.getInt(offset + 24);
+						mixPageRowCount = in.getInt(offset + 60);
+						break;
+					case SIGNATURE_COLATTR:
+						// the offset, length and type of each column
+						for (int e = 12; e + 20 <= length; e += 12) {
+							_columns.add(new int[] { in.getInt(offset + e),
+									in.getInt(offset + e + 4),
+									data[offset + e + 10] });
+						}
+						break;
+					case SIGNATURE_COLTEXT:
+						_columnText = subHeader;
+						break;
+					case SIGNATURE_COLLABS:
+						_columnLabels.add(subHeader);
+						break;
+					}
+				}
+			}
+
+			int from;
+			int pageRowCount;
+			if (pageType == 2) {
+				from = 24 + subhCount * 12;
+				from += from % 8;
+				pageRowCount = Math.min(mixPageRowCount,
+						rowCount - _rows.size());
+			} else if (pageType == 1) {
+				from = 24;
+				pageRowCount = blockCount;
+			} else {
+				continue;
+			}
+			for (int r = 0; r < pageRowCount; r++) {
+				int rowFrom = pageOffset + from + r * _rowLength;
+				_rows.add(Arrays.copyOfRange(data, rowFrom, rowFrom
+						+ _rowLength));
+			}
+		}
+		if (_rows.size() != rowCount) {
+			throw new IllegalArgumentException("Found " + _rows.size()
+					+ " rows, expected " + rowCount + ": " + file);
+		}
+	}
+
+	/**
+	 * Sets the format of a column, by adding the format name to the column
+	 * text and referring to it from the column label subheader.
+	 *
+	 * @param columnIndex
+	 * @param format
+	 * @return this generator
+	 */
+	public SasFileGenerator setFormat(int columnIndex, String format) {
+		final byte[] name = format.getBytes(StandardCharsets.US_ASCII);
+		final byte[] text = _columnText._data;
+		final int textOffset = text.length;
+		final byte[] newText = Arrays.copyOf(text, textOffset
+				+ (name.length + 3) / 4 * 4);
+		System.arraycopy(name, 0, newText, textOffset, name.length);
+		// the size of the text follows the signature
+		final ByteBuffer buffer = ByteBuffer.wrap(newText).order(
+				ByteOrder.LITTLE_ENDIAN);
+		buffer.putShort(4, (short) (buffer.getShort(4) + newText.length
+				- textOffset));
+		_columnText._data = newText;
+
+		// text offsets are relative to the end of the signature
+		ByteBuffer.wrap(_columnLabels.get(columnIndex)._data)
+				.order(ByteOrder.LITTLE_ENDIAN).putShort(36,
+						(short) (textOffset - 4))
+				.putShort(38, (short) name.length);
+		return this;
+	}
+
+	/**
+	 * Sets the value of a numeric column to missing.
+	 *
+	 * @param rowIndex
+	 * @param columnIndex
+	 * @return this generator
+	 */
+	public SasFileGenerator setMissing(int rowIndex, int columnIndex) {
+		final int[] column = _columns.get(columnIndex);
+		if (column[2] != 1) {
+			throw new IllegalArgumentException("Not a numeric column: "
+					+ columnIndex);
+		}
+		// truncated numbers keep the most significant bytes
+		System.arraycopy(MISSING, 8 - column[1], _rows.get(rowIndex),
+				column[0], column[1]);
+		return this;
+	}
+
+	/**
+	 * Generates a file.
+	 *
+	 * @param layout
+	 *            the layout of the file. 64-bit files get pages of twice the
+	 *            size, to make room for the wider subheaders, and a header of
+	 *            8192 bytes.
+	 * @param compression
+	 *            the compression of the rows, or null for data pages. Every
+	 *            tenth row, and any row that does not get shorter, is stored
+	 *            uncompressed.
+	 * @return a temporary file
+	 * @throws IOException
+	 */
+	public File generate(SasLayout layout, SasCompression compression)
+			throws IOException {
+		final boolean u64 = layout.isU64();
+		final ByteOrder order = (layout.isBigEndian() ? ByteOrder.BIG_ENDIAN
+				: ByteOrder.LITTLE_ENDIAN);
+		final int w = (u64 ? 8 : 4);
+		final int pageSize = (u64 ? _pageSize * 2 : _pageSize);
+		final int pageHeaderLength = getPageHeaderLength(u64);
+		final int pointerLength = 3 * w;
+
+		// the subheaders, followed by the rows of a compressed file
+		final List<SubHeader> subHeaders = new ArrayList<SubHeader>();
+		for (SubHeader subHeader : _subHeaders) {
+			subHeaders.add(new SubHeader(convertSubHeader(subHeader._data, w,
+					order), subHeader._compression, subHeader._type));
+		}
+		if (compression != null) {
+			// the literal follows the signature and 12 bytes of the column
+			// text
+			final String literal = (compression == SasCompression.RLE ? "SASYZCRL"
+					: "SASYZCR2");
+			System.arraycopy(literal.getBytes(StandardCharsets.US_ASCII), 0,
+					subHeaders.get(_subHeaders.indexOf(_columnText))._data,
+					w + 12, 8);
+			for (int r = 0; r < _rows.size(); r++) {
+				byte[] row = convertRow(_rows.get(r), order);
+				byte[] stored = (r % 10 == 0 ? row : compress(compression,
+						row));
+				if (stored.length >= row.length) {
+					subHeaders.add(new SubHeader(row, (byte) 0, (byte) 1));
+				} else {
+					subHeaders.add(new SubHeader(stored, (byte) 4, (byte) 1));
+				}
+			}
+		}
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int pageCount = 0;
+
+		// the meta pages
+		byte[] page = new byte[pageSize];
+		int pointerCount = 0;
+		int dataEnd = pageSize;
+		for (int i = 0; i < subHeaders.size();) {
+			SubHeader subHeader = subHeaders.get(i);
+			int pointer = pageHeaderLength + pointerCount * pointerLength;
+			if (pointer + pointerLength > dataEnd - subHeader._data.length) {
+				if (pointerCount == 0) {
+					throw new IllegalArgumentException(
+							"Subheader does not fit on a page: "
+									+ subHeader._data.length);
+				}
+				putPageHeader(page, layout, order, 0, pointerCount,
+						pointerCount);
+				out.write(page);
+				pageCount++;
+				page = new byte[pageSize];
+				pointerCount = 0;
+				dataEnd = pageSize;
+				continue;
+			}
+			dataEnd -= subHeader._data.length;
+			System.arraycopy(subHeader._data, 0, page, dataEnd,
+					subHeader._data.length);
+			ByteBuffer buffer = ByteBuffer.wrap(page).order(order);
+			putWord(buffer, pointer, dataEnd, w);
+			putWord(buffer, pointer + w, subHeader._data.length, w);
+			page[pointer + 2 * w] = subHeader._compression;
+			page[pointer + 2 * w + 1] = subHeader._type;
+			pointerCount++;
+			i++;
+		}
+		putPageHeader(page, layout, order, 0, pointerCount, pointerCount);
+		out.write(page);
+		pageCount++;
+
+		// the data pages
+		if (compression == null) {
+			final int rowsPerPage = (pageSize - pageHeaderLength) / _rowLength;
+			for (int r = 0; r < _rows.size(); r += rowsPerPage) {
+				page = new byte[pageSize];
+				int pageRowCount = Math.min(rowsPerPage, _rows.size() - r);
+				for (int i = 0; i < pageRowCount; i++) {
+					System.arraycopy(convertRow(_rows.get(r + i), order), 0,
+							page, pageHeaderLength + i * _rowLength,
+							_rowLength);
+				}
+				putPageHeader(page, layout, order, 1, pageRowCount, 0);
+				out.write(page);
+				pageCount++;
+			}
+		}
+
+		final byte[] data = out.toByteArray();
+		final byte[] header = convertHeader(layout, order, pageCount);
+		final File file = File.createTempFile("generated", ".sas7bdat");
+		final ByteArrayOutputStream fileData = new ByteArrayOutputStream();
+		fileData.write(header);
+		fileData.write(data);
+		Files.write(file.toPath(), fileData.toByteArray());
+		return file;
+	}
+
+	/**
+	 * Converts the file header to a layout, by moving the fields that the
+	 * reader uses to their position in that layout.
+	 */
+	private byte[] convertHeader(SasLayout layout, ByteOrder order,
+			int pageCount) {
+		final boolean u64 = layout.isU64();
+		final int align = (u64 ? 4 : 0);
+		final int headerLength = _header.length;
+		final int outHeaderLength = (u64 ? 8192 : headerLength);
+		final byte[] result = new byte[outHeaderLength];
+		final ByteBuffer out = ByteBuffer.wrap(result).order(order);
+		System.arraycopy(_header, 0, result, 0, 164);
+		result[32] = (byte) (u64 ? 0x33 : 0x22);
+		result[35] = (byte) (u64 ? 0x33 : 0x22);
+		result[37] = (byte) (layout.isBigEndian() ? 0 : 1);
+		System.arraycopy(_header, 164, result, 164 + align, 32);
+		out.putInt(196 + align, outHeaderLength);
+		out.putInt(200 + align, (u64 ? _pageSize * 2 : _pageSize));
+		putWord(out, 204 + align, pageCount, (u64 ? 8 : 4));
+		System.arraycopy(_header, 208, result, 208 + 2 * align, headerLength
+				- 208 - 2 * align);
+		return result;
+	}
+
+	private static void putPageHeader(byte[] page, SasLayout layout,
+			ByteOrder order, int pageType, int blockCount, int subhCount) {
+		final int offset = getPageHeaderLength(layout.isU64()) - 8;
+		ByteBuffer.wrap(page).order(order).putShort(offset,
+				(short) (pageType << 8)).putShort(offset + 2,
+				(short) blockCount).putShort(offset + 4, (short) subhCount);
+	}
+
+	/**
+	 * Converts the numeric values of a row to a byte order.
+	 */
+	private byte[] convertRow(byte[] row, ByteOrder order) {
+		if (order == ByteOrder.LITTLE_ENDIAN) {
+			return row;
+		}
+		final byte[] result = row.clone();
+		for (int[] column : _columns) {
+			if (column[2] == 1) {
+				reverse(result, column[0], column[1]);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Converts a subheader of a 32-bit, little-endian file to a layout with
+	 * another word length and/or byte order.
+	 */
+	private static byte[] convertSubHeader(byte[] subHeader, int w,
+			ByteOrder order) {
+		ByteBuffer in = ByteBuffer.wrap(subHeader).order(
+				ByteOrder.LITTLE_ENDIAN);
+		int length = subHeader.length;
+		int signature = in.getInt(0);
+
+		byte[] result;
+		ByteBuffer out;
+		switch (signature) {
+		case SIGNATURE_ROWSIZE:
+		case SIGNATURE_COLSIZE:
+			// a sequence of words
+			result = new byte[length / 4 * w];
+			out = ByteBuffer.wrap(result).order(order);
+			for (int i = 1; i < length / 4; i++) {
+				putWord(out, i * w, in.getInt(i * 4), w);
+			}
+			break;
+		case SIGNATURE_COLATTR:
+			int count = (length - 20) / 12;
+			result = new byte[(w + 8) + count * (w + 8) + (w + 4)];
+			out = ByteBuffer.wrap(result).order(order);
+			for (int i = 0; i < count; i++) {
+				int e = 12 + i * 12;
+				int outE = w + 8 + i * (w + 8);
+				putWord(out, outE, in.getInt(e), w);
+				out.putInt(outE + w, in.getInt(e + 4));
+				System.arraycopy(subHeader, e + 8, result, outE + w + 4, 4);
+			}
+			break;
+		case SIGNATURE_COLLABS:
+			result = new byte[length + 3 * (w - 4)];
+			out = ByteBuffer.wrap(result).order(order);
+			for (int i = 0; i < 6; i++) {
+				out.putShort(3 * w + 22 + i * 2, in.getShort(34 + i * 2));
+			}
+			break;
+		default:
+			// the contents are copied as they are, except for the text
+			// offsets and lengths of column names
+			result = new byte[length - 4 + w];
+			out = ByteBuffer.wrap(result).order(order);
+			System.arraycopy(subHeader, 4, result, w, length - 4);
+			if (signature == SIGNATURE_COLNAME) {
+				for (int i = 12; i + 8 <= length; i += 2) {
+					out.putShort(i - 4 + w, in.getShort(i));
+				}
+			}
+			break;
+		}
+
+		// 64-bit signatures are sign-extended, except for the row and
+		// column size signatures
+		if (w == 8) {
+			out.putLong(0, (signature >>> 24) == 0xff ? signature
+					: signature & 0xffffffffL);
+		} else {
+			out.putInt(0, signature);
+		}
+		return result;
+	}
+
+	/**
+	 * Compresses a row, using runs of repeated bytes and literal bytes.
+	 */
+	static byte[] compress(SasCompression compression, byte[] row) {
+		int controlPosition = -1;
+		int controlBits = 0;
+		int items = 0;
+		byte[] buffer = new byte[row.length * 2 + 2];
+		int length = 0;
+		for (int i = 0; i < row.length;) {
+			int run = 1;
+			while (i + run < row.length && row[i + run] == row[i] && run < 17) {
+				run++;
+			}
+			if (compression == SasCompression.RLE) {
+				if (run >= 2 && (row[i] == ' ' || row[i] == 0)) {
+					// short run of blanks or zeroes
+					buffer[length++] = (byte) ((row[i] == ' ' ? 0xE0 : 0xF0) | (run - 2));
+					i += run;
+				} else if (run >= 3) {
+					buffer[length++] = (byte) (0xC0 | (run - 3));
+					buffer[length++] = row[i];
+					i += run;
+				} else {
+					// literal copy until the next run
+					int count = 1;
+					while (i + count < row.length
+							&& count < 16
+							&& !(i + count + 1 < row.length && row[i + count] == row[i
+									+ count + 1])) {
+						count++;
+					}
+					buffer[length++] = (byte) (0x80 | (count - 1));
+					System.arraycopy(row, i, buffer, length, count);
+					length += count;
+					i += count;
+				}
+			} else {
+				if (items % 16 == 0) {
+					// control bits of the next 16 items
+					if (controlPosition >= 0) {
+						buffer[controlPosition] = (byte) (controlBits >> 8);
+						buffer[controlPosition + 1] = (byte) controlBits;
+					}
+					controlPosition = length;
+					controlBits = 0;
+					length += 2;
+				}
+				if (run >= 3) {
+					// short run
+					controlBits |= 0x8000 >> (items % 16);
+					buffer[length++] = (byte) (run - 3);
+					buffer[length++] = row[i];
+					i += run;
+				} else {
+					buffer[length++] = row[i++];
+				}
+				items++;
+			}
+		}
+		if (controlPosition >= 0) {
+			buffer[controlPosition] = (byte) (controlBits >> 8);
+			buffer[controlPosition + 1] = (byte) controlBits;
+		}
+		return Arrays.copyOf(buffer, length);
+	}
+
+	/**
+	 * The page header ends with the page type, block count and subheader
+	 * count (and 2 bytes of padding), after 16 or 32 bytes.
+	 */
+	private static int getPageHeaderLength(boolean u64) {
+		return (u64 ? 32 : 16) + 8;
+	}
+
+	private static void putWord(ByteBuffer buffer, int offset, int value,
+			int w) {
+		if (w == 8) {
+			buffer.putLong(offset, value);
+		} else {
+			buffer.putInt(offset, value);
+		}
+	}
+
+	private static void reverse(byte[] bytes, int offset, int length) {
+		for (int i = 0, j = length - 1; i < j; i++, j--) {
+			byte b = bytes[offset + i];
+			bytes[offset + i] = bytes[offset + j];
+			bytes[offset + j] = b;
+		}
+	}
+
+	private static final class SubHeader {
+		private byte[] _data;
+		private final byte _compression;
+		private final byte _type;
+
+		public SubHeader(byte[] data, byte compression, byte type) {
+			_data = data;
+			_compression = compression;
+			_type = type;
+		}
+	}
+}
@@ -0,0 +1,82 @@
+/**
+ * eobjects.org SassyReader
+ * Copyright (C) 2011 eobjects.org
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.eobjects.metamodel.sas;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import junit.framework.TestCase;
+
+public class SasMetadataCacheTest extends TestCase {
+
+	public void testMetadataIsCachedUntilFileChanges() throws Exception {
+		File file = File.createTempFile("pizza", ".sas7bdat");
+		file.deleteOnExit();
+		Files.copy(new File("src/test/resources/pizza.sas7bdat").toPath(),
+				file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+		SasMetadataCache cache = SasMetadataCache.getInstance();
+		assertNull(cache.get(file, file.length(), file.lastModified()));
+
+		CountingSasReaderCallback callback = new CountingSasReaderCallback(
+				false, null);
+		new SasReader(file).read(callback);
+		assertEquals(9, callback.getColumnCount());
+
+		SasMetadata metadata = cache.get(file, file.length(),
+				file.lastModified());
+		assertNotNull(metadata);
+		assertEquals(9, metadata.getColumnCount());
+		assertEquals(300, metadata.getRowCount());
+
+		// a second reader reuses the same metadata
+		callback = new CountingSasReaderCallback(true, null);
+		new SasReader(file).read(callback);
+		assertEquals(9, callback.getColumnCount());
+		assertEquals(300, callback.getRowCount());
+		assertSame(metadata,
+				cache.get(file, file.length(), file.lastModified()));
+
+		// changing the file invalidates the entry
+		assertTrue(file.setLastModified(file.lastModified() - 10000));
+		assertNull(cache.get(file, file.length(), file.lastModified()));
+		new SasReader(file).read(new CountingSasReaderCallback(false, null));
+		assertNotSame(metadata,
+				cache.get(file, file.length(), file.lastModified()));
+	}
+
+	public void testEvictLeastRecentlyUsed() throws Exception {
+		SasMetadataCache cache = new SasMetadataCache(2);
+		SasMetadata metadata = new SasMetadata(null, 0, 0, 0, 0, new int[0],
+				new String[0], new String[0], new String[0],
+				new SasColumnType[0],
+				new int[0], new int[0], null);
+
+		cache.put(new File("a"), 1, 1, metadata);
+		cache.put(new File("b"), 1, 1, metadata);
+		assertNotNull(cache.get(new File("a"), 1, 1));
+		cache.put(new File("c"), 1, 1, metadata);
+
+		assertNotNull(cache.get(new File("a"), 1, 1));
+		assertNull(cache.get(new File("b"), 1, 1));
+		assertNotNull(cache.get(new File("c"), 1, 1));
+	}
+}
@@ -0,0 +1,75 @@
+/**
+ * eobjects.org SassyReader
+ * Copyright (C) 2011 eobjects.org
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.eobjects.metamodel.sas;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class SasPageSampleTest extends TestCase {
+
+	public void testStrided() throws Exception {
+		assertEquals("[10, 13, 16, 19]", Arrays.toString(SasPageSample
+				.strided(4).selectPages(10, 12)));
+		assertEquals("[10, 13, 16, 19]", Arrays.toString(SasPageSample
+				.stridedFraction(0.3).selectPages(10, 12)));
+		assertEquals("[0, 1, 2]", Arrays.toString(SasPageSample.strided(100)
+				.selectPages(0, 3)));
+		assertEquals("[]", Arrays.toString(SasPageSample.strided(1)
+				.selectPages(5, 0)));
+	}
+
+	public void testRandom() throws Exception {
+		int[] pages = SasPageSample.random(50, 42).selectPages(100, 1000);
+		assertEquals(50, pages.length);
+		for (int i = 0; i < pages.length; i++) {
+			assertTrue(pages[i] >= 100 && pages[i] < 1100);
+			if (i > 0) {
+				assertTrue(pages[i] > pages[i - 1]);
+			}
+		}
+
+		// reproducible with the same seed
+		assertTrue(Arrays.equals(pages, SasPageSample.random(50, 42)
+				.selectPages(100, 1000)));
+		assertFalse(Arrays.equals(pages, SasPageSample.random(50, 43)
+				.selectPages(100, 1000)));
+
+		assertEquals(100, SasPageSample.randomFraction(0.1, 1).selectPages(0,
+				1000).length);
+		assertEquals(7, SasPageSample.randomFraction(1, 1).selectPages(0, 7).length);
+	}
+
+	public void testInvalidArguments() throws Exception {
+		try {
+			SasPageSample.stridedFraction(0);
+			fail("Exception expected");
+		} catch (IllegalArgumentException e) {
+			assertEquals("Fraction must be above 0 and at most 1: 0.0",
+					e.getMessage());
+		}
+		try {
+			SasPageSample.random(0, 1);
+			fail("Exception expected");
+		} catch (IllegalArgumentException e) {
+			assertEquals("Page count must be positive: 0", e.getMessage());
+		}
+	}
+}
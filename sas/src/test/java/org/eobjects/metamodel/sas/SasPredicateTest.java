@@ -0,0 +1,156 @@
+/**
+ * eobjects.org SassyReader
+ * Copyright (C) 2011 eobjects.org
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.eobjects.metamodel.sas;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class SasPredicateTest extends TestCase {
+
+	public void testEvaluateNumeric() throws Exception {
+		SasLayout layout = SasLayout.LITTLE_ENDIAN_32;
+		byte[] cell = new byte[8];
+		ByteBuffer.wrap(cell).order(ByteOrder.LITTLE_ENDIAN).putDouble(42.5);
+
+		assertTrue(SasPredicate.equalTo(0, 42.5).evaluate(cell, 0, 8, false,
+				layout));
+		assertFalse(SasPredicate.equalTo(0, 42).evaluate(cell, 0, 8, false,
+				layout));
+		assertTrue(SasPredicate.greaterThan(0, 42).evaluate(cell, 0, 8,
+				false, layout));
+		assertFalse(SasPredicate.lessThan(0, 42).evaluate(cell, 0, 8, false,
+				layout));
+		assertTrue(SasPredicate.greaterThanOrEqual(0, 42.5).evaluate(cell, 0,
+				8, false, layout));
+		assertFalse(SasPredicate.greaterThanOrEqual(0, 43).evaluate(cell, 0,
+				8, false, layout));
+		assertTrue(SasPredicate.lessThanOrEqual(0, 42.5).evaluate(cell, 0, 8,
+				false, layout));
+		assertFalse(SasPredicate.lessThanOrEqual(0, 42).evaluate(cell, 0, 8,
+				false, layout));
+		assertTrue(SasPredicate.in(0, Arrays.asList(1, 42.5)).evaluate(cell,
+				0, 8, false, layout));
+		assertFalse(SasPredicate.isNull(0).evaluate(cell, 0, 8, false,
+				layout));
+		assertTrue(SasPredicate.isNull(0).evaluate(cell, 0, 0, false, layout));
+
+		// truncated numerics
+		assertTrue(SasPredicate.equalTo(0, 42.5).evaluate(cell, 5, 3, false,
+				layout));
+
+		// big-endian numerics
+		ByteBuffer.wrap(cell).order(ByteOrder.BIG_ENDIAN).putDouble(42.5);
+		assertTrue(SasPredicate.equalTo(0, 42.5).evaluate(cell, 0, 3, false,
+				SasLayout.BIG_ENDIAN_64));
+
+		// missing values are NaN, which is greater than any number
+		ByteBuffer.wrap(cell).order(ByteOrder.LITTLE_ENDIAN)
+				.putDouble(Double.NaN);
+		assertTrue(SasPredicate.greaterThan(0, 42).evaluate(cell, 0, 8,
+				false, layout));
+		assertTrue(SasPredicate.equalTo(0, Double.NaN).evaluate(cell, 0, 8,
+				false, layout));
+	}
+
+	public void testMayMatch() throws Exception {
+		// a range of values from 10 to 20, and 3 missing values
+		assertTrue(SasPredicate.equalTo(0, 10).mayMatch(10, 20, 3));
+		assertFalse(SasPredicate.equalTo(0, 21).mayMatch(10, 20, 3));
+		assertTrue(SasPredicate.in(0, Arrays.asList(1, 15)).mayMatch(10, 20,
+				3));
+		assertFalse(SasPredicate.in(0, Arrays.asList(1, 25)).mayMatch(10, 20,
+				3));
+		assertTrue(SasPredicate.lessThan(0, 11).mayMatch(10, 20, 3));
+		assertFalse(SasPredicate.lessThan(0, 10).mayMatch(10, 20, 3));
+		assertTrue(SasPredicate.greaterThan(0, 19).mayMatch(10, 20, 0));
+		assertFalse(SasPredicate.greaterThan(0, 20).mayMatch(10, 20, 0));
+		assertTrue(SasPredicate.lessThanOrEqual(0, 10).mayMatch(10, 20, 3));
+		assertFalse(SasPredicate.lessThanOrEqual(0, 9).mayMatch(10, 20, 3));
+		assertTrue(SasPredicate.greaterThanOrEqual(0, 20).mayMatch(10, 20, 0));
+		assertFalse(SasPredicate.greaterThanOrEqual(0, 21)
+				.mayMatch(10, 20, 0));
+		assertTrue(SasPredicate.isNull(0).mayMatch(10, 20, 0));
+
+		// missing values are greater than any number
+		assertTrue(SasPredicate.greaterThan(0, 20).mayMatch(10, 20, 3));
+		assertTrue(SasPredicate.equalTo(0, Double.NaN).mayMatch(10, 20, 3));
+		assertFalse(SasPredicate.equalTo(0, Double.NaN).mayMatch(10, 20, 0));
+
+		// only missing values
+		assertFalse(SasPredicate.lessThan(0, 1).mayMatch(Double.NaN,
+				Double.NaN, 3));
+		assertTrue(SasPredicate.greaterThan(0, 1).mayMatch(Double.NaN,
+				Double.NaN, 3));
+		assertTrue(SasPredicate.greaterThanOrEqual(0, 1).mayMatch(Double.NaN,
+				Double.NaN, 3));
+		assertFalse(SasPredicate.lessThanOrEqual(0, 1).mayMatch(Double.NaN,
+				Double.NaN, 3));
+		assertTrue(SasPredicate.lessThanOrEqual(0, Double.NaN).mayMatch(
+				Double.NaN, Double.NaN, 3));
+
+		// predicates on strings are not ruled out by numeric statistics
+		assertTrue(SasPredicate.equalTo(0, "a").mayMatch(10, 20, 0));
+	}
+
+	public void testEvaluateCharacter() throws Exception {
+		SasLayout layout = SasLayout.LITTLE_ENDIAN_32;
+		byte[] cell = " Frækk   ".getBytes("windows-1252");
+		int len = cell.length;
+
+		assertTrue(SasPredicate.equalTo(0, "Frækk").evaluate(cell, 0, len,
+				true, layout));
+		assertFalse(SasPredicate.equalTo(0, "Fr").evaluate(cell, 0, len,
+				true, layout));
+		assertFalse(SasPredicate.equalTo(0, "Ж").evaluate(cell, 0, len,
+				true, layout));
+		assertTrue(SasPredicate.in(0, Arrays.asList("foo", "Frækk"))
+				.evaluate(cell, 0, len, true, layout));
+		assertTrue(SasPredicate.greaterThan(0, "A").evaluate(cell, 0, len,
+				true, layout));
+		assertTrue(SasPredicate.lessThan(0, "G").evaluate(cell, 0, len, true,
+				layout));
+		assertTrue(SasPredicate.greaterThanOrEqual(0, "Frækk").evaluate(cell,
+				0, len, true, layout));
+		assertTrue(SasPredicate.lessThanOrEqual(0, "Frækk").evaluate(cell, 0,
+				len, true, layout));
+		assertFalse(SasPredicate.lessThanOrEqual(0, "Fr").evaluate(cell, 0,
+				len, true, layout));
+	}
+
+	public void testMixedOperandTypes() throws Exception {
+		try {
+			SasPredicate.in(0, Arrays.<Object> asList(1, "a"));
+			fail("Exception expected");
+		} catch (IllegalArgumentException e) {
+			assertEquals(
+					"Operands must be either all numbers or all strings: [1, a]",
+					e.getMessage());
+		}
+
+		assertTrue(SasPredicate.equalTo(0, 1).isApplicable(
+				SasColumnType.NUMERIC));
+		assertFalse(SasPredicate.equalTo(0, 1).isApplicable(
+				SasColumnType.CHARACTER));
+		assertTrue(SasPredicate.isNull(0).isApplicable(SasColumnType.CHARACTER));
+	}
+}
@@ -20,7 +20,23 @@
 package org.eobjects.metamodel.sas;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.GZIPOutputStream;
 
 import junit.framework.TestCase;
 
@@ -29,6 +45,7 @@ import org.apache.metamodel.csv.CsvDataContext;
 import org.apache.metamodel.data.DataSet;
 import org.apache.metamodel.query.Query;
 import org.apache.metamodel.schema.Table;
+import org.apache.metamodel.util.FileResource;
 import org.eobjects.metamodel.sas.SasReader;
 
 public class SasReaderTest extends TestCase {
@@ -50,30 +67,107 @@ public class SasReaderTest extends TestCase {
         readSas("event2.sas7bdat", 9, 1506, null);
     }
 
+    public void testReadDateTimeColumns() throws Exception {
+        File file = createDateTimeFile();
+        try {
+            SasReader reader = new SasReader(file);
+            assertFalse(reader.isDateTimeDecoding());
+            reader.setDateTimeDecoding(true);
+            final List<SasColumnType> columnTypes = new ArrayList<SasColumnType>();
+            reader.read(new CountReaderCallback() {
+                @Override
+                public void column(int columnIndex, String columnName,
+                        String columnLabel, SasColumnType columnType,
+                        int columnLength) {
+                    columnTypes.add(columnType);
+                }
+            });
+            List<Object[]> rows = collectRows(reader);
+            assertEquals("[TIME, DATE, NUMERIC, DATETIME, NUMERIC, NUMERIC, "
+                    + "NUMERIC, NUMERIC, NUMERIC]", columnTypes.toString());
+
+            // raw numbers when turned off
+            List<Object[]> rawRows = collectRows(new SasReader(file));
+            assertEquals(rawRows.size(), rows.size());
+            assertEquals(Double.NaN, rawRows.get(83)[3]);
+            LocalDate epoch = LocalDate.of(1960, 1, 1);
+            for (int i = 0; i < rows.size(); i++) {
+                Object[] row = rows.get(i);
+                Object[] rawRow = rawRows.get(i);
+                double caseId = (Double) rawRow[0];
+                if (caseId < 86400) {
+                    assertEquals(LocalTime.ofSecondOfDay((long) caseId),
+                            row[0]);
+                } else {
+                    // out of range
+                    assertNull(row[0]);
+                }
+                assertEquals(epoch.plusDays(((Double) rawRow[1]).longValue()),
+                        row[1]);
+                assertEquals(rawRow[2], row[2]);
+                if (Double.isNaN((Double) rawRow[3])) {
+                    assertNull(row[3]);
+                } else {
+                    assertEquals(epoch.atStartOfDay().plusSeconds(
+                            ((Double) rawRow[3]).longValue()), row[3]);
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Creates a copy of event2.sas7bdat where the caseid, age and marriage
+     * columns have a TIME, DATE and DATETIME format respectively. The
+     * marriage value of rows 84 to 88 is missing.
+     */
+    public static File createDateTimeFile() throws Exception {
+        SasFileGenerator generator = new SasFileGenerator(new File(
+                "src/test/resources/event2.sas7bdat"));
+        generator.setFormat(0, "TIME").setFormat(1, "DATE")
+                .setFormat(3, "DATETIME");
+        for (int row = 83; row < 88; row++) {
+            generator.setMissing(row, 3);
+        }
+        return generator.generate(SasLayout.LITTLE_ENDIAN_32, null);
+    }
+
+    private static List<Object[]> collectRows(SasReader reader) {
+        final List<Object[]> rows = new ArrayList<Object[]>();
+        reader.read(new CountReaderCallback() {
+            @Override
+            public boolean row(int rowNumber, Object[] rowData) {
+                rows.add(rowData);
+                return true;
+            }
+        });
+        return rows;
+    }
+
     public void testReadMathAttitudes() throws Exception {
         readSas("mathattitudes.sas7bdat", 15, 1907,
                 createComparisonDataSet("mathattitudes.tsv"));
     }
 
-    /**
-     * TODO: Ignored for release
-     */
-//     public void testReadPhyseds2006() throws Exception {
-//     List<Object[]> sampleRows = readSas("physeds2006.sas7bdat", 232, 51,
-//     createComparisonDataSet("physeds2006.tsv"));
-//    
-//     assertEquals(51, sampleRows.size());
-//    
-//     assertEquals("Alabama", sampleRows.get(0)[1]);
-//     assertEquals("Alaska", sampleRows.get(1)[1]);
-//     assertEquals("Arizona", sampleRows.get(2)[1]);
-//     assertEquals("Arkansas", sampleRows.get(3)[1]);
-//     assertEquals("California", sampleRows.get(4)[1]);
-//     assertEquals("Colorado", sampleRows.get(5)[1]);
-//     assertEquals("Connecticut", sampleRows.get(6)[1]);
-//     assertEquals("Delaware", sampleRows.get(7)[1]);
-//     assertEquals("Wyoming", sampleRows.get(50)[1]);
-//     }
+    public void testReadPhyseds2006() throws Exception {
+        // not compared to the TSV file, since it has special missing values
+        // (.A, .B etc.) which are read as NaN
+        List<Object[]> sampleRows = readSas("physeds2006.sas7bdat", 232, 51,
+                null);
+
+        assertEquals(51, sampleRows.size());
+
+        assertEquals("Alabama", sampleRows.get(0)[1]);
+        assertEquals("Alaska", sampleRows.get(1)[1]);
+        assertEquals("Arizona", sampleRows.get(2)[1]);
+        assertEquals("Arkansas", sampleRows.get(3)[1]);
+        assertEquals("California", sampleRows.get(4)[1]);
+        assertEquals("Colorado", sampleRows.get(5)[1]);
+        assertEquals("Connecticut", sampleRows.get(6)[1]);
+        assertEquals("Delaware", sampleRows.get(7)[1]);
+        assertEquals("Wyoming", sampleRows.get(50)[1]);
+    }
 
     public void testReadBeef() throws Exception {
         readSas("beef.sas7bdat", 9, 30, createComparisonDataSet("beef.tsv"));
@@ -88,6 +182,664 @@ public class SasReaderTest extends TestCase {
         readSas("pizza.sas7bdat", 9, 300, createComparisonDataSet("pizza.tsv"));
     }
 
+    public void testReadPizzaWithStringDeduplication() throws Exception {
+        File file = new File("src/test/resources/pizza.sas7bdat");
+        SasReader reader = new SasReader(file);
+        reader.setStringDeduplication(true);
+
+        CountingSasReaderCallback callback = new CountingSasReaderCallback(
+                true, createComparisonDataSet("pizza.tsv"));
+        reader.read(callback);
+        assertEquals(300, callback.getRowCount());
+
+        List<Object[]> sampleRows = callback.getSampleRows();
+        assertEquals("a", sampleRows.get(0)[8]);
+        assertSame(sampleRows.get(0)[8], sampleRows.get(1)[8]);
+    }
+
+    public void testReadWithMemoryMapping() throws Exception {
+        File file = new File("src/test/resources/mathattitudes.sas7bdat");
+        SasReader reader = new SasReader(file);
+        assertFalse(reader.isMemoryMapped());
+        reader.setMemoryMapped(true);
+
+        CountingSasReaderCallback callback = new CountingSasReaderCallback(
+                true, createComparisonDataSet("mathattitudes.tsv"));
+        reader.read(callback);
+        assertEquals(15, callback.getColumnCount());
+        assertEquals(1907, callback.getRowCount());
+    }
+
+    public void testReadWithReadAhead() throws Exception {
+        File file = new File("src/test/resources/mathattitudes.sas7bdat");
+        for (int readAhead : new int[] { 1, 4, 100 }) {
+            SasReader reader = new SasReader(file);
+            reader.setReadAhead(readAhead);
+
+            CountingSasReaderCallback callback = new CountingSasReaderCallback(
+                    true, createComparisonDataSet("mathattitudes.tsv"));
+            reader.read(callback);
+            assertEquals(15, callback.getColumnCount());
+            assertEquals(1907, callback.getRowCount());
+        }
+    }
+
+    public void testReadWithReadAheadStoppedEarly() throws Exception {
+        File file = new File("src/test/resources/event2.sas7bdat");
+        SasReader reader = new SasReader(file);
+        reader.setReadAhead(2);
+
+        final List<Object[]> rows = new ArrayList<Object[]>();
+        reader.read(new CountReaderCallback() {
+            @Override
+            public boolean row(int rowNumber, Object[] rowData) {
+                rows.add(rowData);
+                return rowNumber < 10;
+            }
+        });
+        assertEquals(10, rows.size());
+    }
+
+    public void testReadParallel() throws Exception {
+        File file = new File("src/test/resources/mathattitudes.sas7bdat");
+        SasReader reader = new SasReader(file);
+        reader.setParallelism(4);
+
+        CountingSasReaderCallback callback = new CountingSasReaderCallback(
+                true, createComparisonDataSet("mathattitudes.tsv"));
+        reader.read(callback);
+        assertEquals(15, callback.getColumnCount());
+        assertEquals(1907, callback.getRowCount());
+    }
+
+    public void testReadParallelUnordered() throws Exception {
+        File file = new File("src/test/resources/event2.sas7bdat");
+        SasReader reader = new SasReader(file);
+        reader.setParallelism(4);
+        reader.setPreserveRowOrder(false);
+
+        CountingSasReaderCallback callback = new CountingSasReaderCallback(
+                true, null);
+        reader.read(callback);
+        assertEquals(9, callback.getColumnCount());
+        assertEquals(1506, callback.getRowCount());
+    }
+
+    public void testReadWithMetrics() throws Exception {
+        // a copy, so that the metadata is not cached
+        File file = File.createTempFile("pizza", ".sas7bdat");
+        file.delete();
+        Files.copy(new File("src/test/resources/pizza.sas7bdat").toPath(),
+                file.toPath());
+        file.deleteOnExit();
+
+        SasReader reader = new SasReader(file);
+        CountingSasReaderMetrics metrics = new CountingSasReaderMetrics();
+        reader.setMetrics(metrics);
+        reader.read(new CountReaderCallback());
+
+        // all of the file is read, and the pages with both metadata and
+        // data are read twice
+        assertTrue(metrics.getBytesRead() >= file.length());
+        assertTrue(metrics.getIoNanos() > 0);
+        assertTrue(metrics.getPagesDecoded() > 0);
+        assertTrue(metrics.getPagesRead() >= metrics.getPagesDecoded());
+        assertEquals(300, metrics.getRowsDecoded());
+        assertEquals(300 * 7, metrics.getNumericCellsDecoded());
+        assertEquals(300 * 2, metrics.getCharacterCellsDecoded());
+        assertTrue(metrics.getDecodeNanos() > 0);
+
+        // metadata is cached, so only the data pages are read again, by
+        // the cursor of a projecting reader that stops early. The cursor
+        // decodes the rows of a page (98 rows) at once, to time them per page
+        metrics = new CountingSasReaderMetrics();
+        reader = new SasReader(file);
+        reader.setMetrics(metrics);
+        reader.setProjection(8);
+        SasRowCursor cursor = reader.openCursor();
+        for (int i = 0; i < 10; i++) {
+            assertNotNull(cursor.nextRow());
+        }
+        cursor.close();
+        assertEquals(1, metrics.getPagesDecoded());
+        assertEquals(98, metrics.getRowsDecoded());
+        assertEquals(0, metrics.getNumericCellsDecoded());
+        assertEquals(98, metrics.getCharacterCellsDecoded());
+
+        // the rows of a cursor are the same with metrics
+        List<String> expected = readRows(new SasReader(file));
+        reader = new SasReader(file);
+        reader.setMetrics(new CountingSasReaderMetrics());
+        cursor = reader.openCursor(150);
+        try {
+            for (String expectedRow : expected.subList(149, 300)) {
+                assertEquals(expectedRow, Arrays.toString(cursor.nextRow()));
+            }
+            assertEquals(300, cursor.getRowNumber());
+            assertNull(cursor.nextRow());
+        } finally {
+            cursor.close();
+        }
+
+        // shared by parallel readers
+        metrics = new CountingSasReaderMetrics();
+        reader = new SasReader(new File(
+                "src/test/resources/mathattitudes.sas7bdat"));
+        reader.setMetrics(metrics);
+        reader.setParallelism(4);
+        reader.read(new CountReaderCallback());
+        assertEquals(1907, metrics.getRowsDecoded());
+    }
+
+    public void testReadFromInputStream() throws Exception {
+        File file = new File("src/test/resources/mathattitudes.sas7bdat");
+        List<String> expected = readRows(new SasReader(file));
+
+        InputStream in = new FileInputStream(file);
+        try {
+            SasReader reader = new SasReader(in);
+            assertNull(reader.getFile());
+            assertEquals(1907, reader.getRowCount());
+            assertEquals(expected, readRows(reader));
+
+            // the stream can only be read once
+            try {
+                readRows(reader);
+                fail("Exception expected");
+            } catch (SasReaderException e) {
+                assertTrue(e.getCause() instanceof IOException);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    public void testReadFromGzipResource() throws Exception {
+        File file = new File("src/test/resources/mathattitudes.sas7bdat");
+        List<String> expected = readRows(new SasReader(file));
+
+        File gzFile = File.createTempFile("mathattitudes", ".sas7bdat.gz");
+        try {
+            OutputStream out = new GZIPOutputStream(new FileOutputStream(
+                    gzFile));
+            try {
+                Files.copy(file.toPath(), out);
+            } finally {
+                out.close();
+            }
+
+            SasReader reader = new SasReader(new FileResource(gzFile));
+            assertNull(reader.getFile());
+            assertEquals(1907, reader.getRowCount());
+            assertEquals(expected, readRows(reader));
+
+            // the resource is read again, parallelism is ignored
+            reader.setParallelism(4);
+            reader.setReadAhead(2);
+            assertEquals(expected, readRows(reader));
+
+            SasRowCursor cursor = reader.openCursor(1000);
+            try {
+                for (String expectedRow : expected.subList(999, 1010)) {
+                    assertEquals(expectedRow,
+                            Arrays.toString(cursor.nextRow()));
+                }
+                assertEquals(1010, cursor.getRowNumber());
+            } finally {
+                cursor.close();
+            }
+
+            // the metadata is cached, and reused by other readers
+            FileResource resource = new FileResource(gzFile);
+            SasMetadata metadata = SasMetadataCache.getInstance().get(
+                    resource.getQualifiedPath(), resource.getSize(),
+                    resource.getLastModified());
+            assertNotNull(metadata);
+            assertEquals(expected, readRows(new SasReader(resource)));
+            assertSame(metadata, SasMetadataCache.getInstance().get(
+                    resource.getQualifiedPath(), resource.getSize(),
+                    resource.getLastModified()));
+        } finally {
+            gzFile.delete();
+        }
+    }
+
+    public void testReadCompressed() throws Exception {
+        File file = new File("src/test/resources/pizza.sas7bdat");
+        List<String> expected = readRows(new SasReader(file));
+        List<Object[]> expectedBatchRows = readBatches(new SasReader(file));
+        SasFileGenerator generator = new SasFileGenerator(file);
+        SasLayout[] layouts = { SasLayout.LITTLE_ENDIAN_32,
+                SasLayout.BIG_ENDIAN_64 };
+
+        for (SasCompression compression : SasCompression.values()) {
+            for (SasLayout layout : layouts) {
+                File compressedFile = generator.generate(layout, compression);
+                try {
+                    String message = compression + " (" + layout + ")";
+                    SasReader reader = new SasReader(compressedFile);
+                    assertEquals(message, 300, reader.getRowCount());
+                    assertEquals(message, expected, readRows(reader));
+
+                    List<Object[]> batchRows = readBatches(reader);
+                    assertEquals(expectedBatchRows.size(), batchRows.size());
+                    for (int i = 0; i < batchRows.size(); i++) {
+                        assertEquals(message,
+                                Arrays.toString(expectedBatchRows.get(i)),
+                                Arrays.toString(batchRows.get(i)));
+                    }
+
+                    SasRowCursor cursor = reader.openCursor(150);
+                    try {
+                        for (String expectedRow : expected.subList(149, 300)) {
+                            assertEquals(message, expectedRow,
+                                    Arrays.toString(cursor.nextRow()));
+                        }
+                        assertNull(cursor.nextRow());
+                    } finally {
+                        cursor.close();
+                    }
+
+                    reader = new SasReader(compressedFile);
+                    reader.setParallelism(3);
+                    assertEquals(message, expected, readRows(reader));
+                } finally {
+                    compressedFile.delete();
+                }
+            }
+        }
+    }
+
+    public void testReadLayouts() throws Exception {
+        String[] filenames = { "event2", "mathattitudes", "physeds2006" };
+        SasLayout[] layouts = { SasLayout.LITTLE_ENDIAN_32,
+                SasLayout.LITTLE_ENDIAN_64, SasLayout.BIG_ENDIAN_32,
+                SasLayout.BIG_ENDIAN_64 };
+        for (String filename : filenames) {
+            File file = new File("src/test/resources/" + filename
+                    + ".sas7bdat");
+            List<String> expected = readRows(new SasReader(file));
+            SasFileGenerator generator = new SasFileGenerator(file);
+
+            for (SasLayout layout : layouts) {
+                File layoutFile = generator.generate(layout, null);
+                try {
+                    String message = filename + " (" + layout + ")";
+                    SasReader reader = new SasReader(layoutFile);
+                    assertEquals(message, expected.size(),
+                            reader.getRowCount());
+                    assertEquals(message, expected, readRows(reader));
+
+                    int firstRow = expected.size() / 2;
+                    SasRowCursor cursor = reader.openCursor(firstRow);
+                    try {
+                        assertEquals(message, expected.get(firstRow - 1),
+                                Arrays.toString(cursor.nextRow()));
+                    } finally {
+                        cursor.close();
+                    }
+
+                    reader = new SasReader(layoutFile);
+                    reader.setParallelism(3);
+                    assertEquals(message, expected, readRows(reader));
+                } finally {
+                    layoutFile.delete();
+                }
+            }
+        }
+    }
+
+    public void testGetRowCount() throws Exception {
+        String[] filenames = { "beef", "charset_mostly_latin", "event2",
+                "mammals", "mathattitudes", "physeds2006", "pizza" };
+        for (String filename : filenames) {
+            File file = new File("src/test/resources/" + filename
+                    + ".sas7bdat");
+            CountReaderCallback callback = new CountReaderCallback();
+            new SasReader(file).read(callback);
+            assertEquals(filename, callback.getCount(),
+                    new SasReader(file).getRowCount());
+        }
+    }
+
+    public void testReadWithProjection() throws Exception {
+        File file = new File("src/test/resources/pizza.sas7bdat");
+        SasReader reader = new SasReader(file);
+        reader.setProjection(8, 2, 8);
+
+        final List<Object[]> rows = new ArrayList<Object[]>();
+        reader.read(new CountReaderCallback() {
+            @Override
+            public boolean row(int rowNumber, Object[] rowData) {
+                rows.add(rowData);
+                return super.row(rowNumber, rowData);
+            }
+        });
+
+        assertEquals(300, rows.size());
+        assertEquals("[a, 21.43, a]", Arrays.toString(rows.get(0)));
+        assertEquals("[a, 21.26, a]", Arrays.toString(rows.get(1)));
+    }
+
+    public void testReadWithPredicates() throws Exception {
+        File file = new File("src/test/resources/pizza.sas7bdat");
+        SasReader reader = new SasReader(file);
+        reader.setProjection(8, 2);
+        reader.setPredicates(SasPredicate.equalTo(8, "b"),
+                SasPredicate.greaterThan(2, 10));
+
+        final List<Object[]> rows = new ArrayList<Object[]>();
+        reader.read(new CountReaderCallback() {
+            @Override
+            public boolean row(int rowNumber, Object[] rowData) {
+                assertEquals(rows.size() + 1, rowNumber);
+                rows.add(rowData);
+                return super.row(rowNumber, rowData);
+            }
+        });
+
+        assertEquals(31, rows.size());
+        for (Object[] row : rows) {
+            assertEquals("b", row[0]);
+            assertTrue(((Double) row[1]) > 10);
+        }
+    }
+
+    public void testReadBatches() throws Exception {
+        String[] filenames = { "charset_mostly_latin", "mathattitudes",
+                "pizza" };
+        for (String filename : filenames) {
+            File file = new File("src/test/resources/" + filename
+                    + ".sas7bdat");
+            final List<Object[]> rows = new ArrayList<Object[]>();
+            new SasReader(file).read(new CountReaderCallback() {
+                @Override
+                public boolean row(int rowNumber, Object[] rowData) {
+                    rows.add(rowData);
+                    return super.row(rowNumber, rowData);
+                }
+            });
+
+            List<Object[]> batchRows = readBatches(new SasReader(file));
+            assertEquals(filename, rows.size(), batchRows.size());
+            for (int i = 0; i < rows.size(); i++) {
+                assertEquals(filename + " row " + i,
+                        Arrays.toString(rows.get(i)),
+                        Arrays.toString(batchRows.get(i)));
+            }
+        }
+    }
+
+    public void testReadBatchesWithPredicates() throws Exception {
+        File file = new File("src/test/resources/pizza.sas7bdat");
+        SasReader reader = new SasReader(file);
+        reader.setProjection(8, 2);
+        reader.setPredicates(SasPredicate.equalTo(8, "b"),
+                SasPredicate.greaterThan(2, 10));
+
+        List<Object[]> rows = readBatches(reader);
+        assertEquals(31, rows.size());
+        for (Object[] row : rows) {
+            assertEquals("b", row[0]);
+            assertTrue(((Double) row[1]) > 10);
+        }
+    }
+
+    public void testReadBatchesWithDictionaryIds() throws Exception {
+        File file = new File("src/test/resources/pizza.sas7bdat");
+        SasReader reader = new SasReader(file);
+        reader.setProjection(8);
+        reader.setStringDeduplication(true);
+        reader.setStringDictionarySize(4);
+
+        final Map<Integer, String> idValues = new HashMap<Integer, String>();
+        final Set<String> undictionaryValues = new HashSet<String>();
+        reader.readBatches(new SasBatchCallback() {
+            @Override
+            public void column(int columnIndex, String columnName,
+                    String columnLabel, SasColumnType columnType,
+                    int columnLength) {
+            }
+
+            @Override
+            public boolean batch(SasRowBatch batch) {
+                int[] ids = batch.getDictionaryIds(0);
+                assertNotNull(ids);
+                for (int row = 0; row < batch.getRowCount(); row++) {
+                    String value = batch.getString(0, row);
+                    if (ids[row] == -1) {
+                        undictionaryValues.add(value);
+                    } else {
+                        assertEquals(value,
+                                batch.getDictionaryValue(0, ids[row]));
+                        String previous = idValues.put(ids[row], value);
+                        assertTrue(previous == null || previous.equals(value));
+                    }
+                }
+                assertEquals(4, batch.getDictionarySize(0));
+                return true;
+            }
+        });
+
+        // ids are assigned to the first 4 distinct values only
+        assertEquals("{0=a, 1=b, 2=c, 3=d}", new TreeMap<Integer, String>(
+                idValues).toString());
+        assertFalse(undictionaryValues.isEmpty());
+        for (String value : undictionaryValues) {
+            assertFalse(idValues.containsValue(value));
+        }
+
+        // the values are the same as without deduplication
+        reader = new SasReader(file);
+        reader.setStringDeduplication(true);
+        List<Object[]> rows = readBatches(reader);
+        List<Object[]> expectedRows = readBatches(new SasReader(file));
+        assertEquals(expectedRows.size(), rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            assertEquals(Arrays.toString(expectedRows.get(i)),
+                    Arrays.toString(rows.get(i)));
+        }
+    }
+
+    public void testReadRange() throws Exception {
+        for (String filename : new String[] { "mathattitudes", "physeds2006" }) {
+            File file = new File("src/test/resources/" + filename
+                    + ".sas7bdat");
+            final List<Object[]> allRows = new ArrayList<Object[]>();
+            new SasReader(file).read(new CountReaderCallback() {
+                @Override
+                public boolean row(int rowNumber, Object[] rowData) {
+                    allRows.add(rowData);
+                    return super.row(rowNumber, rowData);
+                }
+            });
+
+            int[][] ranges = { { 1, 10 }, { 2, 1 }, { 100, 250 },
+                    { allRows.size() - 5, 100 }, { allRows.size(), -1 },
+                    { allRows.size() + 1, 10 } };
+            for (int[] range : ranges) {
+                final int firstRow = range[0];
+                final int maxRows = range[1];
+                final List<Object[]> rows = new ArrayList<Object[]>();
+                new SasReader(file).read(new CountReaderCallback() {
+                    @Override
+                    public boolean row(int rowNumber, Object[] rowData) {
+                        assertEquals(firstRow + rows.size(), rowNumber);
+                        rows.add(rowData);
+                        return super.row(rowNumber, rowData);
+                    }
+                }, firstRow, maxRows);
+
+                int toRow = Math.min(allRows.size(), maxRows < 0 ? allRows
+                        .size() : firstRow - 1 + maxRows);
+                List<Object[]> expected = allRows.subList(
+                        Math.min(firstRow - 1, toRow), toRow);
+                assertEquals(filename + " " + firstRow, expected.size(),
+                        rows.size());
+                for (int i = 0; i < rows.size(); i++) {
+                    assertEquals(Arrays.toString(expected.get(i)),
+                            Arrays.toString(rows.get(i)));
+                }
+
+                SasRowCursor cursor = new SasReader(file).openCursor(firstRow);
+                try {
+                    for (Object[] expectedRow : expected) {
+                        assertEquals(Arrays.toString(expectedRow),
+                                Arrays.toString(cursor.nextRow()));
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+        }
+    }
+
+    public void testReadRangeWithPredicates() throws Exception {
+        File file = new File("src/test/resources/pizza.sas7bdat");
+        SasReader reader = new SasReader(file);
+        reader.setProjection(0, 8);
+        reader.setPredicates(SasPredicate.equalTo(8, "b"));
+
+        final List<Object[]> rows = new ArrayList<Object[]>();
+        reader.read(new CountReaderCallback() {
+            @Override
+            public boolean row(int rowNumber, Object[] rowData) {
+                rows.add(rowData);
+                return super.row(rowNumber, rowData);
+            }
+        }, 11, 5);
+
+        assertEquals(5, rows.size());
+        SasRowCursor cursor = reader.openCursor();
+        for (int i = 0; i < 10; i++) {
+            cursor.nextRow();
+        }
+        assertEquals(Arrays.toString(rows.get(0)),
+                Arrays.toString(cursor.nextRow()));
+        cursor.close();
+    }
+
+    public void testReadPageSample() throws Exception {
+        File file = new File("src/test/resources/mathattitudes.sas7bdat");
+        final List<String> allRows = new ArrayList<String>();
+        new SasReader(file).read(new CountReaderCallback() {
+            @Override
+            public boolean row(int rowNumber, Object[] rowData) {
+                allRows.add(Arrays.toString(rowData));
+                return super.row(rowNumber, rowData);
+            }
+        });
+
+        // sampling all pages reads all rows
+        SasReader reader = new SasReader(file);
+        reader.setPageSample(SasPageSample.stridedFraction(1));
+        assertEquals(allRows, readRows(reader));
+
+        reader.setPageSample(SasPageSample.random(3, 1234));
+        List<String> sampledRows = readRows(reader);
+        assertTrue(sampledRows.size() > 0);
+        assertTrue(sampledRows.size() < allRows.size() / 3);
+        assertTrue(allRows.containsAll(sampledRows));
+        assertEquals(sampledRows, readRows(reader));
+
+        reader.setPageSample(SasPageSample.strided(2));
+        sampledRows = readRows(reader);
+        assertEquals(allRows.get(0), sampledRows.get(0));
+        assertTrue(sampledRows.size() < allRows.size() / 3);
+    }
+
+    private List<String> readRows(SasReader reader) {
+        final List<String> rows = new ArrayList<String>();
+        reader.read(new CountReaderCallback() {
+            @Override
+            public boolean row(int rowNumber, Object[] rowData) {
+                assertEquals(rows.size() + 1, rowNumber);
+                rows.add(Arrays.toString(rowData));
+                return super.row(rowNumber, rowData);
+            }
+        });
+        return rows;
+    }
+
+    public void testReadWithCursor() throws Exception {
+        String[] filenames = { "beef", "mathattitudes", "physeds2006",
+                "pizza" };
+        for (String filename : filenames) {
+            File file = new File("src/test/resources/" + filename
+                    + ".sas7bdat");
+            final List<Object[]> rows = new ArrayList<Object[]>();
+            new SasReader(file).read(new CountReaderCallback() {
+                @Override
+                public boolean row(int rowNumber, Object[] rowData) {
+                    rows.add(rowData);
+                    return super.row(rowNumber, rowData);
+                }
+            });
+
+            SasRowCursor cursor = new SasReader(file).openCursor();
+            try {
+                for (int i = 0; i < rows.size(); i++) {
+                    Object[] rowData = cursor.nextRow();
+                    assertNotNull(filename + " row " + i, rowData);
+                    assertEquals(i + 1, cursor.getRowNumber());
+                    assertEquals(filename + " row " + i,
+                            Arrays.toString(rows.get(i)),
+                            Arrays.toString(rowData));
+                }
+                assertNull(cursor.nextRow());
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+
+    public void testReadWithCursorClosedEarly() throws Exception {
+        File file = new File("src/test/resources/event2.sas7bdat");
+        SasReader reader = new SasReader(file);
+        reader.setProjection(0);
+        SasRowCursor cursor = reader.openCursor();
+        assertEquals(1, cursor.nextRow().length);
+        assertEquals(1, cursor.nextRow().length);
+        cursor.close();
+        assertNull(cursor.nextRow());
+    }
+
+    /**
+     * Reads batches and converts them into rows like those passed to a
+     * {@link SasReaderCallback}.
+     */
+    private List<Object[]> readBatches(SasReader reader) {
+        final List<Object[]> rows = new ArrayList<Object[]>();
+        reader.readBatches(new SasBatchCallback() {
+            @Override
+            public void column(int columnIndex, String columnName,
+                    String columnLabel, SasColumnType columnType,
+                    int columnLength) {
+            }
+
+            @Override
+            public boolean batch(SasRowBatch batch) {
+                assertEquals(rows.size() + 1, batch.getFirstRowNumber());
+                for (int row = 0; row < batch.getRowCount(); row++) {
+                    Object[] rowData = new Object[batch.getColumnCount()];
+                    for (int col = 0; col < rowData.length; col++) {
+                        if (batch.getColumnType(col) == SasColumnType.NUMERIC) {
+                            if (!batch.isMissing(col, row)
+                                    || Double.isNaN(batch.getNumbers(col)[row])) {
+                                rowData[col] = batch.getNumbers(col)[row];
+                            }
+                        } else {
+                            rowData[col] = batch.getString(col, row);
+                        }
+                    }
+                    rows.add(rowData);
+                }
+                return true;
+            }
+        });
+        return rows;
+    }
+
     private List<Object[]> readSas(String filename, int columns, int rows,
             DataSet compareToDataSet) {
         File file = new File("src/test/resources/" + filename);
@@ -0,0 +1,45 @@
+/**
+ * eobjects.org SassyReader
+ * Copyright (C) 2011 eobjects.org
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.eobjects.metamodel.sas;
+
+import junit.framework.TestCase;
+
+public class SasRowIndexTest extends TestCase {
+
+	public void testGetPageNumber() throws Exception {
+		// pages 3 to 8, of which 5 and 6 hold no rows
+		SasRowIndex index = new SasRowIndex(3, new int[] { 10, 5, 0, 0, 7, 1 });
+		assertEquals(23, index.getRowCount());
+
+		assertEquals(3, index.getPageNumber(0));
+		assertEquals(3, index.getPageNumber(9));
+		assertEquals(4, index.getPageNumber(10));
+		assertEquals(4, index.getPageNumber(14));
+		assertEquals(7, index.getPageNumber(15));
+		assertEquals(7, index.getPageNumber(21));
+		assertEquals(8, index.getPageNumber(22));
+		assertEquals(-1, index.getPageNumber(23));
+		assertEquals(-1, index.getPageNumber(-1));
+
+		assertEquals(0, index.getFirstRow(3));
+		assertEquals(15, index.getFirstRow(7));
+		assertEquals(22, index.getFirstRow(8));
+	}
+}
@@ -0,0 +1,69 @@
+/**
+ * eobjects.org SassyReader
+ * Copyright (C) 2011 eobjects.org
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.eobjects.metamodel.sas;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class SasSubHeaderCatalogTest extends TestCase {
+
+	public void testLookupBySignature() throws Exception {
+		SasSubHeaderCatalog catalog = new SasSubHeaderCatalog(
+				SasLayout.LITTLE_ENDIAN_32);
+		SasSubHeader rowSize = new SasSubHeader(new byte[64],
+				SasSubHeaderCatalog.SIGNATURE_ROWSIZE);
+		SasSubHeader label1 = new SasSubHeader(new byte[16],
+				SasSubHeaderCatalog.SIGNATURE_COLLABS);
+		SasSubHeader label2 = new SasSubHeader(new byte[16],
+				SasSubHeaderCatalog.SIGNATURE_COLLABS);
+		catalog.add(0, rowSize);
+		catalog.add(0, label1);
+		catalog.add(2, label2);
+		catalog.add(2, new SasSubHeader(new byte[20 + 3 * 12],
+				SasSubHeaderCatalog.SIGNATURE_COLATTR));
+		catalog.add(3, new SasSubHeader(new byte[20 + 2 * 12],
+				SasSubHeaderCatalog.SIGNATURE_COLATTR));
+
+		assertSame(rowSize, catalog.getSubHeader(
+				SasSubHeaderCatalog.SIGNATURE_ROWSIZE, "ROWSIZE"));
+		assertEquals(Arrays.asList(label1, label2),
+				catalog.getSubHeaders(SasSubHeaderCatalog.SIGNATURE_COLLABS));
+		assertEquals(0, catalog.getCount(SasSubHeaderCatalog.SIGNATURE_COLNAME));
+		assertEquals(5, catalog.getColAttrEntryCount());
+		assertEquals("[0, 2, 3]", Arrays.toString(catalog.getPageNumbers()));
+
+		try {
+			catalog.getSubHeader(SasSubHeaderCatalog.SIGNATURE_COLLABS,
+					"COLLABS");
+			fail("Exception expected");
+		} catch (SasReaderException e) {
+			assertEquals("Multiple (2) instances of the same sub header: COLLABS",
+					e.getMessage());
+		}
+		try {
+			catalog.getSubHeader(SasSubHeaderCatalog.SIGNATURE_COLNAME,
+					"COLNAME");
+			fail("Exception expected");
+		} catch (SasReaderException e) {
+			assertEquals("Could not find sub header: COLNAME", e.getMessage());
+		}
+	}
+}
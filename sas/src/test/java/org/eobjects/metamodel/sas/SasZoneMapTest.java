@@ -0,0 +1,210 @@
+/**
+ * eobjects.org SassyReader
+ * Copyright (C) 2011 eobjects.org
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.eobjects.metamodel.sas;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class SasZoneMapTest extends TestCase {
+
+	private File file;
+	private File sidecarFile;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		file = File.createTempFile("mathattitudes", ".sas7bdat");
+		file.deleteOnExit();
+		Files.copy(new File("src/test/resources/mathattitudes.sas7bdat")
+				.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		sidecarFile = SasZoneMap.getSidecarFile(file);
+		sidecarFile.deleteOnExit();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		file.delete();
+		sidecarFile.delete();
+	}
+
+	public void testBuildOnFullScanAndSkipPages() throws Exception {
+		// only a few pages hold students older than 183 months
+		SasPredicate predicate = SasPredicate.greaterThan(2, 183.0);
+		SasReader reader = new SasReader(file);
+		reader.setPredicates(predicate);
+		List<String> expectedRows = readRows(reader);
+		assertTrue(expectedRows.size() > 0);
+
+		// a full scan builds and persists the zone map
+		reader = new SasReader(file);
+		reader.setZoneMaps(true);
+		assertFalse(sidecarFile.exists());
+		assertEquals(1907, readRows(reader).size());
+		assertTrue(sidecarFile.exists());
+
+		SasMetadata metadata = SasMetadataCache.getInstance().get(file,
+				file.length(), file.lastModified());
+		SasZoneMap zoneMap = SasZoneMap.read(sidecarFile, metadata,
+				file.length(), file.lastModified());
+		assertNotNull(zoneMap);
+		int skippablePages = 0;
+		for (int i = 0; i < 20; i++) {
+			if (!zoneMap.mayMatch(i, new SasPredicate[] { predicate })) {
+				skippablePages++;
+			}
+		}
+		assertTrue(skippablePages > 0);
+		assertTrue(skippablePages < zoneMap.getPageCount());
+
+		// reads with predicates skip pages, with the same result
+		reader = new SasReader(file);
+		reader.setZoneMaps(true);
+		reader.setPredicates(predicate);
+		assertEquals(expectedRows, readRows(reader));
+		reader.setParallelism(3);
+		assertEquals(expectedRows, readRows(reader));
+
+		// and the skipped pages are not read ahead either
+		reader = new SasReader(file);
+		reader.setPredicates(predicate);
+		reader.setReadAhead(2);
+		CountingSasReaderMetrics metrics = new CountingSasReaderMetrics();
+		reader.setMetrics(metrics);
+		assertEquals(expectedRows, readRows(reader));
+		long fullBytesRead = metrics.getBytesRead();
+		reader.setZoneMaps(true);
+		metrics = new CountingSasReaderMetrics();
+		reader.setMetrics(metrics);
+		assertEquals(expectedRows, readRows(reader));
+		assertTrue(metrics.getBytesRead() < fullBytesRead);
+
+		// the sidecar is stale once the file is modified
+		assertTrue(file.setLastModified(file.lastModified() - 10000));
+		assertNull(SasZoneMap.read(sidecarFile, metadata, file.length(),
+				file.lastModified()));
+	}
+
+	public void testRejectCorruptSidecar() throws Exception {
+		SasReader reader = new SasReader(file);
+		reader.setZoneMaps(true);
+		List<String> rows = readRows(reader);
+		SasMetadata metadata = SasMetadataCache.getInstance().get(file,
+				file.length(), file.lastModified());
+		byte[] sidecar = Files.readAllBytes(sidecarFile.toPath());
+
+		// the column count, first page number, page count, numeric column
+		// count and first numeric column index follow the file length and
+		// modification time
+		int[][] corruptions = { { 24, 1000 }, { 28, 1 }, { 32, -1 },
+				{ 32, Integer.MAX_VALUE }, { 36, -1 }, { 36, 1 << 30 },
+				{ 40, 1000 } };
+		for (int[] corruption : corruptions) {
+			byte[] corrupt = sidecar.clone();
+			ByteBuffer.wrap(corrupt).putInt(corruption[0], corruption[1]);
+			writeSidecar(corrupt);
+			try {
+				SasZoneMap.read(sidecarFile, metadata, file.length(),
+						file.lastModified());
+				fail("Exception expected for " + Arrays.toString(corruption));
+			} catch (IOException e) {
+				// expected
+			}
+		}
+
+		// a truncated sidecar or one with trailing data is rejected as well
+		writeSidecar(Arrays.copyOf(sidecar, sidecar.length - 1));
+		try {
+			SasZoneMap.read(sidecarFile, metadata, file.length(),
+					file.lastModified());
+			fail("Exception expected");
+		} catch (IOException e) {
+			// expected
+		}
+		writeSidecar(Arrays.copyOf(sidecar, sidecar.length + 1));
+		try {
+			SasZoneMap.read(sidecarFile, metadata, file.length(),
+					file.lastModified());
+			fail("Exception expected");
+		} catch (IOException e) {
+			// expected
+		}
+
+		// a reader ignores the corrupt sidecar, and replaces it
+		metadata.setZoneMap(null);
+		reader = new SasReader(file);
+		reader.setZoneMaps(true);
+		assertEquals(rows, readRows(reader));
+		assertTrue(Arrays.equals(sidecar,
+				Files.readAllBytes(sidecarFile.toPath())));
+		assertNotNull(SasZoneMap.read(sidecarFile, metadata, file.length(),
+				file.lastModified()));
+	}
+
+	private void writeSidecar(byte[] data) throws IOException {
+		Files.write(sidecarFile.toPath(), data);
+	}
+
+	public void testBuildWithCursor() throws Exception {
+		SasReader reader = new SasReader(file);
+		reader.setZoneMaps(true);
+		reader.setProjection(1);
+		SasRowCursor cursor = reader.openCursor();
+		cursor.nextRow();
+		cursor.close();
+		assertFalse(sidecarFile.exists());
+
+		cursor = reader.openCursor();
+		while (cursor.nextRow() != null) {
+			// read all rows
+		}
+		assertTrue(sidecarFile.exists());
+
+		reader.setPredicates(SasPredicate.lessThan(0, 2.0));
+		List<String> rows = new ArrayList<String>();
+		cursor = reader.openCursor();
+		for (Object[] row = cursor.nextRow(); row != null; row = cursor
+				.nextRow()) {
+			rows.add(Arrays.toString(row));
+		}
+		reader.setZoneMaps(false);
+		assertEquals(readRows(reader), rows);
+	}
+
+	private List<String> readRows(SasReader reader) {
+		final List<String> rows = new ArrayList<String>();
+		reader.read(new CountReaderCallback() {
+			@Override
+			public boolean row(int rowNumber, Object[] rowData) {
+				rows.add(Arrays.toString(rowData));
+				return super.row(rowNumber, rowData);
+			}
+		});
+		return rows;
+	}
+}
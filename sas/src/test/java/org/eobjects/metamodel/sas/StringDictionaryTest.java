@@ -0,0 +1,73 @@
+/**
+ * eobjects.org SassyReader
+ * Copyright (C) 2011 eobjects.org
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.eobjects.metamodel.sas;
+
+import junit.framework.TestCase;
+
+public class StringDictionaryTest extends TestCase {
+
+	public void testDeduplicateValues() throws Exception {
+		byte[] bytes = "DK  SE  DK  NO  DK  ".getBytes("windows-1252");
+
+		StringDictionary dictionary = new StringDictionary(10);
+		String dk = dictionary.get(bytes, 0, 4);
+		assertEquals("DK", dk);
+		assertEquals("SE", dictionary.get(bytes, 4, 4));
+		assertSame(dk, dictionary.get(bytes, 8, 4));
+		assertEquals("NO", dictionary.get(bytes, 12, 4));
+		assertSame(dk, dictionary.get(bytes, 16, 4));
+		assertEquals(3, dictionary.size());
+	}
+
+	public void testBoundedSize() throws Exception {
+		StringDictionary dictionary = new StringDictionary(100);
+		byte[] bytes = new byte[3];
+		for (int i = 0; i < 1000; i++) {
+			bytes[0] = (byte) ('0' + i / 100);
+			bytes[1] = (byte) ('0' + (i / 10) % 10);
+			bytes[2] = (byte) ('0' + i % 10);
+			assertEquals(new String(bytes, "windows-1252"),
+					dictionary.get(bytes, 0, 3));
+		}
+		assertEquals(100, dictionary.size());
+
+		// values added before the dictionary was full are still shared
+		bytes = "042".getBytes("windows-1252");
+		assertSame(dictionary.get(bytes, 0, 3), dictionary.get(bytes, 0, 3));
+	}
+
+	public void testIds() throws Exception {
+		byte[] bytes = "DK  SE  DK    ".getBytes("windows-1252");
+
+		StringDictionary dictionary = new StringDictionary(2);
+		assertEquals(0, dictionary.getId(bytes, 0, 2));
+		assertEquals(1, dictionary.getId(bytes, 4, 2));
+		assertEquals(0, dictionary.getId(bytes, 8, 2));
+		assertEquals("SE", dictionary.getValue(1));
+
+		// values are keyed by their trimmed bytes
+		assertSame(dictionary.getValue(0), dictionary.get(bytes, 8, 4));
+
+		// the dictionary is full
+		assertEquals(-1, dictionary.getId(bytes, 12, 0));
+		assertEquals("", dictionary.get(bytes, 12, 2));
+		assertEquals(2, dictionary.size());
+	}
+}
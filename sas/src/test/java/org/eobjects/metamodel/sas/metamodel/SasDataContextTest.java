@@ -19,7 +19,22 @@
  */
 package org.eobjects.metamodel.sas.metamodel;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import javax.swing.table.TableModel;
 
@@ -28,9 +43,15 @@ import org.apache.metamodel.MetaModelHelper;
 import org.apache.metamodel.data.DataSet;
 import org.apache.metamodel.data.DataSetTableModel;
 import org.apache.metamodel.data.Row;
+import org.apache.metamodel.query.FilterItem;
+import org.apache.metamodel.query.OperatorType;
 import org.apache.metamodel.query.Query;
+import org.apache.metamodel.query.SelectItem;
+import org.apache.metamodel.schema.Column;
+import org.apache.metamodel.schema.ColumnType;
 import org.apache.metamodel.schema.Schema;
 import org.apache.metamodel.schema.Table;
+import org.eobjects.metamodel.sas.SasReaderTest;
 
 import junit.framework.TestCase;
 
@@ -60,6 +81,11 @@ public class SasDataContextTest extends TestCase {
 		tm = new DataSetTableModel(dc.executeQuery(q));
 		assertEquals("2.0", tm.getValueAt(0, 0).toString());
 		assertEquals(10, tm.getRowCount());
+
+		// deep into the file, the reader seeks to the page of the first row
+		q.setFirstRow(1900);
+		tm = new DataSetTableModel(dc.executeQuery(q));
+		assertEquals(8, tm.getRowCount());
 	}
 
 	public void testResourcesFolder() throws Exception {
@@ -124,4 +150,354 @@ public class SasDataContextTest extends TestCase {
 		assertEquals("c", objectArrays.get(2)[0]);
 		assertEquals("d", objectArrays.get(3)[0]);
 	}
+
+	public void testEagerSchemaLoading() throws Exception {
+		SasDataContext lazy = new SasDataContext("src/test/resources");
+		SasDataContext eager = new SasDataContext("src/test/resources");
+		eager.setSchemaLoadingParallelism(4);
+
+		Schema schema = eager.getDefaultSchema();
+		assertEquals(8, schema.getTableCount());
+		assertTrue(eager.getSchemaLoadingFailures().isEmpty());
+		for (Table table : schema.getTables()) {
+			assertEquals(table.getName(), lazy.getDefaultSchema()
+					.getTableByName(table.getName()).getColumnNames(),
+					table.getColumnNames());
+		}
+	}
+
+	public void testEagerSchemaLoadingWithBrokenFile() throws Exception {
+		File directory = Files.createTempDirectory("sas").toFile();
+		File pizza = new File(directory, "pizza.sas7bdat");
+		File broken = new File(directory, "broken.sas7bdat");
+		try {
+			Files.copy(new File("src/test/resources/pizza.sas7bdat").toPath(),
+					pizza.toPath());
+			Files.write(broken.toPath(), "not a SAS file".getBytes());
+
+			SasDataContext dc = new SasDataContext(directory);
+			dc.setSchemaLoadingParallelism(2);
+			Schema schema = dc.getDefaultSchema();
+			assertEquals("[pizza]", schema.getTableNames().toString());
+			assertEquals(9, schema.getTable(0).getColumnCount());
+			assertEquals(1, dc.getSchemaLoadingFailures().size());
+			assertTrue(dc.getSchemaLoadingFailures().containsKey("broken"));
+		} finally {
+			pizza.delete();
+			broken.delete();
+			directory.delete();
+		}
+	}
+
+	public void testFiltersPushedDownToReader() throws Exception {
+		DataContext dc = new SasDataContext("src/test/resources");
+		Table table = dc.getDefaultSchema().getTableByName("pizza");
+
+		// reference result, filtered in memory
+		List<Object[]> allRows = dc.executeQuery(
+				dc.query().from(table).select("id", "prot", "brand").toQuery())
+				.toObjectArrays();
+		int expected = 0;
+		for (Object[] row : allRows) {
+			if (("a".equals(row[2]) || "c".equals(row[2]))
+					&& ((Number) row[1]).doubleValue() < 20) {
+				expected++;
+			}
+		}
+		assertTrue(expected > 0);
+
+		Query q = dc.query().from(table).select("id").where("brand")
+				.in("a", "c").and("prot").lessThan(20).toQuery();
+		List<Object[]> rows = dc.executeQuery(q).toObjectArrays();
+		assertEquals(expected, rows.size());
+		assertEquals(1, rows.get(0).length);
+
+		Row countRow = MetaModelHelper.executeSingleRowQuery(dc, dc.query()
+				.from(table).selectCount().where("brand").eq("j").toQuery());
+		assertEquals("Row[values=[33]]", countRow.toString());
+
+		assertFilteredLikeInMemory(dc, table.getColumnByName("prot"),
+				OperatorType.GREATER_THAN_OR_EQUAL, 20);
+		assertFilteredLikeInMemory(dc, table.getColumnByName("prot"),
+				OperatorType.LESS_THAN_OR_EQUAL, 20);
+		assertFilteredLikeInMemory(dc, table.getColumnByName("brand"),
+				OperatorType.LESS_THAN_OR_EQUAL, "c");
+
+		// combined with a filter that is not pushed down and with paging
+		q = dc.query().from(table).select("prot", "brand").where("brand")
+				.eq("b").and("id").like("%5").toQuery();
+		q.setFirstRow(2);
+		q.setMaxRows(2);
+		rows = dc.executeQuery(q).toObjectArrays();
+		assertEquals(2, rows.size());
+		assertEquals("b", rows.get(0)[1]);
+	}
+
+	public void testUnionTable() throws Exception {
+		File directory = Files.createTempDirectory("sas").toFile();
+		File[] files = new File[] { new File(directory, "pizza_01.sas7bdat"),
+				new File(directory, "pizza_02.sas7bdat"),
+				new File(directory, "pizza_03.sas7bdat") };
+		try {
+			Files.copy(new File("src/test/resources/pizza.sas7bdat").toPath(),
+					files[0].toPath());
+			Files.copy(new File("src/test/resources/pizza.sas7bdat").toPath(),
+					files[1].toPath());
+			// matches the pattern, but has other columns
+			Files.copy(new File("src/test/resources/beef.sas7bdat").toPath(),
+					files[2].toPath());
+
+			SasDataContext dc = new SasDataContext(directory);
+			dc.addUnionTable("pizza", "pizza_\\d+\\.sas7bdat", 2, true);
+			Table table = dc.getDefaultSchema().getTableByName("pizza");
+			assertTrue(table instanceof SasUnionTable);
+			assertEquals(9, table.getColumnCount());
+			assertEquals(2, ((SasUnionTable) table).getFiles().size());
+
+			Row countRow = MetaModelHelper.executeSingleRowQuery(dc, dc
+					.query().from(table).selectCount().toQuery());
+			assertEquals("Row[values=[600]]", countRow.toString());
+			assertEquals(600L, countRow.getValue(0));
+
+			List<Object[]> fileRows = dc.executeQuery(
+					dc.query().from("pizza_01").select("id", "brand")
+							.toQuery()).toObjectArrays();
+			List<Object[]> rows = dc.executeQuery(
+					dc.query().from(table).select("id", "brand").toQuery())
+					.toObjectArrays();
+			assertEquals(600, rows.size());
+			for (int i = 0; i < rows.size(); i++) {
+				assertEquals(Arrays.toString(fileRows.get(i % 300)),
+						Arrays.toString(rows.get(i)));
+			}
+
+			Query q = dc.query().from(table).select("id").where("brand")
+					.eq("j").toQuery();
+			q.setFirstRow(10);
+			q.setMaxRows(40);
+			rows = dc.executeQuery(q).toObjectArrays();
+			assertEquals(40, rows.size());
+
+			countRow = MetaModelHelper.executeSingleRowQuery(dc, dc.query()
+					.from(table).selectCount().where("brand").eq("j")
+					.toQuery());
+			assertEquals("Row[values=[66]]", countRow.toString());
+
+			// unordered union
+			dc = new SasDataContext(directory);
+			dc.addUnionTable("pizza", "pizza_\\d+\\.sas7bdat", 2, false);
+			rows = dc.executeQuery(
+					dc.query().from("pizza").select("id").toQuery())
+					.toObjectArrays();
+			assertEquals(600, rows.size());
+		} finally {
+			for (File file : files) {
+				file.delete();
+			}
+			directory.delete();
+		}
+	}
+
+	public void testCompressedTables() throws Exception {
+		File directory = Files.createTempDirectory("sas").toFile();
+		File gzFile = new File(directory, "pizza.SAS7BDAT.gz");
+		File zipFile = new File(directory, "archive.zip");
+		try {
+			OutputStream out = new GZIPOutputStream(new FileOutputStream(
+					gzFile));
+			try {
+				Files.copy(new File("src/test/resources/pizza.sas7bdat")
+						.toPath(), out);
+			} finally {
+				out.close();
+			}
+			ZipOutputStream zipOut = new ZipOutputStream(new FileOutputStream(
+					zipFile));
+			try {
+				zipOut.putNextEntry(new ZipEntry("data/beef.SAS7BDAT"));
+				Files.copy(new File("src/test/resources/beef.sas7bdat")
+						.toPath(), zipOut);
+				zipOut.putNextEntry(new ZipEntry("data/broken.sas7bdat"));
+				zipOut.write("not a table".getBytes("UTF-8"));
+				zipOut.putNextEntry(new ZipEntry("readme.txt"));
+				zipOut.write("not a table".getBytes("UTF-8"));
+			} finally {
+				zipOut.close();
+			}
+
+			SasDataContext dc = new SasDataContext(directory);
+			dc.setSchemaLoadingParallelism(2);
+			assertEquals("[beef, pizza]", Arrays.toString(dc
+					.getDefaultSchema().getTableNames().toArray()));
+			assertEquals("[broken]", dc.getSchemaLoadingFailures().keySet()
+					.toString());
+
+			Row countRow = MetaModelHelper.executeSingleRowQuery(dc, dc
+					.query().from("pizza").selectCount().toQuery());
+			assertEquals("Row[values=[300]]", countRow.toString());
+
+			DataContext expectedDc = new SasDataContext(
+					"src/test/resources");
+			for (String tableName : new String[] { "beef", "pizza" }) {
+				Table table = dc.getDefaultSchema().getTableByName(tableName);
+				Table expectedTable = expectedDc.getDefaultSchema()
+						.getTableByName(tableName);
+				assertEquals(expectedTable.getColumnNames(),
+						table.getColumnNames());
+
+				Query q = dc.query().from(table)
+						.select(table.getColumns().get(0)).toQuery();
+				q.setFirstRow(5);
+				q.setMaxRows(10);
+				Query expectedQuery = expectedDc.query().from(expectedTable)
+						.select(expectedTable.getColumns().get(0)).toQuery();
+				expectedQuery.setFirstRow(5);
+				expectedQuery.setMaxRows(10);
+				List<Object[]> rows = dc.executeQuery(q).toObjectArrays();
+				assertEquals(10, rows.size());
+				assertEquals(Arrays.deepToString(expectedDc
+						.executeQuery(expectedQuery).toObjectArrays()
+						.toArray()), Arrays.deepToString(rows.toArray()));
+			}
+
+			Row brandRow = MetaModelHelper.executeSingleRowQuery(dc, dc
+					.query().from("pizza").selectCount().where("brand")
+					.eq("j").toQuery());
+			assertEquals("Row[values=[33]]", brandRow.toString());
+		} finally {
+			gzFile.delete();
+			zipFile.delete();
+			directory.delete();
+		}
+	}
+
+	public void testDateTimeColumns() throws Exception {
+		File directory = Files.createTempDirectory("sas").toFile();
+		File file = new File(directory, "event2.sas7bdat");
+		try {
+			Files.move(SasReaderTest.createDateTimeFile().toPath(),
+					file.toPath());
+
+			SasDataContext dc = new SasDataContext(directory);
+			assertEquals(ColumnType.NUMERIC, dc.getDefaultSchema()
+					.getTableByName("event2").getColumnByName("age")
+					.getType());
+
+			dc = new SasDataContext(directory);
+			dc.setDateTimeDecoding(true);
+			Table table = dc.getDefaultSchema().getTableByName("event2");
+			assertEquals(ColumnType.TIME, table.getColumnByName("caseid")
+					.getType());
+			assertEquals(ColumnType.DATE, table.getColumnByName("age")
+					.getType());
+			assertEquals(ColumnType.TIMESTAMP,
+					table.getColumnByName("marriage").getType());
+
+			List<Object[]> rows = dc.executeQuery(
+					dc.query().from(table).select("age", "marriage")
+							.toQuery()).toObjectArrays();
+			assertEquals(1506, rows.size());
+			assertTrue(rows.get(0)[0] instanceof java.sql.Date);
+
+			// filtered in memory, on the decoded values
+			Date date = java.sql.Date.valueOf(LocalDate.of(1960, 1, 31));
+			int expected = 0;
+			for (Object[] row : rows) {
+				if (((Date) row[0]).after(date)) {
+					expected++;
+				}
+			}
+			assertTrue(expected > 0);
+			assertEquals(expected, dc.executeQuery(
+					dc.query().from(table).select("age").where("age")
+							.greaterThan(date).toQuery()).toObjectArrays()
+					.size());
+
+			// missing datetimes are null, also when filtered on
+			int missing = 0;
+			for (Object[] row : rows) {
+				if (row[1] == null) {
+					missing++;
+				}
+			}
+			assertTrue(missing > 0);
+			assertEquals(missing, dc.executeQuery(
+					dc.query().from(table).select("marriage")
+							.where("marriage").isNull().toQuery())
+					.toObjectArrays().size());
+
+			// comparisons with dates narrow down the raw SAS numbers, with
+			// the same result as when filtered in memory
+			rows = dc.executeQuery(
+					dc.query().from(table).select("caseid", "age",
+							"marriage").toQuery()).toObjectArrays();
+			OperatorType[] operators = { OperatorType.EQUALS_TO,
+					OperatorType.LESS_THAN, OperatorType.LESS_THAN_OR_EQUAL,
+					OperatorType.GREATER_THAN,
+					OperatorType.GREATER_THAN_OR_EQUAL };
+			String[] columnNames = { "caseid", "age", "marriage" };
+			for (int i = 0; i < columnNames.length; i++) {
+				List<Date> values = new ArrayList<Date>();
+				for (Object[] row : rows) {
+					if (row[i] != null) {
+						values.add((Date) row[i]);
+					}
+				}
+				if (values.isEmpty()) {
+					// the case ids are out of range as times, ie. null
+					values.add(Time.valueOf("12:00:00"));
+				}
+				Date value = values.get(values.size() / 3);
+				Date other = values.get(values.size() * 2 / 3);
+				Column column = table.getColumnByName(columnNames[i]);
+				Date[] operands = { value, other,
+						new Date(value.getTime() + 43200000) };
+				for (Date operand : operands) {
+					for (OperatorType operator : operators) {
+						assertFilteredLikeInMemory(dc, column, operator,
+								operand);
+					}
+				}
+				assertFilteredLikeInMemory(dc, column, OperatorType.IN,
+						Arrays.asList(value, other));
+			}
+		} finally {
+			file.delete();
+			directory.delete();
+		}
+	}
+
+	private static void assertFilteredLikeInMemory(DataContext dc,
+			Column column, OperatorType operator, Object operand) {
+		FilterItem filter = new FilterItem(new SelectItem(column), operator,
+				operand);
+		Query query = dc.query().from(column.getTable()).select(column)
+				.toQuery();
+		List<Object[]> expected = MetaModelHelper.getFiltered(
+				dc.executeQuery(query), Arrays.asList(filter))
+				.toObjectArrays();
+		query.where(filter);
+		List<Object[]> rows = dc.executeQuery(query).toObjectArrays();
+		assertEquals(filter.toString(), expected.size(), rows.size());
+		for (int i = 0; i < rows.size(); i++) {
+			assertEquals(filter.toString(), expected.get(i)[0], rows.get(i)[0]);
+		}
+	}
+
+	public void testConvertDateTimeValues() throws Exception {
+		LocalDateTime dateTime = LocalDateTime.of(2020, 1, 31, 13, 14, 15,
+				500000000);
+		Object[] values = { LocalDate.of(2020, 1, 31), dateTime,
+				LocalTime.of(13, 14, 15, 250000000), 1.5, null };
+		SasDataSet.convertDateTimeValues(values);
+
+		assertEquals(java.sql.Date.valueOf("2020-01-31"), values[0]);
+		assertEquals(dateTime, ((Timestamp) values[1]).toLocalDateTime());
+		// the fraction of the second is kept
+		Time time = (Time) values[2];
+		assertEquals(Time.valueOf("13:14:15").getTime() + 250,
+				time.getTime());
+		assertEquals(1.5, values[3]);
+		assertNull(values[4]);
+	}
 }